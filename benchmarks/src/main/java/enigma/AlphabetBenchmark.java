@@ -0,0 +1,61 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Alphabet.toInt: each operation looks up every character
+ *  of a random message.
+ *  @author Akshay Patel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlphabetBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "90" })
+    public int alphabetSize;
+
+    /** Number of characters looked up. */
+    @Param({ "16", "1024", "65536" })
+    public int messageLength;
+
+    /** Make the alphabet and message. */
+    @Setup
+    public void setUp() {
+        _alphabet = new Alphabet(Fixtures.alphabet(alphabetSize));
+        _message = Fixtures.message(alphabetSize, messageLength,
+                Fixtures.SEED).toCharArray();
+    }
+
+    /** Return the sum of the indices of the characters of the
+     *  message. */
+    @Benchmark
+    public int toInt() {
+        int sum = 0;
+        for (char c : _message) {
+            sum += _alphabet.toInt(c);
+        }
+        return sum;
+    }
+
+    /** The alphabet. */
+    private Alphabet _alphabet;
+
+    /** The message. */
+    private char[] _message;
+}
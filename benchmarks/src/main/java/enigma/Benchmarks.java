@@ -0,0 +1,40 @@
+package enigma;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the benchmarks, taking the same arguments as the JMH runner
+ *  (e.g. a regular expression selecting benchmarks, or -p alphabetSize=26
+ *  to fix a parameter).  Unless other profilers are asked for, the GC
+ *  profiler is added, so that allocation rates (gc.alloc.rate, and
+ *  gc.alloc.rate.norm in bytes per operation) are reported beside the
+ *  times.  The forked JVMs get the Vector API module.
+ *  @author Akshay Patel
+ */
+public final class Benchmarks {
+
+    /** Not instantiable. */
+    private Benchmarks() {
+    }
+
+    /** Run the benchmarks selected by ARGS. */
+    public static void main(String... args)
+        throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList()
+                || cmd.shouldListWithParams() || cmd.shouldListProfilers()
+                || cmd.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd)
+            .jvmArgsPrepend("--add-modules", "jdk.incubator.vector");
+        if (cmd.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,64 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of reading a configuration file in Main: parsing text
+ *  already read, and opening, reading and parsing the file.
+ *  @author Akshay Patel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "90" })
+    public int alphabetSize;
+
+    /** Number of slots, the reflector's included, and so one more than
+     *  the number of moving rotors described. */
+    @Param({ "3", "5", "8" })
+    public int rotorCount;
+
+    /** Write the configuration file. */
+    @Setup
+    public void setUp() {
+        _config = Fixtures.write(Fixtures.config(alphabetSize, rotorCount,
+                Fixtures.SEED));
+        _main = new Main(new String[] { _config });
+    }
+
+    /** Return the machine described by the configuration text. */
+    @Benchmark
+    public Machine parse() {
+        return _main.readConfig();
+    }
+
+    /** Return the machine described by the configuration file, read
+     *  afresh. */
+    @Benchmark
+    public Machine load() {
+        return new Main(new String[] { _config }).readConfig();
+    }
+
+    /** Name of the configuration file. */
+    private String _config;
+
+    /** Reads the configuration file. */
+    private Main _main;
+}
@@ -0,0 +1,167 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Randomly generated alphabets, configurations, machines and messages
+ *  for the benchmarks.  Everything is made from a seed, so that each run
+ *  of a benchmark measures the same inputs.
+ *  @author Akshay Patel
+ */
+final class Fixtures {
+
+    /** Not instantiable. */
+    private Fixtures() {
+    }
+
+    /** Seed of the generated inputs. */
+    static final long SEED = 0x5EED;
+
+    /** The characters from which alphabets are made, in order: the
+     *  printable ASCII characters other than space, parentheses and
+     *  asterisk, which configurations may not use in alphabets. */
+    private static final String CHARS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789"
+        + "+-!\"#$%&',./:;<=>?@[\\]^_`{|}~";
+
+    /** Return an alphabet of the first SIZE characters of CHARS, so of
+     *  upper-case letters if SIZE is at most 26. */
+    static String alphabet(int size) {
+        if (size > CHARS.length()) {
+            throw EnigmaException.error("No alphabet of %d characters.",
+                    size);
+        }
+        return CHARS.substring(0, size);
+    }
+
+    /** Return a random permutation of the characters of CHARS, as
+     *  cycles, chosen with RANDOM.  It is a derangement made of pairs if
+     *  REFLECTING, in which case CHARS has an even number of
+     *  characters. */
+    static String cycles(String chars, Random random, boolean reflecting) {
+        char[] order = shuffle(chars, random);
+        StringBuilder cycles = new StringBuilder();
+        if (reflecting) {
+            for (int i = 0; i + 1 < order.length; i += 2) {
+                cycles.append('(').append(order[i]).append(order[i + 1])
+                    .append(") ");
+            }
+        } else {
+            int start = 0;
+            while (start < order.length) {
+                int end = Math.min(order.length,
+                        start + 1 + random.nextInt(order.length - start));
+                cycles.append('(').append(order, start, end - start)
+                    .append(") ");
+                start = end;
+            }
+        }
+        return cycles.toString().trim();
+    }
+
+    /** Return the text of a configuration over the alphabet of SIZE
+     *  characters for a machine with SLOTS slots: a reflector, B, and
+     *  SLOTS-1 moving rotors, R1, R2, ..., each with two notches, all
+     *  with pawls.  The rotors are chosen with a Random seeded with
+     *  SEED. */
+    static String config(int size, int slots, long seed) {
+        Random random = new Random(seed);
+        String chars = alphabet(size);
+        StringBuilder config = new StringBuilder();
+        config.append(chars).append('\n');
+        config.append(' ').append(slots).append(' ').append(slots - 1)
+            .append('\n');
+        config.append(" B R ").append(cycles(chars, random, true))
+            .append('\n');
+        for (int r = 1; r < slots; r += 1) {
+            char[] notches = shuffle(chars, random);
+            config.append(" R").append(r).append(" M").append(notches[0])
+                .append(notches[1]).append(' ')
+                .append(cycles(chars, random, false)).append('\n');
+        }
+        return config.toString();
+    }
+
+    /** Return the name of a new temporary file, removed when the JVM
+     *  exits, containing TEXT in the default charset. */
+    static String write(String text) {
+        try {
+            Path file = Files.createTempFile("enigma", ".conf");
+            file.toFile().deleteOnExit();
+            Files.write(file, text.getBytes(Charset.defaultCharset()));
+            return file.toString();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Return a machine configured by the configuration made by
+     *  config(SIZE, SLOTS, SEED), with its rotors all inserted at random
+     *  settings and a plugboard swapping about a third of the
+     *  characters. */
+    static Machine machine(int size, int slots, long seed) {
+        Machine machine =
+            new Main(new String[] { write(config(size, slots, seed)) })
+            .readConfig();
+        Random random = new Random(seed + 1);
+        String chars = alphabet(size);
+        List<String> names = new ArrayList<String>();
+        names.add("B");
+        StringBuilder setting = new StringBuilder();
+        for (int r = 1; r < slots; r += 1) {
+            names.add("R" + r);
+            setting.append(chars.charAt(random.nextInt(size)));
+        }
+        machine.insertRotors(names.toArray(new String[0]));
+        machine.setRotors(setting.toString());
+        char[] order = shuffle(chars, random);
+        StringBuilder plugboard = new StringBuilder();
+        for (int i = 0; i + 1 < size / 3; i += 2) {
+            plugboard.append('(').append(order[i]).append(order[i + 1])
+                .append(')');
+        }
+        machine.setPlugboard(new Permutation(plugboard.toString(),
+                machine.alphabet()));
+        return machine;
+    }
+
+    /** Return LENGTH random indices into an alphabet of SIZE
+     *  characters, chosen with a Random seeded with SEED. */
+    static int[] indices(int size, int length, long seed) {
+        Random random = new Random(seed);
+        int[] indices = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            indices[i] = random.nextInt(size);
+        }
+        return indices;
+    }
+
+    /** Return a message of LENGTH random characters of the alphabet of
+     *  SIZE characters, chosen with a Random seeded with SEED. */
+    static String message(int size, int length, long seed) {
+        String chars = alphabet(size);
+        StringBuilder message = new StringBuilder();
+        for (int c : indices(size, length, seed)) {
+            message.append(chars.charAt(c));
+        }
+        return message.toString();
+    }
+
+    /** Return the characters of CHARS in an order chosen with RANDOM. */
+    private static char[] shuffle(String chars, Random random) {
+        char[] order = chars.toCharArray();
+        for (int i = order.length - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            char tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,77 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Machine.convert(int) and Machine.convert(String): each
+ *  operation converts a random message, carrying on from where the last
+ *  one left the rotors.
+ *  @author Akshay Patel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "90" })
+    public int alphabetSize;
+
+    /** Number of slots, the reflector's included. */
+    @Param({ "3", "5", "8" })
+    public int rotorCount;
+
+    /** Number of characters converted. */
+    @Param({ "16", "1024", "65536" })
+    public int messageLength;
+
+    /** Make the machine and message. */
+    @Setup
+    public void setUp() {
+        _machine = Fixtures.machine(alphabetSize, rotorCount, Fixtures.SEED);
+        _indices = Fixtures.indices(alphabetSize, messageLength,
+                Fixtures.SEED);
+        _message = Fixtures.message(alphabetSize, messageLength,
+                Fixtures.SEED);
+    }
+
+    /** Return the sum of the conversions, one index at a time, of the
+     *  message. */
+    @Benchmark
+    public int convertInt() {
+        int sum = 0;
+        for (int c : _indices) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Return the conversion of the message. */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** The machine. */
+    private Machine _machine;
+
+    /** The message, as indices. */
+    private int[] _indices;
+
+    /** The message. */
+    private String _message;
+}
@@ -0,0 +1,74 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Permutation.permute and Permutation.invert: each
+ *  operation maps every index of a random message.
+ *  @author Akshay Patel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "90" })
+    public int alphabetSize;
+
+    /** Number of indices mapped. */
+    @Param({ "16", "1024", "65536" })
+    public int messageLength;
+
+    /** Make the permutation and message. */
+    @Setup
+    public void setUp() {
+        String chars = Fixtures.alphabet(alphabetSize);
+        _perm = new Permutation(Fixtures.cycles(chars,
+                new Random(Fixtures.SEED), false), new Alphabet(chars));
+        _message = Fixtures.indices(alphabetSize, messageLength,
+                Fixtures.SEED);
+    }
+
+    /** Return the sum of the images of the message's indices. */
+    @Benchmark
+    public int permute() {
+        int sum = 0;
+        for (int c : _message) {
+            sum += _perm.permute(c);
+        }
+        return sum;
+    }
+
+    /** Return the sum of the inverse images of the message's
+     *  indices. */
+    @Benchmark
+    public int invert() {
+        int sum = 0;
+        for (int c : _message) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** The permutation. */
+    private Permutation _perm;
+
+    /** The message, as indices. */
+    private int[] _message;
+}
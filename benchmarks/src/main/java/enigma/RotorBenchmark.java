@@ -0,0 +1,94 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Rotor.convertForward, Rotor.convertBackward and
+ *  MovingRotor.atNotch.  Each operation converts every index of a random
+ *  message, or advances the rotor once for each of its characters and
+ *  asks whether it is at a notch.
+ *  @author Akshay Patel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "90" })
+    public int alphabetSize;
+
+    /** Number of indices converted, or of steps. */
+    @Param({ "16", "1024", "65536" })
+    public int messageLength;
+
+    /** Make the rotor, with two notches, and message. */
+    @Setup
+    public void setUp() {
+        String chars = Fixtures.alphabet(alphabetSize);
+        Random random = new Random(Fixtures.SEED);
+        _rotor = new MovingRotor("R", new Permutation(
+                Fixtures.cycles(chars, random, false), new Alphabet(chars)),
+                chars.substring(0, 1) + chars.charAt(alphabetSize / 2));
+        _rotor.set(random.nextInt(alphabetSize));
+        _message = Fixtures.indices(alphabetSize, messageLength,
+                Fixtures.SEED);
+    }
+
+    /** Return the sum of the forward conversions of the message's
+     *  indices. */
+    @Benchmark
+    public int convertForward() {
+        int sum = 0;
+        for (int c : _message) {
+            sum += _rotor.convertForward(c);
+        }
+        return sum;
+    }
+
+    /** Return the sum of the backward conversions of the message's
+     *  indices. */
+    @Benchmark
+    public int convertBackward() {
+        int sum = 0;
+        for (int c : _message) {
+            sum += _rotor.convertBackward(c);
+        }
+        return sum;
+    }
+
+    /** Return the number of steps, of as many as the message has
+     *  characters, after which the rotor is at a notch. */
+    @Benchmark
+    public int atNotch() {
+        int count = 0;
+        for (int i = 0; i < messageLength; i += 1) {
+            _rotor.advance();
+            if (_rotor.atNotch()) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** The rotor. */
+    private MovingRotor _rotor;
+
+    /** The message, as indices. */
+    private int[] _message;
+}
@@ -18,6 +18,7 @@ class Alphabet {
         if (_chars.length() == 1) {
             throw EnigmaException.error("Alphabet incorrectly inputted.");
         }
+        buildIndex();
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -32,18 +33,15 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int x = 0; x < size(); x += 1) {
-            if (_chars.charAt(x) == ch) {
-                return true;
-            }
-        }
-        return false;
+        int bit = ch - _low;
+        return bit >= 0 && bit < _span
+                && (_members[bit >>> 6] & (1L << bit)) != 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        if ((0 <= index) && (index <= size())) {
+        if ((0 <= index) && (index < size())) {
             return _chars.charAt(index);
         } else {
             throw EnigmaException.error("Index not in alphabet.");
@@ -53,33 +51,121 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        for (int index = 0; index < size(); index += 1) {
-            char currChar = toChar(index);
-            if (currChar == ch) {
-                return index;
-            }
+        if (!contains(ch)) {
+            throw EnigmaException.error("Character not in alphabet.");
+        }
+        if (_direct != null) {
+            return _direct[ch - _low];
         }
-        throw EnigmaException.error("Character not in alphabet.");
+        int slot = hash(ch);
+        while (_hashKeys[slot] != ch) {
+            slot = (slot + 1) & _hashMask;
+        }
+        return _hashValues[slot];
+    }
+
+    /** Return the slot of the hash table at which to look for CH first:
+     *  the top bits of CH times HASH_MULTIPLIER, which depend on all the
+     *  bits of CH. */
+    private int hash(char ch) {
+        return (ch * HASH_MULTIPLIER) >>> _hashShift;
     }
 
 
     /** number of characters in alphabet. */
     private final String _chars;
 
+    /** Smallest character in the alphabet. */
+    private char _low;
+
+    /** Number of character codes from _low to the largest character. */
+    private int _span;
+
+    /** Bitmap of members, bit K standing for character _low + K. */
+    private long[] _members;
+
+    /** Index of character _low + K at position K, or null when the
+     *  alphabet is too sparse and the hash table is used instead. */
+    private int[] _direct;
+
+    /** Open-addressed hash table keys (sparse alphabets only). */
+    private char[] _hashKeys;
+
+    /** Indices matching _hashKeys (sparse alphabets only). */
+    private int[] _hashValues;
+
+    /** Capacity of the hash table minus one. */
+    private int _hashMask;
+
+    /** 32 less the number of bits in a hash table slot number. */
+    private int _hashShift;
+
+    /** Largest span, relative to size(), that is indexed directly. */
+    private static final int DENSE_FACTOR = 8;
+
+    /** Odd multiplier used to scatter characters over the hash table
+     *  (2^32 divided by the golden ratio). */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /** Builds the membership bitmap and the character index, using a
+     *  direct table when the characters are close together and a small
+     *  open-addressed hash table otherwise. */
+    private void buildIndex() {
+        if (_chars.isEmpty()) {
+            _members = new long[0];
+            _direct = new int[0];
+            return;
+        }
+        int minIndex = 0;
+        for (int i = 1; i < size(); i += 1) {
+            if (_chars.charAt(i) < _chars.charAt(minIndex)) {
+                minIndex = i;
+            }
+        }
+        _low = _chars.charAt(minIndex);
+        for (int i = 0; i < size(); i += 1) {
+            _span = Math.max(_span, _chars.charAt(i) - _low + 1);
+        }
+        _members = new long[(_span + 63) >>> 6];
+        for (int i = 0; i < size(); i += 1) {
+            int bit = _chars.charAt(i) - _low;
+            _members[bit >>> 6] |= 1L << bit;
+        }
+        if (_span <= DENSE_FACTOR * size()) {
+            _direct = new int[_span];
+            for (int i = 0; i < size(); i += 1) {
+                _direct[_chars.charAt(i) - _low] = i;
+            }
+            return;
+        }
+        int capacity = Integer.highestOneBit(size() * 2 - 1) << 1;
+        _hashMask = capacity - 1;
+        _hashShift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+        _hashKeys = new char[capacity];
+        _hashValues = new int[capacity];
+        boolean[] used = new boolean[capacity];
+        for (int i = 0; i < size(); i += 1) {
+            char ch = _chars.charAt(i);
+            int slot = hash(ch);
+            while (used[slot]) {
+                slot = (slot + 1) & _hashMask;
+            }
+            used[slot] = true;
+            _hashKeys[slot] = ch;
+            _hashValues[slot] = i;
+        }
+    }
 
     /** checks for duplicate letters and @return boolean. */
     private boolean checkDuplicates() {
-        int count;
-        for (int first = 0; first < size(); ++first) {
-            count = 0;
-            for (int second = 0; second < size(); ++second) {
-                if (toChar(first) == toChar(second)) {
-                    count += 1;
-                }
-            }
-            if (count > 1) {
+        long[] seen = new long[1 << 10];
+        for (int i = 0; i < size(); i += 1) {
+            char ch = _chars.charAt(i);
+            long bit = 1L << ch;
+            if ((seen[ch >>> 6] & bit) != 0) {
                 return true;
             }
+            seen[ch >>> 6] |= bit;
         }
         return false;
     }
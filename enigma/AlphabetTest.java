@@ -0,0 +1,102 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Akshay Patel
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a string of COUNT characters, the K-th being FIRST plus
+     *  K * STRIDE. */
+    private String strided(char first, int stride, int count) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < count; k += 1) {
+            result.append((char) (first + k * stride));
+        }
+        return result.toString();
+    }
+
+    /** Check that ALPHA holds exactly the characters of CHARS, in
+     *  order.  TESTID is used in error messages. */
+    private void checkAlphabet(String testId, Alphabet alpha, String chars) {
+        assertEquals(testId + " (wrong size)", chars.length(), alpha.size());
+        for (int k = 0; k < chars.length(); k += 1) {
+            char c = chars.charAt(k);
+            assertTrue(msg(testId, "'%c' missing", c), alpha.contains(c));
+            assertEquals(msg(testId, "wrong index of '%c'", c),
+                         k, alpha.toInt(c));
+            assertEquals(msg(testId, "wrong character %d", k),
+                         c, alpha.toChar(k));
+        }
+        for (char c = 0; c < Character.MAX_VALUE; c += 1) {
+            if (chars.indexOf(c) < 0) {
+                assertFalse(msg(testId, "'%c' present", c),
+                            alpha.contains(c));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkDenseAlphabet() {
+        checkAlphabet("upper case", UPPER, UPPER_STRING);
+        String reversed = new StringBuilder(UPPER_STRING).reverse()
+                .toString();
+        checkAlphabet("reversed", new Alphabet(reversed), reversed);
+    }
+
+    @Test
+    public void checkSparseAlphabets() {
+        for (int stride : new int[] {37, 256, 257, 1024}) {
+            String chars = strided('!', stride, 50);
+            checkAlphabet("stride " + stride, new Alphabet(chars), chars);
+        }
+        String mixed = "AZaz09" + strided((char) 0x100, 4096, 15);
+        checkAlphabet("mixed", new Alphabet(mixed), mixed);
+    }
+
+    @Test
+    public void checkCharacterNotInAlphabet() {
+        Alphabet alpha = new Alphabet(strided('A', 256, 20));
+        try {
+            alpha.toInt('B');
+            fail("'B' is not in a sparse alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            UPPER.toInt('a');
+            fail("'a' is not in the upper-case alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkDuplicates() {
+        String wide = strided((char) 0x100, 4096, 15);
+        for (String chars : new String[] {
+                "ABCA", strided('A', 256, 20) + "A",
+                wide + wide.charAt(14)}) {
+            try {
+                new Alphabet(chars);
+                fail("duplicate accepted in " + chars);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+}
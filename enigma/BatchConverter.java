@@ -0,0 +1,133 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Converts many independent messages on machines sharing one spec, a
+ *  batch of messages at a time.  The rotor settings of the messages in a
+ *  batch are held as a structure of arrays, one array of settings per
+ *  slot with one entry per message (its lane), and each step advances
+ *  and converts the next character of every message in the batch, slot
+ *  by slot, with the wiring tables shared by all the lanes.  This keeps
+ *  each lane's lookups independent of the others', so that they overlap,
+ *  rather than each message waiting on its own chain of lookups, and
+ *  lets them be made several at a time with SIMD gathers where the
+ *  Vector API is available (see LaneKernel).
+ *
+ *  Messages are taken longest first, so that the messages still being
+ *  converted at any step are always the first lanes of their batch.  A
+ *  converter keeps its lanes in arrays of its own, so each thread
+ *  should use its own converter.
+ *  @author Akshay Patel
+ */
+final class BatchConverter {
+
+    /** Default number of messages converted together. */
+    static final int DEFAULT_LANES = 256;
+
+    /** A converter for machines with spec SPEC, converting LANES
+     *  messages together. */
+    BatchConverter(MachineSpec spec, int lanes) {
+        if (lanes < 1) {
+            throw EnigmaException.error("Must convert at least one lane.");
+        }
+        _spec = spec;
+        _lanes = lanes;
+        _settings = new int[spec.slots()][lanes];
+        _rings = new int[spec.slots()][lanes];
+        _chars = new int[lanes];
+        _kernel = LaneKernel.create(lanes);
+    }
+
+    /** A converter for machines with spec SPEC, converting DEFAULT_LANES
+     *  messages together. */
+    BatchConverter(MachineSpec spec) {
+        this(spec, DEFAULT_LANES);
+    }
+
+    /** Return true iff I convert lanes with SIMD instructions. */
+    boolean vectorized() {
+        return _kernel.vectorized();
+    }
+
+    /** Convert each of MESSAGES, as alphabet indices, in place, starting
+     *  from the corresponding one of STATES, which are moved on to the
+     *  ends of their messages.  The messages may have any lengths. */
+    void convert(MachineState[] states, int[][] messages) {
+        if (states.length != messages.length) {
+            throw EnigmaException.error("Need one state per message.");
+        }
+        Integer[] order = new Integer[messages.length];
+        for (int k = 0; k < order.length; k += 1) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(messages[b].length,
+                messages[a].length));
+        int[] batch = new int[_lanes];
+        for (int first = 0; first < order.length; first += _lanes) {
+            int lanes = Math.min(_lanes, order.length - first);
+            for (int l = 0; l < lanes; l += 1) {
+                batch[l] = order[first + l];
+            }
+            convert(states, messages, batch, lanes);
+        }
+    }
+
+    /** Convert the messages MESSAGES[BATCH[0 .. LANES-1]], whose lengths
+     *  do not increase, from and moving on the corresponding STATES. */
+    private void convert(MachineState[] states, int[][] messages,
+                         int[] batch, int lanes) {
+        int slots = _settings.length;
+        for (int l = 0; l < lanes; l += 1) {
+            MachineState state = states[batch[l]];
+            if (state.slots() != slots) {
+                throw EnigmaException.error("State has wrong number of "
+                        + "slots.");
+            }
+            for (int i = 0; i < slots; i += 1) {
+                _settings[i][l] = state.setting(i);
+                _rings[i][l] = state.ring(i);
+            }
+        }
+        int active = lanes;
+        for (int t = 0; ; t += 1) {
+            while (active > 0 && messages[batch[active - 1]].length <= t) {
+                active -= 1;
+            }
+            if (active == 0) {
+                break;
+            }
+            for (int l = 0; l < active; l += 1) {
+                _chars[l] = messages[batch[l]][t];
+            }
+            _spec.advance(_settings, active);
+            _spec.substitute(_settings, _rings, _chars, active, _kernel);
+            for (int l = 0; l < active; l += 1) {
+                messages[batch[l]][t] = _chars[l];
+            }
+        }
+        for (int l = 0; l < lanes; l += 1) {
+            MachineState state = states[batch[l]];
+            for (int i = 0; i < slots; i += 1) {
+                state.set(i, _settings[i][l], _rings[i][l]);
+            }
+        }
+    }
+
+    /** The spec of the machines. */
+    private final MachineSpec _spec;
+
+    /** Number of messages converted together. */
+    private final int _lanes;
+
+    /** Setting of each slot in each lane. */
+    private final int[][] _settings;
+
+    /** Ring setting of each slot in each lane. */
+    private final int[][] _rings;
+
+    /** Character being converted in each lane. */
+    private final int[] _chars;
+
+    /** Makes the lookups for all the lanes. */
+    private final LaneKernel _kernel;
+}
@@ -0,0 +1,458 @@
+package enigma;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A Turing-Welchman bombe: a search for the rotor order and rotor
+ *  settings of a message with a plugboard, given a crib, a stretch of
+ *  plaintext known to lie at a given offset in the ciphertext.
+ *
+ *  The crib and the ciphertext beneath it make a menu: a graph whose
+ *  nodes are letters, with an edge between the plaintext and ciphertext
+ *  letters at each position.  For a trial rotor order and setting, the
+ *  scrambler (the rotors and reflector, without the plugboard) at each
+ *  position is known, so a guess at the plugboard partner of one letter
+ *  of the menu implies the partners of its neighbours, and so on across
+ *  the menu.  Since the plugboard is an involution, a letter X paired
+ *  with Y also pairs Y with X (the diagonal board).  A guess that pairs
+ *  some letter with two others is impossible.  When not every guess for
+ *  the test letter is impossible, the trial setting is a stop, and the
+ *  pairs implied by each surviving guess are a plugboard hypothesis.
+ *
+ *  Every rotor order that could be named on a setting line is tried, on
+ *  a fork/join pool.  For each order, the scrambler permutation at every
+ *  rotor setting is worked out once, into a table shared by the tasks
+ *  that try the starting settings of that order, so that trying a
+ *  setting only looks permutations up.  Rings are taken to be at 0 (the
+ *  settings found are of the rotor cores), which also fixes when the
+ *  rotors turn over.  Each bitset of the diagonal board is a single
+ *  long, so the alphabet may have at most 64 characters.
+ *  @author Akshay Patel
+ */
+class Bombe {
+
+    /** Run the bombe on the ciphertext file given as the next to last
+     *  argument, for the machine configured in the file before it, with
+     *  the crib given as the last argument.  ARGS may start with these
+     *  options:
+     *  --offset K   the crib begins at character K of the ciphertext
+     *               (default 0);
+     *  --stops N    report at most N stops (default 100);
+     *  --threads N  search with N threads.
+     *  Each stop is printed on the standard output as a setting line
+     *  giving the rotors, their settings and the plugboard pairs implied
+     *  by the crib. */
+    public static void main(String... args) {
+        try {
+            int offset = 0;
+            int stops = 100;
+            int threads = Runtime.getRuntime().availableProcessors();
+            int k = 0;
+            while (k < args.length - 3 && args[k].startsWith("--")) {
+                String value = args[k + 1];
+                switch (args[k]) {
+                case "--offset":
+                    offset = number(value);
+                    break;
+                case "--stops":
+                    stops = number(value);
+                    break;
+                case "--threads":
+                    threads = number(value);
+                    break;
+                default:
+                    throw error("unknown option %s", args[k]);
+                }
+                k += 2;
+            }
+            if (args.length - k != 3) {
+                throw error("Usage: java enigma.Bombe [options] "
+                        + "CONFIG CIPHERTEXT CRIB");
+            }
+            Machine machine = new Main(new String[] { args[k] }).readConfig();
+            Alphabet alphabet = machine.alphabet();
+            int[] ciphertext = KeySearch.readCiphertext(
+                    Paths.get(args[k + 1]), alphabet);
+            String cribText = args[k + 2];
+            int[] crib = new int[cribText.length()];
+            for (int i = 0; i < crib.length; i += 1) {
+                crib[i] = alphabet.toInt(cribText.charAt(i));
+            }
+            Bombe bombe = new Bombe(machine, ciphertext, crib, offset, stops);
+            long started = System.nanoTime();
+            for (String stop : bombe.run(new ForkJoinPool(
+                    Math.max(1, threads)))) {
+                System.out.println(stop);
+            }
+            System.err.printf("tried %d settings in %.1f s%n",
+                    bombe.settingsTried(),
+                    (System.nanoTime() - started) / 1e9);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the value of the option VALUE, a non-negative number. */
+    private static int number(String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("bad number: %s", value);
+    }
+
+    /** A bombe for a machine configured as MACHINE (whose alphabet,
+     *  numbers of slots and pawls, and available rotors are used), with
+     *  the crib CRIB, as alphabet indices, lying under CIPHERTEXT from
+     *  index OFFSET on.  At most STOPS stops are kept. */
+    Bombe(Machine machine, int[] ciphertext, int[] crib, int offset,
+          int stops) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        if (_size > Long.SIZE) {
+            throw error("The bombe needs an alphabet of at most %d "
+                    + "characters.", Long.SIZE);
+        }
+        _slots = machine.numRotors();
+        _pawls = machine.numPawls();
+        if (crib.length == 0) {
+            throw error("No crib.");
+        }
+        if (offset > ciphertext.length - crib.length) {
+            throw error("Crib does not fit in the ciphertext.");
+        }
+        _offset = offset;
+        _length = crib.length;
+        _maxStops = stops;
+        _plugboard = new Permutation("", _alphabet);
+        _orders = machine.catalog().orders(_slots, _pawls,
+                KeySearch.MAX_ORDERS);
+        long positions = 1;
+        for (int i = 1; i < _slots; i += 1) {
+            positions *= _size;
+            if (positions * _size > MAX_TABLE) {
+                throw error("Too many rotor settings for the bombe.");
+            }
+        }
+        _positions = (int) positions;
+
+        int[] degree = new int[_size];
+        for (int i = 0; i < _length; i += 1) {
+            degree[crib[i]] += 1;
+            degree[ciphertext[offset + i]] += 1;
+        }
+        _partner = new int[_size][];
+        _step = new int[_size][];
+        int test = 0, most = 0;
+        for (int c = 0; c < _size; c += 1) {
+            _partner[c] = new int[degree[c]];
+            _step[c] = new int[degree[c]];
+            if (degree[c] > most) {
+                test = c;
+                most = degree[c];
+            }
+            degree[c] = 0;
+        }
+        _test = test;
+        for (int i = 0; i < _length; i += 1) {
+            int p = crib[i], q = ciphertext[offset + i];
+            _partner[p][degree[p]] = q;
+            _step[p][degree[p]] = i;
+            degree[p] += 1;
+            _partner[q][degree[q]] = p;
+            _step[q][degree[q]] = i;
+            degree[q] += 1;
+        }
+    }
+
+    /** Try every rotor order and setting, using POOL, and return the
+     *  stops found, as setting lines, in order. */
+    List<String> run(ForkJoinPool pool) {
+        pool.invoke(new Orders(0, _orders.length));
+        List<String> result = new ArrayList<String>(_stops);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the number of rotor orders and settings tried so far. */
+    long settingsTried() {
+        return _tried.sum();
+    }
+
+    /** Return the scrambler table for ORDER: the scrambler's image of
+     *  each character C with the rotors after the reflector at the
+     *  settings numbered P (the leftmost rotor's being the most
+     *  significant digit, in base size) is at index P * size + C. */
+    private byte[] scramblers(Rotor[] order) {
+        MachineSpec spec = new MachineSpec(_alphabet, order, _pawls,
+                _plugboard);
+        MachineState state = spec.newState();
+        byte[] table = new byte[_positions * _size];
+        for (int p = 0; p < _positions; p += 1) {
+            int rest = p;
+            for (int i = _slots - 1; i > 0; i -= 1) {
+                state.set(i, rest % _size, 0);
+                rest /= _size;
+            }
+            for (int c = 0; c < _size; c += 1) {
+                table[p * _size + c] = (byte) spec.substitute(state, c);
+            }
+        }
+        return table;
+    }
+
+    /** Return the number of the rotor settings in STATE, as used in
+     *  scrambler tables. */
+    private int index(MachineState state) {
+        int result = 0;
+        for (int i = 1; i < _slots; i += 1) {
+            result = result * _size + state.setting(i);
+        }
+        return result;
+    }
+
+    /** Try the starting settings numbered FROM .. TO - 1 of ORDER, whose
+     *  machine is SPEC and whose scrambler table is TABLE. */
+    private void tryStarts(Rotor[] order, MachineSpec spec, byte[] table,
+                           int from, int to) {
+        MachineState state = spec.newState();
+        int[] base = new int[_length];
+        long[] rows = new long[_size];
+        int[] queue = new int[2 * _size];
+        int start;
+        for (start = from; start < to; start += 1) {
+            if (_found.get() >= _maxStops) {
+                break;
+            }
+            int rest = start;
+            for (int i = _slots - 1; i > 0; i -= 1) {
+                state.set(i, rest % _size, 0);
+                rest /= _size;
+            }
+            spec.seek(state, _offset);
+            for (int i = 0; i < _length; i += 1) {
+                spec.advance(state);
+                base[i] = index(state) * _size;
+            }
+            for (int guess = 0; guess < _size; guess += 1) {
+                if (propagate(table, base, guess, rows, queue)) {
+                    record(order, start, rows);
+                }
+            }
+        }
+        _tried.add(start - from);
+    }
+
+    /** Fill ROWS with the plugboard pairs implied, through the scrambler
+     *  table TABLE at the positions BASE, by pairing the test letter with
+     *  GUESS, using QUEUE for the pairs still to be followed.  Return
+     *  false if they pair some letter with two others. */
+    private boolean propagate(byte[] table, int[] base, int guess,
+                              long[] rows, int[] queue) {
+        Arrays.fill(rows, 0);
+        int head = 0, tail = 0;
+        int[] ends = { _test, guess };
+        for (int e = 0; e < 2; e += 1) {
+            int x = ends[e], y = ends[1 - e];
+            if ((rows[x] & (1L << y)) == 0) {
+                rows[x] |= 1L << y;
+                queue[tail] = x;
+                queue[tail + 1] = y;
+                tail += 2;
+            }
+        }
+        while (head < tail) {
+            int x = queue[head], y = queue[head + 1];
+            head += 2;
+            int[] partners = _partner[x];
+            int[] steps = _step[x];
+            for (int k = 0; k < partners.length; k += 1) {
+                int u = partners[k];
+                int v = table[base[steps[k]] + y];
+                for (int e = 0; e < 2; e += 1) {
+                    if ((rows[u] & (1L << v)) == 0) {
+                        if (rows[u] != 0) {
+                            return false;
+                        }
+                        rows[u] = 1L << v;
+                        queue[tail] = u;
+                        queue[tail + 1] = v;
+                        tail += 2;
+                    }
+                    int t = u;
+                    u = v;
+                    v = t;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Record a stop at ORDER and the starting settings numbered START,
+     *  with the plugboard pairs in ROWS, unless there are enough. */
+    private void record(Rotor[] order, int start, long[] rows) {
+        if (_found.getAndIncrement() >= _maxStops) {
+            return;
+        }
+        StringBuilder result = new StringBuilder("*");
+        for (Rotor rotor : order) {
+            result.append(' ').append(rotor.name());
+        }
+        char[] setting = new char[_slots - 1];
+        for (int i = _slots - 2; i >= 0; i -= 1) {
+            setting[i] = _alphabet.toChar(start % _size);
+            start /= _size;
+        }
+        result.append(' ').append(setting);
+        for (int x = 0; x < _size; x += 1) {
+            int y = Long.numberOfTrailingZeros(rows[x]);
+            if (rows[x] != 0 && x < y) {
+                result.append(" (").append(_alphabet.toChar(x))
+                    .append(_alphabet.toChar(y)).append(')');
+            }
+        }
+        _stops.add(result.toString());
+    }
+
+    /** A task trying the rotor orders FROM .. TO - 1. */
+    private class Orders extends RecursiveAction {
+
+        /** A task for orders FROM .. TO - 1. */
+        Orders(int from, int to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > 1) {
+                int mid = _from + (_to - _from) / 2;
+                invokeAll(new Orders(_from, mid), new Orders(mid, _to));
+            } else if (_found.get() < _maxStops) {
+                Rotor[] order = _orders[_from];
+                MachineSpec spec = new MachineSpec(_alphabet, order, _pawls,
+                        _plugboard);
+                new Starts(order, spec, scramblers(order), 0, _positions)
+                    .compute();
+            }
+        }
+
+        /** First order tried. */
+        private final int _from;
+
+        /** Order just after the last tried. */
+        private final int _to;
+    }
+
+    /** A task trying some of the starting settings of one rotor order. */
+    private class Starts extends RecursiveAction {
+
+        /** A task for the starting settings numbered FROM .. TO - 1 of
+         *  ORDER, whose machine is SPEC and scrambler table TABLE. */
+        Starts(Rotor[] order, MachineSpec spec, byte[] table, int from,
+               int to) {
+            _order = order;
+            _spec = spec;
+            _table = table;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > STARTS_PER_TASK) {
+                int mid = _from + (_to - _from) / 2;
+                invokeAll(new Starts(_order, _spec, _table, _from, mid),
+                          new Starts(_order, _spec, _table, mid, _to));
+            } else {
+                tryStarts(_order, _spec, _table, _from, _to);
+            }
+        }
+
+        /** The rotor order. */
+        private final Rotor[] _order;
+
+        /** Its machine. */
+        private final MachineSpec _spec;
+
+        /** Its scrambler table. */
+        private final byte[] _table;
+
+        /** First setting tried. */
+        private final int _from;
+
+        /** Setting just after the last tried. */
+        private final int _to;
+    }
+
+    /** Greatest number of starting settings tried by one task. */
+    static final int STARTS_PER_TASK = 1 << 10;
+
+    /** Greatest number of entries in a scrambler table. */
+    static final long MAX_TABLE = 1L << 28;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of slots. */
+    private final int _slots;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Index in the ciphertext of the first character of the crib. */
+    private final int _offset;
+
+    /** Length of the crib. */
+    private final int _length;
+
+    /** Greatest number of stops kept. */
+    private final int _maxStops;
+
+    /** The (empty) plugboard. */
+    private final Permutation _plugboard;
+
+    /** The rotor orders tried. */
+    private final Rotor[][] _orders;
+
+    /** Number of rotor settings per order. */
+    private final int _positions;
+
+    /** The letter whose partner is guessed. */
+    private final int _test;
+
+    /** The letters joined to each letter by the menu. */
+    private final int[][] _partner;
+
+    /** The crib position of each edge in _partner. */
+    private final int[][] _step;
+
+    /** The stops found. */
+    private final ConcurrentLinkedQueue<String> _stops =
+        new ConcurrentLinkedQueue<String>();
+
+    /** Number of stops found, including any beyond _maxStops. */
+    private final AtomicInteger _found = new AtomicInteger();
+
+    /** Number of settings tried. */
+    private final LongAdder _tried = new LongAdder();
+}
@@ -0,0 +1,46 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+public class BombeTest {
+    Alphabet alpha = new Alphabet("ABCDEFGHIJKLMNOP");
+
+    /** Return the test machine over ALPHA. */
+    private Machine machine() {
+        return testMachine(alpha, "(AB) (CD) (EF) (GH) (IJ) (KL) (MN) (OP)",
+                "(ACEGIKMOBDFHJLNP)", "(AGDKN) (BHFCPO)", "(AEBFC) (DHJMLI)",
+                "(AH) (BCGNP)");
+    }
+
+    @Test public void checkBombeStops() {
+        String plain = "HEADBEEFACEDBADCABBAGEFADEDHEADBEEFCAGEDBEADEDFACADE";
+        Machine m = machine();
+        m.insertRotors(new String[] {"R", "F", "Z", "X"});
+        m.setRotors("DBG");
+        m.setPlugboard(new Permutation("(AK) (BM) (EL)", alpha));
+        int[] ciphertext = indices(alpha, m.convert(plain));
+        int offset = 5;
+        int[] crib = indices(alpha, plain.substring(offset, offset + 30));
+
+        Bombe bombe = new Bombe(machine(), ciphertext, crib, offset, 1000);
+        List<String> stops = bombe.run(new ForkJoinPool(3));
+        assertEquals(6L * 16 * 16 * 16, bombe.settingsTried());
+        boolean found = false;
+        for (String stop : stops) {
+            if (stop.startsWith("* R F Z X DBG ")) {
+                found = true;
+                assertTrue(stop.contains("(AK)"));
+                assertTrue(stop.contains("(BM)"));
+                assertTrue(stop.contains("(EL)"));
+            }
+        }
+        assertTrue(found);
+        assertTrue(stops.size() < 6 * 16 * 16 * 16 / 10);
+    }
+}
@@ -0,0 +1,94 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** Writes converted messages in an alphabet of ASCII characters to a file
+ *  as bytes, gathering them in a direct buffer that is handed to the
+ *  file's channel only when it is full, so that no characters or strings
+ *  are made and there is one system call per BUFFER_SIZE bytes.
+ *  @author Akshay Patel
+ */
+class ChannelSink implements MessageSink {
+
+    /** A sink writing characters of ALPHABET, which must all be ASCII,
+     *  to FILE. */
+    ChannelSink(FileChannel file, Alphabet alphabet) {
+        _file = file;
+        _bytes = new byte[alphabet.size()];
+        for (int i = 0; i < _bytes.length; i += 1) {
+            _bytes[i] = (byte) alphabet.toChar(i);
+        }
+        _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int[] buf, int off, int len) {
+        for (int i = off; i < off + len; i += 1) {
+            if (_buffer.remaining() < 2) {
+                drain();
+            }
+            if (_column == 5) {
+                _buffer.put((byte) ' ');
+                _column = 0;
+            }
+            _buffer.put(_bytes[buf[i]]);
+            _column += 1;
+        }
+    }
+
+    @Override
+    public void endLine() {
+        if (_buffer.remaining() < NEWLINE.length) {
+            drain();
+        }
+        _buffer.put(NEWLINE);
+        _column = 0;
+    }
+
+    @Override
+    public void close() {
+        drain();
+        try {
+            _file.close();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Write out the contents of _buffer. */
+    private void drain() {
+        _buffer.flip();
+        try {
+            while (_buffer.hasRemaining()) {
+                _file.write(_buffer);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        _buffer.clear();
+    }
+
+    /** Number of bytes gathered before each write. */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /** The bytes of a line separator. */
+    private static final byte[] NEWLINE =
+        System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    /** The file being written. */
+    private final FileChannel _file;
+
+    /** Byte for each alphabet index. */
+    private final byte[] _bytes;
+
+    /** Output not yet written to _file. */
+    private final ByteBuffer _buffer;
+
+    /** Number of characters in the last group of the current line. */
+    private int _column;
+}
@@ -0,0 +1,84 @@
+package enigma;
+
+import java.util.concurrent.RecursiveAction;
+
+/** Converts a range of a message on a fork/join pool.  Ranges longer
+ *  than CHUNK characters are split in two; each chunk works out the
+ *  rotor settings at its first character from the state at the start of
+ *  the message, then steps its own copy of it, so chunks share nothing
+ *  but the (unchanging) machine spec.  A task finishes only once all
+ *  the tasks it forked have, so that if one fails, none is still
+ *  writing its result when the failure is reported; the leftmost
+ *  failure is the one reported.
+ *  @author Akshay Patel
+ */
+class ChunkConverter extends RecursiveAction {
+
+    /** Characters converted by each leaf task. */
+    static final int CHUNK = 1 << 16;
+
+    /** A task converting IN[INOFF + FROM .. INOFF + TO - 1] into OUT,
+     *  starting at OUTOFF + FROM, on the machine SPEC, which is in state
+     *  START at the start of the message.  START is not changed. */
+    ChunkConverter(MachineSpec spec, MachineState start, char[] in,
+                   int inOff, char[] out, int outOff, int from, int to) {
+        _spec = spec;
+        _start = start;
+        _in = in;
+        _inOff = inOff;
+        _out = out;
+        _outOff = outOff;
+        _from = from;
+        _to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (_to - _from > CHUNK) {
+            int mid = _from + (_to - _from) / 2;
+            ChunkConverter right = split(mid, _to);
+            right.fork();
+            try {
+                split(_from, mid).compute();
+            } finally {
+                right.quietlyJoin();
+            }
+            right.join();
+            return;
+        }
+        MachineState state = _start.copy();
+        _spec.seek(state, _from);
+        _spec.convert(state, _in, _inOff + _from, _to - _from,
+                _out, _outOff + _from);
+    }
+
+    /** Return a task like me for FROM .. TO - 1. */
+    private ChunkConverter split(int from, int to) {
+        return new ChunkConverter(_spec, _start, _in, _inOff, _out, _outOff,
+                from, to);
+    }
+
+    /** The machine converting. */
+    private final MachineSpec _spec;
+
+    /** State of the machine at the start of the message. */
+    private final MachineState _start;
+
+    /** Message being converted. */
+    private final char[] _in;
+
+    /** Offset of the message in _in. */
+    private final int _inOff;
+
+    /** Destination of the conversion. */
+    private final char[] _out;
+
+    /** Offset of the result in _out. */
+    private final int _outOff;
+
+    /** First character of the message I convert. */
+    private final int _from;
+
+    /** Character of the message just after the last I convert. */
+    private final int _to;
+}
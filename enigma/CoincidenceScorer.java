@@ -0,0 +1,72 @@
+package enigma;
+
+/** Scores a text by its index of coincidence: the chance that two of its
+ *  characters, chosen at random, are the same.  Text in a natural
+ *  language scores well above the 1 / (alphabet size) of random text.
+ *  @author Akshay Patel
+ */
+class CoincidenceScorer implements Scorer {
+
+    /** A scorer for texts over an alphabet of SIZE characters. */
+    CoincidenceScorer(int size) {
+        _size = size;
+    }
+
+    @Override
+    public double score(int[] text, int length) {
+        if (length < 2) {
+            return 0;
+        }
+        int[] counts = counts(text, length);
+        long pairs = 0;
+        for (int count : counts) {
+            pairs += (long) count * (count - 1);
+        }
+        return (double) pairs / ((double) length * (length - 1));
+    }
+
+    @Override
+    public double bound(int[] text, int length, int total) {
+        if (total < 2) {
+            return 0;
+        }
+        int[] counts = counts(text, length);
+        long pairs = 0;
+        long most = 0;
+        for (int count : counts) {
+            pairs += (long) count * (count - 1);
+            most = Math.max(most, count);
+        }
+        long best = most + (total - length);
+        pairs += best * (best - 1) - most * (most - 1);
+        return (double) pairs / ((double) total * (total - 1));
+    }
+
+    @Override
+    public double estimate(int[] text, int length, int total) {
+        return score(text, length);
+    }
+
+    @Override
+    public double spread(int length, int total) {
+        if (length < 2) {
+            return 1;
+        }
+        double k = _size;
+        double variance = 2 * (k - 1) / (k * k * length * (length - 1.0));
+        return Math.sqrt(variance * (1 - (double) length / total));
+    }
+
+    /** Return the number of times each character occurs in
+     *  TEXT[0 .. LENGTH-1]. */
+    private int[] counts(int[] text, int length) {
+        int[] counts = new int[_size];
+        for (int i = 0; i < length; i += 1) {
+            counts[text[i]] += 1;
+        }
+        return counts;
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+}
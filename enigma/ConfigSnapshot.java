@@ -0,0 +1,182 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A configuration compiled into a compact binary snapshot: the alphabet,
+ *  the numbers of slots and pawls, and each rotor's kind, name, notches
+ *  and wiring table, so that a machine can be made from a single read
+ *  without parsing the text or its cycles again.  A snapshot records the
+ *  length and checksum of the text it was compiled from and the charset
+ *  it was read in, and ends with a checksum of its own contents; one that
+ *  does not match the current text, or is damaged, is ignored.
+ *  @author Akshay Patel
+ */
+class ConfigSnapshot {
+
+    /** Suffix added to the name of a configuration file to name its
+     *  snapshot. */
+    static final String SUFFIX = ".snapshot";
+
+    /** Compile the configuration file named ARGS[0] into a snapshot named
+     *  ARGS[1], or ARGS[0] + SUFFIX if ARGS has one element.  Exits with
+     *  code 1 if the configuration cannot be read. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 2) {
+                throw error("Only 1 or 2 command-line arguments allowed");
+            }
+            String name = args.length > 1 ? args[1] : args[0] + SUFFIX;
+            Main main = new Main(new String[] { args[0] });
+            write(Paths.get(name), main.configText(), main.readConfig());
+            return;
+        } catch (EnigmaException | InvalidPathException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write a snapshot of MACHINE, which was configured from TEXT, to
+     *  FILE. */
+    static void write(Path file, byte[] text, Machine machine) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(text.length);
+            out.writeInt(checksum(text, text.length));
+            writeString(out, Charset.defaultCharset().name());
+            Alphabet alphabet = machine.alphabet();
+            StringBuilder chars = new StringBuilder();
+            for (int i = 0; i < alphabet.size(); i += 1) {
+                chars.append(alphabet.toChar(i));
+            }
+            writeString(out, chars.toString());
+            out.writeInt(machine.numRotors());
+            out.writeInt(machine.numPawls());
+            List<Rotor> rotors = machine.getAllRotors();
+            out.writeInt(rotors.size());
+            for (Rotor rotor : rotors) {
+                out.writeByte(rotor.reflecting() ? 'R'
+                        : rotor.rotates() ? 'M' : 'N');
+                writeString(out, rotor.name());
+                writeString(out, rotor.notches());
+                for (int i = 0; i < alphabet.size(); i += 1) {
+                    out.writeInt(rotor.permutation().permute(i));
+                }
+            }
+            out.flush();
+            byte[] contents = bytes.toByteArray();
+            out.writeInt(checksum(contents, contents.length));
+            Files.write(file, bytes.toByteArray());
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the machine recorded in the snapshot FILE if there is one,
+     *  it is intact, and it was compiled from TEXT in the default charset.
+     *  Otherwise, return null. */
+    static Machine load(Path file, byte[] text) {
+        byte[] contents;
+        try {
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            contents = Files.readAllBytes(file);
+        } catch (IOException excp) {
+            return null;
+        }
+        int length = contents.length - Integer.BYTES;
+        if (length < 0) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(contents);
+        try {
+            if (in.getInt(length) != checksum(contents, length)
+                    || in.getInt() != MAGIC || in.getInt() != VERSION
+                    || in.getInt() != text.length
+                    || in.getInt() != checksum(text, text.length)
+                    || !readString(in).equals(
+                            Charset.defaultCharset().name())) {
+                return null;
+            }
+            Alphabet alphabet = new Alphabet(readString(in));
+            int numRotors = in.getInt();
+            int pawls = in.getInt();
+            int count = in.getInt();
+            List<Rotor> rotors = new ArrayList<Rotor>();
+            for (int k = 0; k < count; k += 1) {
+                byte kind = in.get();
+                String name = readString(in);
+                String notches = readString(in);
+                int[] wiring = new int[alphabet.size()];
+                in.asIntBuffer().get(wiring);
+                in.position(in.position() + Integer.BYTES * wiring.length);
+                Permutation perm = new Permutation(alphabet, wiring);
+                if (kind == 'M') {
+                    rotors.add(new MovingRotor(name, perm, notches));
+                } else if (kind == 'N') {
+                    rotors.add(new FixedRotor(name, perm));
+                } else if (kind == 'R') {
+                    rotors.add(new Reflector(name, perm));
+                } else {
+                    return null;
+                }
+            }
+            if (in.position() != length) {
+                return null;
+            }
+            return new Machine(alphabet, numRotors, pawls, rotors);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | IllegalArgumentException | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Write S to OUT as its length followed by its characters. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    /** Return the next string written by writeString in IN. */
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining() / Character.BYTES) {
+            throw new BufferUnderflowException();
+        }
+        char[] chars = new char[length];
+        in.asCharBuffer().get(chars);
+        in.position(in.position() + Character.BYTES * length);
+        return new String(chars);
+    }
+
+    /** Return the CRC-32 checksum of BYTES[0 .. LENGTH-1]. */
+    private static int checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    /** First word of every snapshot. */
+    private static final int MAGIC = 0x454e4753;
+
+    /** Version of the snapshot format. */
+    private static final int VERSION = 1;
+}
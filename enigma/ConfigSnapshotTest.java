@@ -0,0 +1,179 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigSnapshot class.
+ *  @author Akshay Patel
+ */
+public class ConfigSnapshotTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Setting lines used to compare machines. */
+    private static final String[] SETTINGS = {
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* C Gamma I II III QEVZ BCDE",
+        "* B Beta V VI VII ZZZZ (AZ)",
+    };
+
+    /** A message to convert. */
+    private static final String MESSAGE =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+
+    /** Return a configuration of the naval rotors, with rotor III wired
+     *  as WIRINGIII. */
+    private String config(String wiringIII) {
+        StringBuilder result = new StringBuilder(UPPER_STRING + "\n5 3\n");
+        String[][] rotors = {
+            {"I", "MQ"}, {"II", "ME"}, {"III", "MV"}, {"IV", "MJ"},
+            {"V", "MZ"}, {"VI", "MZM"}, {"VII", "MZM"}, {"VIII", "MZM"},
+            {"Beta", "N"}, {"Gamma", "N"}, {"B", "R"}, {"C", "R"},
+        };
+        for (String[] rotor : rotors) {
+            String wiring = rotor[0].equals("III") ? wiringIII
+                    : NAVALA.get(rotor[0]);
+            result.append(' ').append(rotor[0]).append(' ')
+                .append(rotor[1]).append(' ').append(wiring).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return MESSAGE converted by M, set up by MAIN according to
+     *  SETTING. */
+    private String convert(Main main, Machine m, String setting) {
+        main.setUp(m, setting);
+        return m.convert(MESSAGE);
+    }
+
+    /** Write TEXT to FILE in the default charset. */
+    private void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(Charset.defaultCharset()));
+    }
+
+    /** Return the output of Main for the configuration file CONFIG and
+     *  an input converting MESSAGE under each of SETTINGS, using DIR for
+     *  the input and output files. */
+    private String run(Path dir, Path config) throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (String setting : SETTINGS) {
+            input.append(setting).append('\n').append(MESSAGE).append('\n');
+        }
+        Path in = dir.resolve("input");
+        Path out = dir.resolve("output");
+        write(in, input.toString());
+        Main.main(config.toString(), in.toString(), out.toString());
+        return new String(Files.readAllBytes(out),
+                Charset.defaultCharset());
+    }
+
+    /** Delete DIR and the files in it. */
+    private void delete(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        Path dir = Files.createTempDirectory("snapshot");
+        Path config = dir.resolve("naval.conf");
+        write(config, config(NAVALA.get("III")));
+        Main main = new Main(new String[] { config.toString() });
+        Machine parsed = main.readConfig();
+        Path snapshot = dir.resolve("naval.conf" + ConfigSnapshot.SUFFIX);
+        ConfigSnapshot.write(snapshot, main.configText(), parsed);
+
+        Machine loaded = ConfigSnapshot.load(snapshot, main.configText());
+        assertNotNull(loaded);
+        assertEquals(parsed.numRotors(), loaded.numRotors());
+        assertEquals(parsed.numPawls(), loaded.numPawls());
+        assertEquals(parsed.getAllRotors().size(),
+                loaded.getAllRotors().size());
+        for (int k = 0; k < parsed.getAllRotors().size(); k += 1) {
+            Rotor p = parsed.getAllRotors().get(k);
+            Rotor l = loaded.getAllRotors().get(k);
+            assertEquals(p.name(), l.name());
+            assertEquals(p.notches(), l.notches());
+            assertEquals(p.rotates(), l.rotates());
+            assertEquals(p.reflecting(), l.reflecting());
+        }
+        for (String setting : SETTINGS) {
+            assertEquals(setting, convert(main, parsed, setting),
+                    convert(main, loaded, setting));
+        }
+        String expected = run(dir, config);
+        Files.delete(snapshot);
+        assertEquals(expected, run(dir, config));
+        delete(dir);
+    }
+
+    @Test
+    public void checkStaleSnapshot() throws IOException {
+        Path dir = Files.createTempDirectory("snapshot");
+        Path config = dir.resolve("naval.conf");
+        write(config, config(NAVALA.get("III")));
+        Main main = new Main(new String[] { config.toString() });
+        Path snapshot = dir.resolve("naval.conf" + ConfigSnapshot.SUFFIX);
+        ConfigSnapshot.write(snapshot, main.configText(), main.readConfig());
+
+        write(config, config(NAVALA.get("V")));
+        byte[] text = new Main(new String[] { config.toString() })
+                .configText();
+        assertNull(ConfigSnapshot.load(snapshot, text));
+        String fromSnapshot = run(dir, config);
+        Files.delete(snapshot);
+        String fromText = run(dir, config);
+        assertEquals(fromText, fromSnapshot);
+        write(config, config(NAVALA.get("III")));
+        assertNotEquals(fromText, run(dir, config));
+        delete(dir);
+    }
+
+    @Test
+    public void checkCorruptSnapshot() throws IOException {
+        Path dir = Files.createTempDirectory("snapshot");
+        Path config = dir.resolve("naval.conf");
+        write(config, config(NAVALA.get("III")));
+        Main main = new Main(new String[] { config.toString() });
+        Path snapshot = dir.resolve("naval.conf" + ConfigSnapshot.SUFFIX);
+        ConfigSnapshot.write(snapshot, main.configText(), main.readConfig());
+        byte[] good = Files.readAllBytes(snapshot);
+        String expected = run(dir, config);
+
+        for (int k = 0; k < 3; k += 1) {
+            byte[] bad = good.clone();
+            if (k == 0) {
+                bad[bad.length / 2] ^= 1;
+            } else if (k == 1) {
+                bad = Arrays.copyOf(good, good.length - 5);
+            } else {
+                bad[0] ^= 0x40;
+            }
+            Files.write(snapshot, bad);
+            assertNull(ConfigSnapshot.load(snapshot, main.configText()));
+            assertEquals(expected, run(dir, config));
+        }
+        delete(dir);
+    }
+}
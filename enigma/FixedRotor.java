@@ -13,4 +13,14 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
+    /** A rotor like ORIGINAL, in its 0 setting, sharing its wiring. */
+    protected FixedRotor(FixedRotor original) {
+        super(original);
+    }
+
+    @Override
+    Rotor copy() {
+        return new FixedRotor(this);
+    }
+
 }
@@ -0,0 +1,149 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** The JDK Flight Recorder events of the stages of a run, one per
+ *  configuration read, setting line applied, block of characters
+ *  converted and block written out.  No event records any part of a
+ *  key, and none has a stack trace, which would cost more than the event
+ *  itself.  They are recorded while a recording enables them, as with
+ *  java -XX:StartFlightRecording or jcmd PID JFR.start.
+ *
+ *  Loading the first event class starts up much of the flight recorder,
+ *  which takes longer than most runs, so the events are made only
+ *  through the begin methods here, which make none until a flight
+ *  recorder is running, and return null instead.  The end methods
+ *  accept these nulls.
+ *  @author Akshay Patel
+ */
+final class FlightEvents {
+
+    /** Not instantiable. */
+    private FlightEvents() {
+    }
+
+    /** Return true iff a flight recorder is running, so that events may
+     *  be recorded. */
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /** Return a begun Config event, or null. */
+    static Event beginConfig() {
+        return recording() ? begin(new Config()) : null;
+    }
+
+    /** Return a begun Setup event, or null. */
+    static Event beginSetup() {
+        return recording() ? begin(new Setup()) : null;
+    }
+
+    /** Return a begun Convert event, or null. */
+    static Event beginConvert() {
+        return recording() ? begin(new Convert()) : null;
+    }
+
+    /** Return a begun Output event, or null. */
+    static Event beginOutput() {
+        return recording() ? begin(new Output()) : null;
+    }
+
+    /** End EVENT, a Config event or null, for reading the file named
+     *  FILE, describing ROTORS rotors, from a snapshot iff SNAPSHOT. */
+    static void endConfig(Event event, String file, int rotors,
+                          boolean snapshot) {
+        if (event != null && event.shouldCommit()) {
+            Config config = (Config) event;
+            config.file = file;
+            config.rotors = rotors;
+            config.snapshot = snapshot;
+            config.commit();
+        }
+    }
+
+    /** End EVENT, a Setup event or null. */
+    static void endSetup(Event event) {
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    /** End EVENT, a Convert event or null, for CHARACTERS characters. */
+    static void endConvert(Event event, int characters) {
+        if (event != null && event.shouldCommit()) {
+            ((Convert) event).characters = characters;
+            event.commit();
+        }
+    }
+
+    /** End EVENT, an Output event or null, for CHARACTERS characters. */
+    static void endOutput(Event event, int characters) {
+        if (event != null && event.shouldCommit()) {
+            ((Output) event).characters = characters;
+            event.commit();
+        }
+    }
+
+    /** Return EVENT, begun. */
+    private static Event begin(Event event) {
+        event.begin();
+        return event;
+    }
+
+    /** Reading a configuration. */
+    @Name("enigma.Config")
+    @Label("Read Configuration")
+    @Category("Enigma")
+    @StackTrace(false)
+    private static final class Config extends Event {
+        /** Name of the configuration file. */
+        @Label("File")
+        String file;
+
+        /** Number of rotors described. */
+        @Label("Rotors")
+        int rotors;
+
+        /** True iff it came from a compiled snapshot. */
+        @Label("From Snapshot")
+        boolean snapshot;
+    }
+
+    /** Applying a setting line. */
+    @Name("enigma.Setup")
+    @Label("Apply Setting")
+    @Category("Enigma")
+    @StackTrace(false)
+    private static final class Setup extends Event {
+        /* The setting line itself is a key, and is not recorded. */
+    }
+
+    /** Converting a block of characters. */
+    @Name("enigma.Convert")
+    @Label("Convert")
+    @Category("Enigma")
+    @Description("Conversion of a block of a message")
+    @StackTrace(false)
+    private static final class Convert extends Event {
+        /** Number of characters converted. */
+        @Label("Characters")
+        int characters;
+    }
+
+    /** Writing out converted characters. */
+    @Name("enigma.Output")
+    @Label("Write Output")
+    @Category("Enigma")
+    @StackTrace(false)
+    private static final class Output extends Event {
+        /** Number of characters written, or 0 for the end of a line. */
+        @Label("Characters")
+        int characters;
+    }
+}
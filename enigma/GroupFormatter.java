@@ -0,0 +1,253 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static enigma.EnigmaException.*;
+
+/** Formats converted messages in groups of five, writing the characters
+ *  straight into a reusable buffer as they come out of the machine.  The
+ *  buffer is handed to a Writer when it fills and, depending on the
+ *  flush policy, at the end of every line.  Optionally, a background
+ *  thread does the writing, so that the next buffer can be filled while
+ *  the last one is written.
+ *  @author Akshay Patel
+ */
+class GroupFormatter implements MessageSink {
+
+    /** When buffered output is written and flushed. */
+    enum FlushPolicy {
+        /** Only when the buffer is full, and on close. */
+        WHEN_FULL,
+        /** Also at the end of every line, as for interactive use. */
+        EVERY_LINE
+    }
+
+    /** A formatter writing characters of ALPHABET to OUT through buffers
+     *  of BUFFERSIZE characters, flushed according to POLICY.  If
+     *  BACKGROUND, the writing is done by a separate thread.  If CLOSE,
+     *  OUT is closed when I am; otherwise it is just flushed. */
+    GroupFormatter(Writer out, Alphabet alphabet, int bufferSize,
+                   FlushPolicy policy, boolean background, boolean close) {
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw error("output buffer too small");
+        }
+        _out = out;
+        _policy = policy;
+        _close = close;
+        _chars = new char[alphabet.size()];
+        for (int i = 0; i < _chars.length; i += 1) {
+            _chars[i] = alphabet.toChar(i);
+        }
+        _buffer = new char[bufferSize];
+        if (background) {
+            _full = new ArrayBlockingQueue<>(SPARE_BUFFERS + 1);
+            _free = new ArrayBlockingQueue<>(SPARE_BUFFERS + 1);
+            for (int i = 0; i < SPARE_BUFFERS; i += 1) {
+                _free.add(new char[bufferSize]);
+            }
+            _writer = new Thread(this::writeInBackground, "enigma-writer");
+            _writer.setDaemon(true);
+            _writer.start();
+        } else {
+            _full = _free = null;
+            _writer = null;
+        }
+    }
+
+    @Override
+    public void write(int[] buf, int off, int len) {
+        char[] buffer = _buffer;
+        int length = _length;
+        int column = _column;
+        for (int i = off; i < off + len; i += 1) {
+            if (buffer.length - length < 2) {
+                _length = length;
+                handOff();
+                buffer = _buffer;
+                length = 0;
+            }
+            if (column == 5) {
+                buffer[length] = ' ';
+                length += 1;
+                column = 0;
+            }
+            buffer[length] = _chars[buf[i]];
+            length += 1;
+            column += 1;
+        }
+        _length = length;
+        _column = column;
+    }
+
+    @Override
+    public void endLine() {
+        if (_buffer.length - _length < NEWLINE.length) {
+            handOff();
+        }
+        System.arraycopy(NEWLINE, 0, _buffer, _length, NEWLINE.length);
+        _length += NEWLINE.length;
+        _column = 0;
+        if (_policy == FlushPolicy.EVERY_LINE) {
+            handOff();
+        }
+    }
+
+    @Override
+    public void close() {
+        handOff();
+        if (_writer != null) {
+            put(_full, new char[0]);
+            try {
+                _writer.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("could not write output");
+            }
+            checkFailure();
+        }
+        try {
+            if (_close) {
+                _out.close();
+            } else {
+                _out.flush();
+            }
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Pass the characters in _buffer on to be written, leaving _buffer
+     *  empty. */
+    private void handOff() {
+        if (_writer == null) {
+            try {
+                _out.write(_buffer, 0, _length);
+                if (_policy == FlushPolicy.EVERY_LINE) {
+                    _out.flush();
+                }
+            } catch (IOException excp) {
+                throw error("could not write output");
+            }
+        } else if (_length > 0) {
+            checkFailure();
+            char[] full = _buffer;
+            _lengths[_handedOff] = _length;
+            _handedOff = (_handedOff + 1) % _lengths.length;
+            put(_full, full);
+            _buffer = take(_free);
+        }
+        _length = 0;
+    }
+
+    /** Body of the background writer: write each buffer in _full until
+     *  an empty one arrives, returning each to _free. */
+    private void writeInBackground() {
+        int written = 0;
+        while (true) {
+            char[] buffer = take(_full);
+            if (buffer.length == 0) {
+                return;
+            }
+            int length = _lengths[written];
+            written = (written + 1) % _lengths.length;
+            if (_failure == null) {
+                try {
+                    _out.write(buffer, 0, length);
+                    if (_policy == FlushPolicy.EVERY_LINE) {
+                        _out.flush();
+                    }
+                } catch (IOException excp) {
+                    _failure = excp;
+                }
+            }
+            put(_free, buffer);
+        }
+    }
+
+    /** Report any failure of the background writer. */
+    private void checkFailure() {
+        if (_failure != null) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Add BUFFER to QUEUE, waiting for room. */
+    private static void put(BlockingQueue<char[]> queue, char[] buffer) {
+        try {
+            queue.put(buffer);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("could not write output");
+        }
+    }
+
+    /** Remove and return the first buffer in QUEUE, waiting for one. */
+    private static char[] take(BlockingQueue<char[]> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("could not write output");
+        }
+    }
+
+    /** Default number of characters buffered. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Smallest usable buffer, which holds a space and a character or a
+     *  line separator. */
+    private static final int MIN_BUFFER_SIZE = 2;
+
+    /** Number of buffers in use by the background writer besides the one
+     *  being filled. */
+    private static final int SPARE_BUFFERS = 2;
+
+    /** The characters of a line separator. */
+    private static final char[] NEWLINE =
+        System.lineSeparator().toCharArray();
+
+    /** Destination of the output. */
+    private final Writer _out;
+
+    /** When output is flushed. */
+    private final FlushPolicy _policy;
+
+    /** True iff _out is to be closed with me. */
+    private final boolean _close;
+
+    /** Character for each alphabet index. */
+    private final char[] _chars;
+
+    /** Buffer being filled. */
+    private char[] _buffer;
+
+    /** Number of characters in _buffer. */
+    private int _length;
+
+    /** Number of characters in the last group of the current line. */
+    private int _column;
+
+    /** Buffers waiting for the background writer, ending with an empty
+     *  one on close, or null if there is none. */
+    private final BlockingQueue<char[]> _full;
+
+    /** Buffers the background writer is done with. */
+    private final BlockingQueue<char[]> _free;
+
+    /** Lengths of the buffers handed to the background writer, in
+     *  order, indexed modulo their number. */
+    private final int[] _lengths = new int[SPARE_BUFFERS + 1];
+
+    /** Index in _lengths of the next buffer handed to the background
+     *  writer. */
+    private int _handedOff;
+
+    /** The background writer, or null. */
+    private final Thread _writer;
+
+    /** The first failure of the background writer, or null. */
+    private volatile IOException _failure;
+}
@@ -0,0 +1,634 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only search for the key of a message: the rotor order,
+ *  the rotor settings and, optionally, the ring settings of some of the
+ *  rotors, with an empty plugboard.  Every order of rotors from the
+ *  configuration's catalog that could be named on a setting line is
+ *  tried, with a reflector first, non-moving rotors next and moving
+ *  rotors in the slots with pawls.  Each trial decryption is scored, and
+ *  the best keys are kept.
+ *
+ *  The keys are numbered, and split into blocks of BLOCK consecutive
+ *  keys, which are searched on a fork/join pool, so that idle threads
+ *  steal work from busy ones.  A trial decryption is checked against the
+ *  worst result kept at a few points along the way, and abandoned as soon
+ *  as the scorer shows it cannot do better.  Finished blocks are recorded
+ *  in a bitmap, which can be saved with the results so far as a
+ *  checkpoint, and a search resumed from its checkpoint skips them.
+ *  @author Akshay Patel
+ */
+class KeySearch {
+
+    /** Search for the key of the ciphertext file given as the last
+     *  argument, for the machine configured in the file before it.
+     *  ARGS may start with these options:
+     *  --top K           keep the best K keys (default 10);
+     *  --rings N         also search the rings of the rightmost N rotors;
+     *  --ngrams FILE     score with the n-gram counts in FILE rather than
+     *                    by index of coincidence;
+     *  --prune F         abandon a trial decryption whose estimated score
+     *                    falls short of the worst kept by more than F
+     *                    times the scorer's spread (default DEFAULT_PRUNE;
+     *                    0 abandons only those that certainly fall
+     *                    short);
+     *  --threads N       search with N threads;
+     *  --checkpoint FILE save progress to FILE, and resume from it.
+     *  Progress is reported on the standard error, and the best keys,
+     *  as setting lines, with their scores on the standard output. */
+    public static void main(String... args) {
+        try {
+            int top = 10;
+            int rings = 0;
+            double prune = DEFAULT_PRUNE;
+            int threads = Runtime.getRuntime().availableProcessors();
+            String ngrams = null;
+            String checkpoint = null;
+            int k = 0;
+            while (k < args.length - 2 && args[k].startsWith("--")) {
+                String value = args[k + 1];
+                switch (args[k]) {
+                case "--top":
+                    top = number(value);
+                    break;
+                case "--rings":
+                    rings = number(value);
+                    break;
+                case "--prune":
+                    prune = fraction(value);
+                    break;
+                case "--threads":
+                    threads = number(value);
+                    break;
+                case "--ngrams":
+                    ngrams = value;
+                    break;
+                case "--checkpoint":
+                    checkpoint = value;
+                    break;
+                default:
+                    throw error("unknown option %s", args[k]);
+                }
+                k += 2;
+            }
+            if (args.length - k != 2) {
+                throw error("Usage: java enigma.KeySearch [options] "
+                        + "CONFIG CIPHERTEXT");
+            }
+            Machine machine = new Main(new String[] { args[k] }).readConfig();
+            Alphabet alphabet = machine.alphabet();
+            Scorer scorer = ngrams == null
+                    ? new CoincidenceScorer(alphabet.size())
+                    : NGramScorer.load(Paths.get(ngrams), alphabet);
+            KeySearch search = new KeySearch(machine,
+                    readCiphertext(Paths.get(args[k + 1]), alphabet),
+                    scorer, top, rings, prune);
+            search.run(new ForkJoinPool(Math.max(1, threads)),
+                    checkpoint == null ? null : Paths.get(checkpoint));
+            for (TopResults.Result result : search.results()) {
+                System.out.printf("%.6f %s%n", result.score(),
+                        search.setting(result.key()));
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the value of the option VALUE, a non-negative number. */
+    private static int number(String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("bad number: %s", value);
+    }
+
+    /** Return the value of the option VALUE, a non-negative number that
+     *  need not be whole. */
+    private static double fraction(String value) {
+        try {
+            double result = Double.parseDouble(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("bad number: %s", value);
+    }
+
+    /** Return the characters of ALPHABET in FILE, as indices, ignoring
+     *  whitespace. */
+    static int[] readCiphertext(Path file, Alphabet alphabet) {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file),
+                    Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+        int[] result = new int[text.length()];
+        int length = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                result[length] = alphabet.toInt(c);
+                length += 1;
+            }
+        }
+        if (length == 0) {
+            throw error("No ciphertext.");
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    /** A search for keys of a machine configured as MACHINE (whose
+     *  alphabet, numbers of slots and pawls, and available rotors are
+     *  used) under which CIPHERTEXT, as alphabet indices, has the best
+     *  score by SCORER.  Keeps the best TOP keys.  The ring settings of
+     *  the rightmost RINGSLOTS rotors are searched; the others are taken
+     *  to be 0.  A trial decryption is abandoned once it certainly falls
+     *  short of the worst score kept, or once its estimated score falls
+     *  short by more than PRUNE times the scorer's spread for the part
+     *  decrypted, which shrinks as the estimate, made from more of the
+     *  text, becomes less noisy.  If PRUNE is 0, estimates are not used,
+     *  and the search is exact. */
+    KeySearch(Machine machine, int[] ciphertext, Scorer scorer, int top,
+              int ringSlots, double prune) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _slots = machine.numRotors();
+        _pawls = machine.numPawls();
+        if (ringSlots > _slots - 1) {
+            throw error("Only %d rotors have rings.", _slots - 1);
+        }
+        _ringSlots = ringSlots;
+        _ciphertext = ciphertext.clone();
+        _scorer = scorer;
+        _prune = prune;
+        _top = new TopResults(top);
+        _plugboard = new Permutation("", _alphabet);
+        _orders = machine.catalog().orders(_slots, _pawls, MAX_ORDERS);
+        try {
+            _positionCount = power(_size, _slots - 1);
+            _ringCount = power(_size, ringSlots);
+            _total = Math.multiplyExact(
+                    Math.multiplyExact((long) _orders.length, _ringCount),
+                    _positionCount);
+        } catch (ArithmeticException excp) {
+            throw error("Key space too large.");
+        }
+        _blocks = (_total + BLOCK - 1) / BLOCK;
+        if ((_blocks + 63) / 64 > Integer.MAX_VALUE) {
+            throw error("Key space too large.");
+        }
+        _done = new AtomicLongArray((int) ((_blocks + 63) / 64));
+    }
+
+    /** Return the number of keys in the search. */
+    long size() {
+        return _total;
+    }
+
+    /** Return the number of keys tried so far, including those in the
+     *  blocks done in a checkpoint this search resumed from. */
+    long keysTried() {
+        return _tried.sum();
+    }
+
+    /** Return the number of trial decryptions abandoned early. */
+    long keysAbandoned() {
+        return _abandoned.sum();
+    }
+
+    /** Return the number of keys tried per second since the current, or
+     *  last, call of run began. */
+    double keysPerSecond() {
+        long end = _finished == 0 ? System.nanoTime() : _finished;
+        double seconds = (end - _started) / 1e9;
+        return seconds <= 0 ? 0 : (keysTried() - _triedBefore) / seconds;
+    }
+
+    /** Return the best results so far, best first. */
+    List<TopResults.Result> results() {
+        return _top.results();
+    }
+
+    /** Stop searching soon.  Blocks already begun are not recorded as
+     *  done. */
+    void cancel() {
+        _cancelled = true;
+    }
+
+    /** Search every block not yet done, using POOL, and return the best
+     *  results.  If CHECKPOINT is not null, first resume from it if it
+     *  exists, and save progress to it every REPORT_INTERVAL seconds, on
+     *  finishing, and if the program is stopped.  Progress is reported on
+     *  the standard error. */
+    List<TopResults.Result> run(ForkJoinPool pool, Path checkpoint) {
+        if (checkpoint != null && Files.exists(checkpoint)) {
+            resume(checkpoint);
+        }
+        Thread hook = new Thread(() -> {
+            cancel();
+            if (checkpoint != null) {
+                checkpoint(checkpoint);
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(hook);
+        Thread reporter = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(REPORT_INTERVAL * 1000L);
+                    report();
+                    if (checkpoint != null) {
+                        checkpoint(checkpoint);
+                    }
+                }
+            } catch (InterruptedException excp) {
+                return;
+            }
+        }, "enigma-search-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+        try {
+            return run(pool);
+        } finally {
+            reporter.interrupt();
+            report();
+            if (checkpoint != null) {
+                checkpoint(checkpoint);
+            }
+            Runtime.getRuntime().removeShutdownHook(hook);
+        }
+    }
+
+    /** Search every block not yet done, using POOL, and return the best
+     *  results. */
+    List<TopResults.Result> run(ForkJoinPool pool) {
+        _cancelled = false;
+        _triedBefore = keysTried();
+        _started = System.nanoTime();
+        _finished = 0;
+        try {
+            pool.invoke(new Blocks(0, _blocks));
+        } finally {
+            _finished = System.nanoTime();
+        }
+        return results();
+    }
+
+    /** Print the progress of the search on the standard error. */
+    private void report() {
+        System.err.printf("searched %d of %d keys, %d abandoned early, "
+                + "%.0f keys/s%n", keysTried(), _total, keysAbandoned(),
+                keysPerSecond());
+    }
+
+    /** Return the setting line that gives the key numbered KEY. */
+    String setting(long key) {
+        int[] settings = new int[_slots];
+        int[] rings = new int[_slots];
+        Rotor[] order = decode(key, settings, rings);
+        StringBuilder result = new StringBuilder("*");
+        for (Rotor rotor : order) {
+            result.append(' ').append(rotor.name());
+        }
+        result.append(' ');
+        for (int i = 1; i < _slots; i += 1) {
+            result.append(_alphabet.toChar(settings[i]));
+        }
+        if (_ringSlots > 0) {
+            result.append(' ');
+            for (int i = 1; i < _slots; i += 1) {
+                result.append(_alphabet.toChar(rings[i]));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Save the blocks done and the results so far to FILE, replacing
+     *  it. */
+    synchronized void checkpoint(Path file) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint());
+            for (int i = 0; i < _done.length(); i += 1) {
+                out.writeLong(_done.get(i));
+            }
+            List<TopResults.Result> results = results();
+            out.writeInt(results.size());
+            for (TopResults.Result result : results) {
+                out.writeLong(result.key());
+                out.writeDouble(result.score());
+            }
+            out.flush();
+            Path temporary = Paths.get(file + ".tmp");
+            Files.write(temporary, bytes.toByteArray());
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Restore the blocks done and the results saved in FILE by
+     *  checkpoint. */
+    void resume(Path file) {
+        try {
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(Files.readAllBytes(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readLong() != fingerprint()) {
+                throw error("%s is not a checkpoint of this search", file);
+            }
+            for (int i = 0; i < _done.length(); i += 1) {
+                _done.set(i, in.readLong());
+            }
+            for (long block = 0; block < _blocks; block += 1) {
+                if (searched(block)) {
+                    _tried.add(Math.min(_total, (block + 1) * BLOCK)
+                            - block * BLOCK);
+                }
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i += 1) {
+                _top.offer(in.readLong(), in.readDouble());
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return a checksum identifying this search: the ciphertext, the
+     *  machine and the keys searched, the scorer, and the number of
+     *  results kept. */
+    private long fingerprint() {
+        CRC32 crc = new CRC32();
+        StringBuilder description = new StringBuilder();
+        description.append(_scorer.getClass().getName()).append(' ')
+            .append(_prune).append(' ')
+            .append(_top.capacity()).append(' ').append(_ringSlots)
+            .append(' ').append(_slots).append(' ').append(_pawls)
+            .append(' ').append(_total);
+        for (Rotor[] order : _orders) {
+            for (Rotor rotor : order) {
+                description.append(' ').append(rotor.name());
+            }
+        }
+        for (int c : _ciphertext) {
+            description.append(' ').append(c);
+        }
+        crc.update(description.toString().getBytes(
+                StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /** Return BASE to the power EXPONENT, throwing ArithmeticException if
+     *  it is too large. */
+    private static long power(int base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i += 1) {
+            result = Math.multiplyExact(result, (long) base);
+        }
+        return result;
+    }
+
+    /** Return the rotor order of the key numbered KEY, and fill in its
+     *  SETTINGS and RINGS, the reflector first. */
+    private Rotor[] decode(long key, int[] settings, int[] rings) {
+        long position = key % _positionCount;
+        long rest = key / _positionCount;
+        long ring = rest % _ringCount;
+        for (int i = _slots - 1; i > 0; i -= 1) {
+            settings[i] = (int) (position % _size);
+            position /= _size;
+            if (i >= _slots - _ringSlots) {
+                rings[i] = (int) (ring % _size);
+                ring /= _size;
+            } else {
+                rings[i] = 0;
+            }
+        }
+        return _orders[(int) (rest / _ringCount)];
+    }
+
+    /** Try every key in BLOCK, and record it as done unless the search
+     *  is cancelled first. */
+    private void search(long block) {
+        long first = block * BLOCK;
+        long last = Math.min(_total, first + BLOCK);
+        int length = _ciphertext.length;
+        int[] plain = new int[length];
+        int[] settings = new int[_slots];
+        int[] rings = new int[_slots];
+        MachineState state = new MachineState(new int[_slots],
+                new int[_slots]);
+        Rotor[] order = null;
+        MachineSpec spec = null;
+        long tried = 0;
+        for (long key = first; key < last; key += 1) {
+            if (_cancelled) {
+                _tried.add(tried);
+                return;
+            }
+            Rotor[] keyOrder = decode(key, settings, rings);
+            if (keyOrder != order) {
+                order = keyOrder;
+                spec = new MachineSpec(_alphabet, order, _pawls, _plugboard);
+            }
+            for (int i = 0; i < _slots; i += 1) {
+                state.set(i, settings[i], rings[i]);
+            }
+            tried += 1;
+            if (decrypt(spec, state, plain)) {
+                _top.offer(key, _scorer.score(plain, length));
+            }
+        }
+        _tried.add(tried);
+        int word = (int) (block / 64);
+        long bit = 1L << (block % 64);
+        _done.accumulateAndGet(word, bit, (a, b) -> a | b);
+    }
+
+    /** Decrypt the ciphertext with SPEC in STATE into PLAIN, returning
+     *  false if it is abandoned because it cannot beat the results
+     *  kept. */
+    private boolean decrypt(MachineSpec spec, MachineState state,
+                            int[] plain) {
+        int length = _ciphertext.length;
+        double threshold = _top.threshold();
+        double slack = SLACK * (1 + Math.abs(threshold));
+        int check = threshold == Double.NEGATIVE_INFINITY
+                ? length + 1 : FIRST_CHECK;
+        for (int i = 0; i < length; i += 1) {
+            plain[i] = spec.convert(state, _ciphertext[i]);
+            if (i + 1 == check) {
+                check *= 2;
+                if (_prune > 0
+                        && _scorer.estimate(plain, i + 1, length)
+                        < threshold - _prune * _scorer.spread(i + 1, length)
+                        || _scorer.bound(plain, i + 1, length)
+                        < threshold - slack) {
+                    _abandoned.increment();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff BLOCK has been searched. */
+    private boolean searched(long block) {
+        return (_done.get((int) (block / 64)) & (1L << (block % 64))) != 0;
+    }
+
+    /** A task searching the blocks FROM .. TO - 1. */
+    private class Blocks extends RecursiveAction {
+
+        /** A task for blocks FROM .. TO - 1. */
+        Blocks(long from, long to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_cancelled) {
+                return;
+            }
+            if (_to - _from > 1) {
+                long mid = _from + (_to - _from) / 2;
+                invokeAll(new Blocks(_from, mid), new Blocks(mid, _to));
+            } else if (!searched(_from)) {
+                search(_from);
+            }
+        }
+
+        /** First block searched. */
+        private final long _from;
+
+        /** Block just after the last searched. */
+        private final long _to;
+    }
+
+    /** Number of keys in a block. */
+    static final int BLOCK = 1 << 12;
+
+    /** Number of characters decrypted before a trial decryption is first
+     *  checked; it is checked again each time this doubles. */
+    static final int FIRST_CHECK = 32;
+
+    /** Default allowance, in spreads, for abandoning trial decryptions
+     *  by their estimated scores. */
+    static final double DEFAULT_PRUNE = 1;
+
+    /** Relative allowance for rounding when comparing a bound with the
+     *  worst result kept. */
+    private static final double SLACK = 1e-9;
+
+    /** Greatest number of rotor orders searched. */
+    static final int MAX_ORDERS = 1 << 24;
+
+    /** Seconds between progress reports and checkpoints. */
+    static final int REPORT_INTERVAL = 5;
+
+    /** First word of every checkpoint. */
+    private static final int MAGIC = 0x454e4b53;
+
+    /** Version of the checkpoint format. */
+    private static final int VERSION = 1;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of slots. */
+    private final int _slots;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Number of the rightmost rotors whose rings are searched. */
+    private final int _ringSlots;
+
+    /** The message, as alphabet indices. */
+    private final int[] _ciphertext;
+
+    /** Scores trial decryptions. */
+    private final Scorer _scorer;
+
+    /** Allowance for abandoning trial decryptions by their estimated
+     *  scores. */
+    private final double _prune;
+
+    /** The best keys found. */
+    private final TopResults _top;
+
+    /** The (empty) plugboard. */
+    private final Permutation _plugboard;
+
+    /** The rotor orders searched. */
+    private final Rotor[][] _orders;
+
+    /** Number of rotor settings per order and rings. */
+    private final long _positionCount;
+
+    /** Number of ring settings per order. */
+    private final long _ringCount;
+
+    /** Number of keys. */
+    private final long _total;
+
+    /** Number of blocks. */
+    private final long _blocks;
+
+    /** One bit per block, set once it has been searched. */
+    private final AtomicLongArray _done;
+
+    /** Number of keys tried. */
+    private final LongAdder _tried = new LongAdder();
+
+    /** Number of trial decryptions abandoned early. */
+    private final LongAdder _abandoned = new LongAdder();
+
+    /** True once the search is to stop. */
+    private volatile boolean _cancelled;
+
+    /** Value of keysTried() when the current run began. */
+    private volatile long _triedBefore;
+
+    /** Times at which the current run began and ended, or 0. */
+    private volatile long _started, _finished;
+}
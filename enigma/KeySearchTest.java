@@ -0,0 +1,146 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+public class KeySearchTest {
+    Alphabet alpha = EIGHT;
+
+    String plain = EIGHT_TEXT;
+
+    /** Return the test machine over ALPHA. */
+    private Machine machine() {
+        return eightLetterMachine();
+    }
+
+    /** Return a scorer using the bigrams of PLAIN. */
+    private NGramScorer bigrams() {
+        return ngrams(alpha, plain, 2);
+    }
+
+    /** Return PLAIN encrypted with a key in the search space of
+     *  checkSearchFindsKey. */
+    private String cipher() {
+        Machine m = machine();
+        m.insertRotors(new String[] {"R", "F", "Z", "X"});
+        m.setRotors("DBG");
+        m.setRings("ACE");
+        m.setRingstellung();
+        m.setPlugboard(new Permutation("", alpha));
+        return m.convert(plain);
+    }
+
+    /** Return the best TOP results of trying every key of SEARCH, a
+     *  search of CIPHERTEXT, in full, scoring by SCORER. */
+    private List<TopResults.Result> exact(KeySearch search, int[] ciphertext,
+                                          Scorer scorer, int top) {
+        TopResults results = new TopResults(top);
+        int[] plainText = new int[ciphertext.length];
+        for (long key = 0; key < search.size(); key += 1) {
+            String[] setting = search.setting(key).split(" ");
+            Machine m = machine();
+            m.insertRotors(new String[] {setting[1], setting[2], setting[3],
+                setting[4]});
+            MachineSpec spec = m.spec(new Permutation("", alpha));
+            MachineState state = spec.newState(setting[5], setting[6]);
+            spec.convert(state, ciphertext, 0, ciphertext.length, plainText,
+                    0);
+            results.offer(key, scorer.score(plainText, plainText.length));
+        }
+        return results.results();
+    }
+
+    /** Assert that EXPECTED and ACTUAL are the same results. */
+    private void assertSameResults(List<TopResults.Result> expected,
+                                   List<TopResults.Result> actual) {
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test public void checkSearchFindsKey() {
+        String cipher = cipher();
+        int[] ciphertext = indices(alpha, cipher);
+
+        for (double prune : new double[] {0, KeySearch.DEFAULT_PRUNE}) {
+            KeySearch search = new KeySearch(machine(), ciphertext, bigrams(),
+                    3, 2, prune);
+            assertEquals(6L * 8 * 8 * 8 * 8 * 8, search.size());
+            List<TopResults.Result> results =
+                    search.run(new ForkJoinPool(3));
+            assertEquals(search.size(), search.keysTried());
+            assertEquals(3, results.size());
+            String[] best = search.setting(results.get(0).key()).split(" ");
+            Machine m2 = machine();
+            m2.insertRotors(new String[] {best[1], best[2], best[3],
+                best[4]});
+            m2.setRotors(best[5]);
+            m2.setRings(best[6]);
+            m2.setRingstellung();
+            m2.setPlugboard(new Permutation("", alpha));
+            assertEquals(plain, m2.convert(cipher));
+        }
+    }
+
+    @Test public void checkUnprunedSearchIsExact() {
+        int[] ciphertext = indices(alpha, cipher());
+        for (Scorer scorer : new Scorer[] {
+                bigrams(), new CoincidenceScorer(alpha.size())}) {
+            KeySearch search = new KeySearch(machine(), ciphertext, scorer,
+                    10, 2, 0);
+            assertSameResults(exact(search, ciphertext, scorer, 10),
+                    search.run(new ForkJoinPool(3)));
+        }
+    }
+
+    @Test public void checkResumeFromCheckpoint() throws IOException {
+        int[] ciphertext = indices(alpha, cipher());
+        KeySearch search = new KeySearch(machine(), ciphertext, bigrams(),
+                10, 2, 0);
+        List<TopResults.Result> expected = search.run(new ForkJoinPool(3));
+        Path file = Files.createTempFile("search", ".checkpoint");
+        search.checkpoint(file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        for (int i = 16; i < 24; i += 1) {
+            bytes[i] = 0;
+        }
+        Files.write(file, bytes);
+        KeySearch resumed = new KeySearch(machine(), ciphertext, bigrams(),
+                10, 2, 0);
+        resumed.resume(file);
+        assertEquals(0, resumed.keysTried());
+        assertSameResults(expected, resumed.run(new ForkJoinPool(3)));
+
+        search.checkpoint(file);
+        resumed = new KeySearch(machine(), ciphertext, bigrams(), 10, 2, 0);
+        resumed.resume(file);
+        assertEquals(resumed.size(), resumed.keysTried());
+        assertSameResults(expected, resumed.run(new ForkJoinPool(3)));
+        Files.delete(file);
+    }
+
+    @Test public void checkTopResults() {
+        TopResults top = new TopResults(3);
+        assertEquals(Double.NEGATIVE_INFINITY, top.threshold(), 0);
+        assertTrue(top.offer(1, 0.5));
+        assertTrue(top.offer(2, 0.9));
+        assertTrue(top.offer(3, 0.1));
+        assertEquals(0.1, top.threshold(), 0);
+        assertFalse(top.offer(4, 0.1));
+        assertTrue(top.offer(0, 0.1));
+        assertTrue(top.offer(5, 0.7));
+        assertFalse(top.offer(5, 0.7));
+        assertFalse(top.offer(1, 0.5));
+        List<TopResults.Result> results = top.results();
+        assertEquals(2, results.get(0).key());
+        assertEquals(5, results.get(1).key());
+        assertEquals(1, results.get(2).key());
+    }
+}
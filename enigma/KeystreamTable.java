@@ -0,0 +1,343 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** The substitution made by a set-up machine at every position of its
+ *  moving rotors, in a file that is mapped into memory read-only.  Once a
+ *  machine has a table, converting a character is one lookup, at the
+ *  positions its rotors step to, however many rotors it has.
+ *
+ *  A table fits every machine with the same alphabet, slots and pawls,
+ *  the same rotor wirings and notches in the same slots, the same rings,
+ *  the same settings of the rotors that never move, and the same
+ *  plugboard.  These are hashed into a fingerprint, which names the file
+ *  (in some directory) and is checked when it is opened.  The rotors
+ *  that can move are those that rotate from the slot of the first pawl
+ *  on; each combination of their settings is a position, and the table
+ *  holds the substitution at each position, one byte per character (two
+ *  for alphabets of more than 256 characters).  Every position is
+ *  tabulated, not just those on the machine's stepping cycle, so that a
+ *  table serves any starting setting.
+ *
+ *  Because the file is mapped, processes on the same host that open the
+ *  same table share one copy of it in the page cache.  Tables are
+ *  written to a temporary file first and then moved into place, so no
+ *  process can see one half-written.
+ *  @author Akshay Patel
+ */
+final class KeystreamTable {
+
+    /** The name of the property naming the directory that Main looks
+     *  for tables in. */
+    static final String PROPERTY = "enigma.keystreams";
+
+    /** Suffix of the names of table files. */
+    static final String SUFFIX = ".keystream";
+
+    /** Build, in the directory ARGS[0], the tables of the machine read
+     *  from the configuration file ARGS[1] set up by each of the setting
+     *  lines ARGS[2 ..], printing the name of each file written.  Exits
+     *  with code 1 if a table cannot be built. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3) {
+                throw error("Usage: java enigma.KeystreamTable DIRECTORY "
+                        + "CONFIG SETTING...");
+            }
+            Path directory = Paths.get(args[0]);
+            Main main = new Main(new String[] { args[1] });
+            Machine machine = main.readConfig();
+            for (int k = 2; k < args.length; k += 1) {
+                main.setUp(machine, args[k]);
+                System.out.println(write(directory, machine));
+            }
+            return;
+        } catch (EnigmaException | InvalidPathException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the table for MACHINE, as set up now, in the directory
+     *  named by PROPERTY, mapping it if it is not already mapped.  Return
+     *  null if the property is not set, or there is no intact table for
+     *  MACHINE. */
+    static KeystreamTable find(Machine machine) {
+        if (DIRECTORY == null) {
+            return null;
+        }
+        byte[] fingerprint = fingerprint(machine);
+        String name = fileName(fingerprint);
+        KeystreamTable table = OPENED.get(name);
+        if (table == null) {
+            try {
+                table = open(Paths.get(DIRECTORY, name), fingerprint);
+            } catch (InvalidPathException excp) {
+                return null;
+            }
+            if (table == null) {
+                return null;
+            }
+            KeystreamTable other = OPENED.putIfAbsent(name, table);
+            table = other == null ? table : other;
+        }
+        return table;
+    }
+
+    /** Write the table for MACHINE, as set up now, into DIRECTORY,
+     *  unless it is already there, and return its file. */
+    static Path write(Path directory, Machine machine) {
+        byte[] fingerprint = fingerprint(machine);
+        Path file = directory.resolve(fileName(fingerprint));
+        if (open(file, fingerprint) != null) {
+            return file;
+        }
+        int size = machine.alphabet().size();
+        int[] moving = moving(machine);
+        long positions = 1;
+        for (int k = 0; k < moving.length; k += 1) {
+            positions *= size;
+            if (positions * size > MAX_ENTRIES) {
+                throw error("Keystream table would be too large.");
+            }
+        }
+        int width = width(size);
+        long length = HEADER + positions * size * width;
+        MachineSpec spec = machine.spec();
+        MachineState state = machine.state();
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, "enigma", ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer out = channel.map(
+                        FileChannel.MapMode.READ_WRITE, 0, length);
+                out.putInt(MAGIC);
+                out.putInt(VERSION);
+                out.putInt(size);
+                out.putInt(moving.length);
+                out.put(fingerprint);
+                out.position(HEADER);
+                for (long p = 0; p < positions; p += 1) {
+                    long rest = p;
+                    for (int k = moving.length - 1; k >= 0; k -= 1) {
+                        state._settings[moving[k]] = (int) (rest % size);
+                        rest /= size;
+                    }
+                    for (int c = 0; c < size; c += 1) {
+                        int e = spec.substitute(state, c);
+                        if (width == 1) {
+                            out.put((byte) e);
+                        } else {
+                            out.putChar((char) e);
+                        }
+                    }
+                }
+                out.force();
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            temporary = null;
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException excp) {
+                    /* Left for whoever cleans the directory. */
+                }
+            }
+        }
+        return file;
+    }
+
+    /** Return the table in FILE, mapped read-only, if it is intact and
+     *  has the fingerprint FINGERPRINT, or else null. */
+    static KeystreamTable open(Path file, byte[] fingerprint) {
+        try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER) {
+                return null;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, HEADER);
+            byte[] recorded = new byte[fingerprint.length];
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            int size = header.getInt();
+            int moving = header.getInt();
+            header.get(recorded);
+            long entries = (long) size;
+            for (int k = 0; k < moving; k += 1) {
+                entries *= size;
+            }
+            if (!Arrays.equals(recorded, fingerprint)
+                    || length != HEADER + entries * width(size)) {
+                return null;
+            }
+            return new KeystreamTable(channel.map(
+                    FileChannel.MapMode.READ_ONLY, HEADER,
+                    length - HEADER), size, fingerprint);
+        } catch (IOException | IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** A table of the substitutions TABLE, over an alphabet of SIZE
+     *  characters, for machines with fingerprint FINGERPRINT. */
+    private KeystreamTable(MappedByteBuffer table, int size,
+                           byte[] fingerprint) {
+        _table = table;
+        _size = size;
+        _wide = width(size) > 1;
+        _fingerprint = fingerprint;
+    }
+
+    /** Return true iff I am the table of MACHINE as it is set up now. */
+    boolean fits(Machine machine) {
+        return Arrays.equals(_fingerprint, fingerprint(machine));
+    }
+
+    /** Return the position of SLOTS, the rotors of a machine that I fit,
+     *  at their current settings. */
+    int position(Rotor[] slots, int[] moving) {
+        int result = 0;
+        for (int slot : moving) {
+            result = result * _size + slots[slot].setting();
+        }
+        return result;
+    }
+
+    /** Return the conversion of C at POSITION. */
+    int convert(int position, int c) {
+        int entry = position * _size + c;
+        return _wide ? _table.getChar(2 * entry) : _table.get(entry) & 0xff;
+    }
+
+    /** Return the slots of the rotors of MACHINE that can move. */
+    static int[] moving(Machine machine) {
+        Rotor[] slots = machine.slots();
+        int[] moving = new int[slots.length];
+        int count = 0;
+        for (int i = Math.max(0, machine.numPawls() - 1); i < slots.length;
+             i += 1) {
+            if (slots[i].rotates()) {
+                moving[count] = i;
+                count += 1;
+            }
+        }
+        return Arrays.copyOf(moving, count);
+    }
+
+    /** Return the fingerprint of MACHINE as it is set up now: a digest
+     *  of everything that a table for it depends on. */
+    static byte[] fingerprint(Machine machine) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("no SHA-256: %s", excp.getMessage());
+        }
+        Alphabet alphabet = machine.alphabet();
+        int size = alphabet.size();
+        Rotor[] slots = machine.slots();
+        MachineState state = machine.state();
+        int[] moving = moving(machine);
+        ByteBuffer words = ByteBuffer.allocate(Integer.BYTES
+                * (4 + size + slots.length * (3 + 2 * size)));
+        words.putInt(size).putInt(slots.length)
+            .putInt(machine.numPawls()).putInt(moving.length);
+        for (int c = 0; c < size; c += 1) {
+            words.putInt(machine.plugboard().permute(c));
+        }
+        for (int i = 0; i < slots.length; i += 1) {
+            Rotor rotor = slots[i];
+            boolean moves = Arrays.binarySearch(moving, i) >= 0;
+            words.putInt(rotor.rotates() ? 1 : 0);
+            words.putInt(state.ring(i));
+            words.putInt(moves ? -1 : state.setting(i));
+            for (int c = 0; c < size; c += 1) {
+                words.putInt(rotor.permutation().permute(c));
+            }
+            String notches = rotor.notches();
+            for (int c = 0; c < size; c += 1) {
+                words.putInt(notches.indexOf(alphabet.toChar(c)) >= 0
+                        ? 1 : 0);
+            }
+        }
+        digest.update(words.array());
+        for (int i = 0; i < size; i += 1) {
+            char c = alphabet.toChar(i);
+            digest.update((byte) (c >>> 8));
+            digest.update((byte) c);
+        }
+        return digest.digest();
+    }
+
+    /** Return the name of the file of the table with fingerprint
+     *  FINGERPRINT. */
+    private static String fileName(byte[] fingerprint) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : fingerprint) {
+            name.append(String.format("%02x", b & 0xff));
+        }
+        return name.append(SUFFIX).toString();
+    }
+
+    /** Return the number of bytes taken by each entry of a table over an
+     *  alphabet of SIZE characters. */
+    private static int width(int size) {
+        return size <= 256 ? 1 : 2;
+    }
+
+    /** First word of every table file. */
+    private static final int MAGIC = 0x454e4b53;
+
+    /** Version of the table file format. */
+    private static final int VERSION = 1;
+
+    /** Length of the header, which the table follows. */
+    private static final int HEADER = 64;
+
+    /** Largest number of entries in a table, which must fit in one
+     *  mapping, whose length is an int. */
+    private static final long MAX_ENTRIES = (Integer.MAX_VALUE - HEADER) / 2;
+
+    /** Directory Main looks for tables in, or null. */
+    private static final String DIRECTORY = System.getProperty(PROPERTY);
+
+    /** The tables opened by find, by file name. */
+    private static final ConcurrentHashMap<String, KeystreamTable> OPENED =
+        new ConcurrentHashMap<String, KeystreamTable>();
+
+    /** The substitution at each position, character by character. */
+    private final MappedByteBuffer _table;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** True iff entries are two bytes. */
+    private final boolean _wide;
+
+    /** Fingerprint of the machines I fit. */
+    private final byte[] _fingerprint;
+}
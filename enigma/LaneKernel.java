@@ -0,0 +1,57 @@
+package enigma;
+
+/** The table lookups of a batch of independent conversions, one per
+ *  lane, made for all the lanes at once.  Where the incubating Vector API
+ *  (module jdk.incubator.vector) is available, and the vector kernel has
+ *  been built, the lanes are converted several at a time with SIMD
+ *  gathers; otherwise, one at a time.  A kernel may keep scratch space,
+ *  so each thread should use its own.
+ *  @author Akshay Patel
+ */
+interface LaneKernel {
+
+    /** Replace each of CHARS[0 .. LANES-1] by its entry in TABLE. */
+    void map(int[] table, int[] chars, int lanes);
+
+    /** Replace each of CHARS[0 .. LANES-1] by its entry in the table of
+     *  its own lane: CHARS[L] by TABLES[L * SIZE + CHARS[L]]. */
+    void mapLanes(int[] tables, int size, int[] chars, int lanes);
+
+    /** Replace each of CHARS[0 .. LANES-1] by its image under a rotor
+     *  whose wiring, over an alphabet of SIZE characters, is WIRING
+     *  (which gives the images of 0 .. 2 * SIZE - 1), at setting
+     *  SETTINGS[L] and ring RINGS[L]. */
+    void rotor(int[] wiring, int size, int[] settings, int[] rings,
+               int[] chars, int lanes);
+
+    /** Return true iff I use SIMD instructions. */
+    boolean vectorized();
+
+    /** Return a kernel for up to LANES lanes, using the Vector API if
+     *  the Java runtime was started with it. */
+    static LaneKernel create(int lanes) {
+        LaneKernel result = vector(lanes);
+        return result == null ? new ScalarLaneKernel() : result;
+    }
+
+    /** Return a kernel for up to LANES lanes using the Vector API, or
+     *  null if the Java runtime was not started with it or the vector
+     *  kernel, which is compiled separately, is missing. */
+    static LaneKernel vector(int lanes) {
+        if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            return null;
+        }
+        try {
+            return (LaneKernel) Class.forName(VECTOR_KERNEL)
+                .getDeclaredConstructor(int.class).newInstance(lanes);
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return null;
+        }
+    }
+
+    /** Name of the module holding the Vector API. */
+    String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /** Name of the class of the kernel using the Vector API. */
+    String VECTOR_KERNEL = "enigma.VectorLaneKernel";
+}
@@ -0,0 +1,112 @@
+package enigma;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** A histogram of latencies in nanoseconds, which threads may add to
+ *  concurrently, with quantiles accurate to within an eighth.  Each
+ *  power of two from 16 up is split into SUB_BUCKETS buckets of equal
+ *  width, and smaller latencies have a bucket each, so that a quantile,
+ *  reported as the largest latency its bucket holds, is at most an
+ *  eighth more than the latency it stands for.  The counts are
+ *  LongAdders, as in Metrics, so that recording threads do not contend.
+ *  Used for the latencies of Server's requests and of the setups counted
+ *  by Metrics.
+ *  @author Akshay Patel
+ */
+final class LatencyHistogram {
+
+    /** Number of buckets each power of two is split into. */
+    static final int SUB_BUCKETS = 8;
+
+    /** Log base 2 of SUB_BUCKETS. */
+    private static final int SUB_BITS = 3;
+
+    /** Latencies below this have a bucket each. */
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+
+    /** Number of buckets. */
+    private static final int BUCKETS =
+        LINEAR + (Long.SIZE - 1 - (SUB_BITS + 1)) * SUB_BUCKETS;
+
+    /** An empty histogram. */
+    LatencyHistogram() {
+        _counts = new LongAdder[BUCKETS];
+        for (int k = 0; k < BUCKETS; k += 1) {
+            _counts[k] = new LongAdder();
+        }
+    }
+
+    /** Add a latency of NANOS, taking negative ones as 0. */
+    void record(long nanos) {
+        _counts[bucket(Math.max(0, nanos))].increment();
+    }
+
+    /** Return the number of latencies recorded. */
+    long count() {
+        long total = 0;
+        for (LongAdder count : _counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /** Return the number of latencies recorded in each bucket, the
+     *  largest latency of bucket K being largest(K). */
+    long[] counts() {
+        long[] result = new long[BUCKETS];
+        for (int k = 0; k < BUCKETS; k += 1) {
+            result[k] = _counts[k].sum();
+        }
+        return result;
+    }
+
+    /** Forget all the latencies recorded. */
+    void reset() {
+        for (LongAdder count : _counts) {
+            count.reset();
+        }
+    }
+
+    /** Return the FRACTION quantile of the latencies recorded, in
+     *  nanoseconds, or 0 if there are none. */
+    long quantile(double fraction) {
+        long[] counts = counts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int k = 0; k < BUCKETS && total > 0; k += 1) {
+            seen += counts[k];
+            if (seen >= rank) {
+                return largest(k);
+            }
+        }
+        return 0;
+    }
+
+    /** Return the bucket of NANOS, which is not negative. */
+    private static int bucket(long nanos) {
+        if (nanos < LINEAR) {
+            return (int) nanos;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Return the largest latency in bucket K. */
+    static long largest(int k) {
+        if (k < LINEAR) {
+            return k;
+        }
+        int exponent = (k - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+        long sub = (k - LINEAR) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width - 1;
+    }
+
+    /** Number of latencies in each bucket. */
+    private final LongAdder[] _counts;
+}
@@ -0,0 +1,256 @@
+package enigma;
+
+/** Splits configuration text and setting lines into typed tokens in a
+ *  single pass, without regular expressions.  Tokens are the maximal runs
+ *  of non-whitespace characters, as for java.util.Scanner, and each
+ *  records where it starts, so that errors can say where they are.
+ *  @author Akshay Patel
+ */
+class Lexer {
+
+    /** Kinds of token. */
+    enum Kind {
+        /** The word "*". */
+        STAR,
+        /** A run of the digits 0-9. */
+        NUMBER,
+        /** A group of cycles: "(", at least one character, then ")". */
+        CYCLES,
+        /** Any other token without parentheses, such as a name, a rotor
+         *  type and its notches, or a string of settings. */
+        WORD,
+        /** Any other token with a parenthesis. */
+        OTHER
+    }
+
+    /** A token of text. */
+    static class Token {
+
+        /** A token of kind KIND with text TEXT starting at column COLUMN
+         *  of line LINE.  LINE is 0 for text without lines. */
+        Token(Kind kind, String text, int line, int column) {
+            _kind = kind;
+            _text = text;
+            _line = line;
+            _column = column;
+        }
+
+        /** Return my kind. */
+        Kind kind() {
+            return _kind;
+        }
+
+        /** Return my text. */
+        String text() {
+            return _text;
+        }
+
+        /** Return true iff I have no parentheses. */
+        boolean plain() {
+            return _kind != Kind.CYCLES && _kind != Kind.OTHER;
+        }
+
+        /** Return true iff I am a single character other than a
+         *  parenthesis. */
+        boolean singleCharacter() {
+            return _text.codePointCount(0, _text.length()) == 1
+                    && !_text.equals("(") && !_text.equals(")");
+        }
+
+        /** Return a description of where I start. */
+        String where() {
+            return position(_line, _column);
+        }
+
+        @Override
+        public String toString() {
+            return _text;
+        }
+
+        /** My kind. */
+        private final Kind _kind;
+
+        /** My text. */
+        private final String _text;
+
+        /** My line, or 0. */
+        private final int _line;
+
+        /** My column. */
+        private final int _column;
+    }
+
+    /** A lexer for TEXT, which is divided into numbered lines iff
+     *  LINES. */
+    Lexer(String text, boolean lines) {
+        _text = text;
+        _line = lines ? 1 : 0;
+    }
+
+    /** Return true iff there is another token. */
+    boolean hasNext() {
+        return peek() != null;
+    }
+
+    /** Return the next token without consuming it, or null if there is
+     *  none. */
+    Token peek() {
+        if (_next == null) {
+            _next = scan();
+        }
+        return _next;
+    }
+
+    /** Return true iff there is a next token and it is of kind KIND. */
+    boolean nextIs(Kind kind) {
+        return peek() != null && _next.kind() == kind;
+    }
+
+    /** Consume and return the next token, or return null if there is
+     *  none. */
+    Token next() {
+        Token result = peek();
+        _next = null;
+        _pos = _end;
+        _line = _endLine;
+        _lineStart = _endLineStart;
+        return result;
+    }
+
+    /** Return true iff the next token starts at the very beginning of
+     *  the text. */
+    boolean atStart() {
+        return peek() != null && _end - _next.text().length() == 0;
+    }
+
+    /** Return the rest of the current line, from just after the last
+     *  token consumed, and move to the start of the next line. */
+    String line() {
+        _next = null;
+        int start = _pos;
+        while (_pos < _text.length() && !isSeparator(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+        String result = _text.substring(start, _pos);
+        if (_pos < _text.length()) {
+            _pos = skipSeparator(_pos);
+            newLine();
+        }
+        return result;
+    }
+
+    /** Return a description of where the next token starts, or of the end
+     *  of the text if there is none. */
+    String where() {
+        if (peek() != null) {
+            return _next.where();
+        }
+        return position(_endLine, _text.length() - _endLineStart + 1);
+    }
+
+    /** Return the first token after _pos, recording where it ends in
+     *  _end, _endLine and _endLineStart, or null if there is none. */
+    private Token scan() {
+        int line = _line, lineStart = _lineStart;
+        int pos = _pos;
+        while (pos < _text.length()) {
+            char c = _text.charAt(pos);
+            if (!Character.isWhitespace(c)) {
+                break;
+            } else if (isSeparator(c)) {
+                pos = skipSeparator(pos);
+                line = line == 0 ? 0 : line + 1;
+                lineStart = pos;
+            } else {
+                pos += 1;
+            }
+        }
+        _endLine = line;
+        _endLineStart = lineStart;
+        _end = pos;
+        if (pos == _text.length()) {
+            return null;
+        }
+        int start = pos;
+        boolean digits = true, parens = false;
+        while (pos < _text.length()) {
+            char c = _text.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                break;
+            }
+            digits &= c >= '0' && c <= '9';
+            parens |= c == '(' || c == ')';
+            pos += 1;
+        }
+        _end = pos;
+        String text = _text.substring(start, pos);
+        Kind kind;
+        if (text.equals("*")) {
+            kind = Kind.STAR;
+        } else if (digits) {
+            kind = Kind.NUMBER;
+        } else if (!parens) {
+            kind = Kind.WORD;
+        } else if (text.length() >= 3 && text.charAt(0) == '('
+                && text.charAt(text.length() - 1) == ')') {
+            kind = Kind.CYCLES;
+        } else {
+            kind = Kind.OTHER;
+        }
+        return new Token(kind, text, line, start - lineStart + 1);
+    }
+
+    /** Return true iff C ends a line. */
+    private static boolean isSeparator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+                || c == '\u0085';
+    }
+
+    /** Return the position just after the line separator at POS, taking
+     *  "\r\n" as one. */
+    private int skipSeparator(int pos) {
+        if (_text.charAt(pos) == '\r' && pos + 1 < _text.length()
+                && _text.charAt(pos + 1) == '\n') {
+            return pos + 2;
+        }
+        return pos + 1;
+    }
+
+    /** Record that a new line starts at _pos. */
+    private void newLine() {
+        if (_line > 0) {
+            _line += 1;
+        }
+        _lineStart = _pos;
+    }
+
+    /** Return a description of column COLUMN of line LINE, where a LINE
+     *  of 0 means that the text has no lines. */
+    private static String position(int line, int column) {
+        if (line == 0) {
+            return String.format("column %d", column);
+        }
+        return String.format("line %d, column %d", line, column);
+    }
+
+    /** The text being split. */
+    private final String _text;
+
+    /** Position in _text just after the last token consumed. */
+    private int _pos;
+
+    /** End of the token in _next, or of the text if there is none. */
+    private int _end;
+
+    /** Line and start of line at _end. */
+    private int _endLine, _endLineStart;
+
+    /** The next token, if it has been scanned. */
+    private Token _next;
+
+    /** Number of the current line, or 0 if lines are not counted. */
+    private int _line;
+
+    /** Position in _text where the current line starts. */
+    private int _lineStart;
+}
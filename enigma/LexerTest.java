@@ -0,0 +1,151 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.Lexer.Kind.*;
+
+/** The suite of all JUnit tests for the Lexer class.
+ *  @author Akshay Patel
+ */
+public class LexerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that the tokens of TEXT, split by a lexer that numbers lines
+     *  iff LINES, have the texts TEXTS and the kinds KINDS. */
+    private void checkTokens(String text, boolean lines, String[] texts,
+                             Lexer.Kind[] kinds) {
+        Lexer lexer = new Lexer(text, lines);
+        for (int k = 0; k < texts.length; k += 1) {
+            assertTrue(text, lexer.hasNext());
+            assertTrue(text, lexer.nextIs(kinds[k]));
+            Lexer.Token token = lexer.next();
+            assertEquals(text, texts[k], token.text());
+            assertEquals(text + " " + texts[k], kinds[k], token.kind());
+        }
+        assertFalse(text, lexer.hasNext());
+        assertNull(lexer.next());
+    }
+
+    /** A configuration with a bad cycle, CYCLE, in column 7 of line 5. */
+    private String config(String cycle) {
+        return "ABCDE\n3 1\n R R (AE) (BC)\n F N (AB)\n M MA " + cycle
+            + "\n";
+    }
+
+    /** Return the message of the error reported when a machine is
+     *  configured by CONFIG and set up by SETTING, or null if there is
+     *  none. */
+    private String error(String config, String setting) throws IOException {
+        Path file = Files.createTempFile("lexer", ".conf");
+        try {
+            Files.write(file, config.getBytes(Charset.defaultCharset()));
+            Main main = new Main(new String[] { file.toString() });
+            main.setUp(main.readConfig(), setting);
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkKinds() {
+        checkTokens("* B Beta III AXLE 12 0 (AB) (CDE)(FG) MQV",
+                false,
+                new String[] {"*", "B", "Beta", "III", "AXLE", "12", "0",
+                    "(AB)", "(CDE)(FG)", "MQV"},
+                new Lexer.Kind[] {STAR, WORD, WORD, WORD, WORD, NUMBER,
+                    NUMBER, CYCLES, CYCLES, WORD});
+        checkTokens("** *A 1A A1 + -",
+                false,
+                new String[] {"**", "*A", "1A", "A1", "+", "-"},
+                new Lexer.Kind[] {WORD, WORD, WORD, WORD, WORD, WORD});
+        checkTokens("", true, new String[0], new Lexer.Kind[0]);
+        checkTokens(" \t\n\r\n ", true, new String[0], new Lexer.Kind[0]);
+    }
+
+    @Test
+    public void checkParentheses() {
+        checkTokens("(AB (AB)C A(B) AB) () ( ) (A)",
+                false,
+                new String[] {"(AB", "(AB)C", "A(B)", "AB)", "()", "(",
+                    ")", "(A)"},
+                new Lexer.Kind[] {OTHER, OTHER, OTHER, OTHER, OTHER,
+                    OTHER, OTHER, CYCLES});
+        checkTokens("((AB)) (A(B)C) (AB)(CD",
+                false,
+                new String[] {"((AB))", "(A(B)C)", "(AB)(CD"},
+                new Lexer.Kind[] {CYCLES, CYCLES, OTHER});
+        Lexer lexer = new Lexer("(AB) (A ( A AB", false);
+        assertFalse(lexer.next().plain());
+        assertFalse(lexer.next().plain());
+        assertFalse(lexer.next().singleCharacter());
+        assertTrue(lexer.next().singleCharacter());
+        assertTrue(lexer.next().plain());
+    }
+
+    @Test
+    public void checkPositions() {
+        Lexer lexer = new Lexer("AB\n  CD EF\r\n\r\n\tGH\n", true);
+        assertTrue(lexer.atStart());
+        assertEquals("line 1, column 1", lexer.where());
+        lexer.next();
+        assertEquals("line 2, column 3", lexer.where());
+        lexer.next();
+        assertEquals("line 2, column 6", lexer.where());
+        lexer.next();
+        assertEquals("line 4, column 2", lexer.where());
+        lexer.next();
+        assertEquals("line 5, column 1", lexer.where());
+
+        lexer = new Lexer("  * B  AXLE", false);
+        assertFalse(lexer.atStart());
+        assertEquals("column 3", lexer.next().where());
+        assertEquals("column 5", lexer.next().where());
+        assertEquals("column 8", lexer.next().where());
+        assertEquals("column 12", lexer.where());
+
+        lexer = new Lexer("ABC DEF\n2 1\n", true);
+        assertEquals("ABC DEF", lexer.line());
+        assertEquals("line 2, column 1", lexer.where());
+        assertEquals("2", lexer.next().text());
+        assertEquals("line 2, column 3", lexer.peek().where());
+    }
+
+    @Test
+    public void checkErrorPositions() throws IOException {
+        String good = config("(ABC)");
+        assertNull(error(good, "* R F M AA (AB)"));
+        assertEquals("Cycle is not closed. (column 12)",
+                error(good, "* R F M AA (AB"));
+        assertEquals("Cycle is not closed. (column 12)",
+                error(good, "* R F M AA (A(B))"));
+        assertEquals("Cycle contains duplicate parenthesis. (column 12)",
+                error(good, "* R F M AA ((AB))"));
+        assertEquals("Character outside of a cycle. (column 15)",
+                error(good, "*  R F M AA   (AB) X"));
+        assertEquals("Rotor doesn't exist. (column 5)",
+                error(good, "* R Q M AA"));
+        assertEquals("Cycle is not closed. (line 5, column 7)",
+                error(config("(A(B)C)"), "* R F M AA"));
+        assertEquals("Cycle contains duplicate parenthesis. "
+                + "(line 5, column 7)",
+                error(config("((AB))"), "* R F M AA"));
+    }
+}
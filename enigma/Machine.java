@@ -1,8 +1,13 @@
 package enigma;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import jdk.jfr.Event;
 
 /** Class that represents a complete enigma machine.
  *  @author Akshay Patel
@@ -18,13 +23,42 @@ class Machine {
         _numRotors = numRotors;
         _pawls = pawls;
         _plugboard = null;
-        _allRotors = new ArrayList<Rotor>(allRotors);
+        _catalog = new RotorCatalog(allRotors);
         _machineRotors = new ArrayList<Rotor>();
+        _slots = new Rotor[0];
+        _notched = new long[0];
+        _stepper = new Stepper(_slots, pawls);
+        _cacheCapacity = Math.max(1, Math.min(DEFAULT_CACHE_CAPACITY,
+                CACHE_BUDGET / Math.max(1, alpha.size())));
+    }
+
+    /** Return a new machine with my alphabet, slots and pawls and its own
+     *  copies of my available rotors, with none of them inserted.  The
+     *  copies share my rotors' wiring, so only their positions are
+     *  new. */
+    Machine copy() {
+        List<Rotor> rotors = new ArrayList<Rotor>();
+        for (Rotor rotor : _catalog.all()) {
+            rotors.add(rotor.copy());
+        }
+        Machine result = new Machine(_alphabet, _numRotors, _pawls, rotors);
+        result._cacheCapacity = _cacheCapacity;
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Returns all rotors in machine. */
     List<Rotor> getAllRotors() {
-        return _allRotors;
+        return _catalog.all();
+    }
+
+    /** Return the catalog of my available rotors. */
+    RotorCatalog catalog() {
+        return _catalog;
     }
 
     /** Return the number of rotor slots I have. */
@@ -41,20 +75,29 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        List<Rotor> previous = new ArrayList<Rotor>(_machineRotors);
         _machineRotors.clear();
         for (int str = 0; str < rotors.length; str += 1) {
-            for (int rotor = 0; rotor < _allRotors.size(); rotor += 1) {
-                if (rotors[str].equals(_allRotors.get(rotor).name())) {
-                    if (str == 0 && !_allRotors.get(rotor).reflecting()) {
-                        throw EnigmaException.error
-                                ("First rotor has to be reflector");
-                    }
-                    if (!_machineRotors.contains(_allRotors.get(rotor))) {
-                        _machineRotors.add(_allRotors.get(rotor));
-                    }
+            for (int id = _catalog.id(rotors[str]); id != RotorCatalog.NONE;
+                 id = _catalog.nextWithSameName(id)) {
+                Rotor rotor = _catalog.get(id);
+                if (str == 0 && !rotor.reflecting()) {
+                    throw EnigmaException.error
+                            ("First rotor has to be reflector");
+                }
+                if (!_machineRotors.contains(rotor)) {
+                    _machineRotors.add(rotor);
                 }
             }
         }
+        if (!previous.equals(_machineRotors)) {
+            _slots = _machineRotors.toArray(new Rotor[0]);
+            _notched = new long[(_slots.length + Long.SIZE - 1) / Long.SIZE];
+            _stepper = new Stepper(_slots, _pawls);
+            resetCache();
+        }
+        findNotches();
+        _keystream = null;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -74,6 +117,11 @@ class Machine {
                 counter += 1;
             }
         }
+        if (_cache != null) {
+            _cache.restart();
+        }
+        findNotches();
+        _keystream = null;
     }
 
     /** Set my rotors according to RINGS, which must be a string of
@@ -101,45 +149,269 @@ class Machine {
         for (int i = 1; i < _machineRotors.size(); i += 1) {
             _machineRotors.get(i).setRingstellung();
         }
+        _keystream = null;
     }
 
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        if (!plugboard.equals(_plugboard)) {
+            resetCache();
+        }
         _plugboard = plugboard;
+        _keystream = null;
+    }
+
+    /** Return my plugboard, or null if it has not been set. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return the rotors in my slots, the reflector first.  The array
+     *  is mine and is not to be changed. */
+    Rotor[] slots() {
+        return _slots;
+    }
+
+    /** Convert with TABLE, which must fit me as I am now set up, until I
+     *  am next set up, or stop using a table if TABLE is null. */
+    void setKeystream(KeystreamTable table) {
+        if (table != null && !table.fits(this)) {
+            throw EnigmaException.error("Keystream table does not fit.");
+        }
+        _keystream = table;
+        _keystreamSlots = table == null ? null : KeystreamTable.moving(this);
+    }
+
+    /** Return the settings of my rotors, the reflector first. */
+    int[] settings() {
+        int[] result = new int[_slots.length];
+        for (int i = 0; i < _slots.length; i += 1) {
+            result[i] = _slots[i].setting();
+        }
+        return result;
+    }
+
+    /** Return a spec of me as I am now set up: my alphabet, pawls and
+     *  plugboard and the wiring and notches of the rotors in my slots.
+     *  The spec does not change when I do, and may be shared between
+     *  threads. */
+    MachineSpec spec() {
+        return spec(_plugboard);
+    }
+
+    /** Return a spec of me as spec() does, but with the plugboard
+     *  PLUGBOARD in place of mine. */
+    MachineSpec spec(Permutation plugboard) {
+        return new MachineSpec(_alphabet, _slots, _pawls, plugboard);
+    }
+
+    /** Return a new state holding the current settings and ring settings
+     *  of my rotors, for use with spec(). */
+    MachineState state() {
+        int[] rings = new int[_slots.length];
+        for (int i = 0; i < _slots.length; i += 1) {
+            rings[i] = Math.floorMod(_slots[i].setting()
+                    - _slots[i].ringstellung(), _alphabet.size());
+        }
+        return new MachineState(settings(), rings);
+    }
+
+    /** Return the settings my rotors will have, the reflector first,
+     *  after KEYSTROKES more characters are converted.  Does not change
+     *  my state. */
+    int[] settingsAfter(long keystrokes) {
+        return _stepper.positionsAfter(settings(), keystrokes);
+    }
+
+    /** Move my rotors to where they would be after converting OFFSET more
+     *  characters, without converting them. */
+    void seek(long offset) {
+        int[] before = settings();
+        int[] after = _stepper.positionsAfter(before, offset);
+        for (int i = 0; i < _slots.length; i += 1) {
+            if (after[i] != before[i]) {
+                _slots[i].rotate(after[i] - before[i]);
+            }
+        }
+        findNotches();
+    }
+
+    /** Keep the substitutions of at most CAPACITY rotor positions, or
+     *  none if CAPACITY is 0. */
+    void setCacheCapacity(int capacity) {
+        if (capacity < 0) {
+            throw EnigmaException.error("Cache capacity is negative.");
+        }
+        _cacheCapacity = capacity;
+        _cache = null;
+        resetCache();
+    }
+
+    /** Return the number of conversions answered by the substitution
+     *  cache. */
+    long cacheHits() {
+        return _cache == null ? 0 : _cache.hits();
+    }
+
+    /** Return the number of conversions the substitution cache could not
+     *  answer. */
+    long cacheMisses() {
+        return _cache == null ? 0 : _cache.misses();
+    }
+
+    /** Return the number of rotor positions evicted from the
+     *  substitution cache. */
+    long cacheEvictions() {
+        return _cache == null ? 0 : _cache.evictions();
+    }
+
+    /** Empty the substitution cache after the rotor order or plugboard
+     *  changes, and decide whether positions can be cached at all: the
+     *  settings of the rotors must fit in a long key. */
+    private void resetCache() {
+        _cacheable = _cacheCapacity > 0;
+        long positions = 1;
+        for (int i = 1; i < _machineRotors.size() && _cacheable; i += 1) {
+            _cacheable = positions <= Long.MAX_VALUE / _alphabet.size();
+            positions *= _alphabet.size();
+        }
+        _reciprocal = false;
+        if (!_machineRotors.isEmpty()) {
+            Permutation reflector = _machineRotors.get(0).permutation();
+            _reciprocal = true;
+            for (int i = 0; i < reflector.size(); i += 1) {
+                _reciprocal &= reflector.permute(reflector.permute(i)) == i;
+            }
+        }
+        if (_cache != null) {
+            _cache.clear();
+        }
+    }
+
+    /** Return a key identifying the current positions of my rotors. */
+    private long positionKey() {
+        long key = 0;
+        for (int i = 1; i < _machineRotors.size(); i += 1) {
+            key = key * _alphabet.size()
+                    + _machineRotors.get(i).ringstellung();
+        }
+        return key;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        int[] didAdvance = new int[_machineRotors.size()];
+        advanceRotors();
+        if (_keystream != null) {
+            return _keystream.convert(
+                    _keystream.position(_slots, _keystreamSlots), c);
+        }
+        if (!_cacheable) {
+            return substitute(c);
+        }
+        if (_cache == null) {
+            _cache = new SubstitutionCache(_cacheCapacity, _alphabet.size());
+        }
+        if (!_cache.worthLookingUp()) {
+            return substitute(c);
+        }
+        int result = _cache.lookup(positionKey(), c);
+        if (result == SubstitutionCache.UNKNOWN) {
+            result = substitute(c);
+            _cache.record(c, result);
+            if (_reciprocal) {
+                _cache.record(result, c);
+            }
+        }
+        return result;
+    }
 
-        for (int rotor = (numPawls() - 1);
-             rotor < (_machineRotors.size() - 1); rotor += 1) {
-            if (_machineRotors.get(rotor + 1).atNotch()) {
-                didAdvance[rotor + 1] = 1;
-                didAdvance[rotor] = 1;
+    /** Advance my rotors as for one keystroke: the rightmost rotor
+     *  always moves, and a rotor at its notch moves together with the
+     *  rotor to its left.  Only the rotors at their notches are looked
+     *  at, so a keystroke that moves just the rightmost rotor, as nearly
+     *  all do, is one step and one notch test, and the others take time
+     *  in proportion to the number of rotors they move. */
+    private void advanceRotors() {
+        int last = _slots.length - 1;
+        if (_carries == 0) {
+            Rotor fast = _slots[last];
+            fast.advance();
+            if (fast.atNotch() && last > _firstCarry) {
+                _notched[last >>> 6] |= 1L << last;
+                _carries += 1;
             }
+            if (Metrics.ENABLED) {
+                _steps += 1;
+            }
+            return;
         }
-        didAdvance[_machineRotors.size() - 1] = 1;
+        int moved = -1;
+        for (int w = 0; w < _notched.length; w += 1) {
+            long word = _notched[w];
+            while (word != 0) {
+                int slot = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (slot - 1 > moved) {
+                    step(slot - 1);
+                }
+                step(slot);
+                moved = slot;
+                if (Metrics.ENABLED) {
+                    _turnovers += 1;
+                }
+            }
+        }
+        if (moved < last) {
+            step(last);
+        }
+    }
 
-        for (int i = 0; i < _machineRotors.size(); i += 1) {
-            if (didAdvance[i] == 1) {
-                _machineRotors.get(i).advance();
+    /** Move the rotor in SLOT on by one position, noting whether it is
+     *  then at a notch. */
+    private void step(int slot) {
+        Rotor rotor = _slots[slot];
+        rotor.advance();
+        if (Metrics.ENABLED) {
+            _steps += 1;
+        }
+        if (slot > _firstCarry) {
+            long bit = 1L << slot;
+            long word = _notched[slot >>> 6];
+            boolean was = (word & bit) != 0;
+            if (rotor.atNotch() != was) {
+                _notched[slot >>> 6] = word ^ bit;
+                _carries += was ? -1 : 1;
             }
         }
+    }
 
+    /** Note which of my rotors are at their notches, after they have
+     *  been moved other than by advanceRotors. */
+    private void findNotches() {
+        _firstCarry = Math.max(0, numPawls() - 1);
+        _carries = 0;
+        Arrays.fill(_notched, 0);
+        for (int slot = _firstCarry + 1; slot < _slots.length; slot += 1) {
+            if (_slots[slot].atNotch()) {
+                _notched[slot >>> 6] |= 1L << slot;
+                _carries += 1;
+            }
+        }
+    }
+
+    /** Return the conversion of C by the plugboard, rotors and reflector
+     *  at their current positions. */
+    private int substitute(int c) {
         int plugboardPermed = _plugboard.permute(c);
-        for (int rotor = (_machineRotors.size() - 1); rotor > -1; rotor -= 1) {
-            plugboardPermed
-                    = _machineRotors.get(rotor).convertForward(plugboardPermed);
+        for (int rotor = _slots.length - 1; rotor > -1; rotor -= 1) {
+            plugboardPermed = _slots[rotor].convertForward(plugboardPermed);
         }
 
-        for (int rotor = 1; rotor < _machineRotors.size(); rotor += 1) {
-            plugboardPermed
-                    = _machineRotors.get(rotor).
-                    convertBackward(plugboardPermed);
+        for (int rotor = 1; rotor < _slots.length; rotor += 1) {
+            plugboardPermed = _slots[rotor].convertBackward(plugboardPermed);
         }
 
         plugboardPermed = _plugboard.invert(plugboardPermed);
@@ -147,16 +419,101 @@ class Machine {
         return plugboardPermed;
     }
 
+    /** Convert the LEN alphabet indices IN[OFF .. OFF+LEN-1] into
+     *  OUT[OUTOFF .. OUTOFF+LEN-1], advancing the machine before each.
+     *  IN and OUT may be the same array. */
+    void convert(int[] in, int off, int len, int[] out, int outOff) {
+        Event event = FlightEvents.beginConvert();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] = convert(in[off + i]);
+        }
+        converted(len, start, event);
+    }
+
+    /** Convert the LEN characters IN[OFF .. OFF+LEN-1] into
+     *  OUT[OUTOFF .. OUTOFF+LEN-1], advancing the machine before each.
+     *  IN and OUT may be the same array. */
+    void convert(char[] in, int off, int len, char[] out, int outOff) {
+        Event event = FlightEvents.beginConvert();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i]
+                    = _alphabet.toChar(convert(_alphabet.toInt(in[off + i])));
+        }
+        converted(len, start, event);
+    }
+
+    /** Record the conversion of LEN characters, begun at START, as
+     *  EVENT and in the Metrics, with the rotor movements counted since
+     *  the last conversion recorded. */
+    private void converted(int len, long start, Event event) {
+        if (Metrics.ENABLED) {
+            Metrics.converted(len, _steps, _turnovers,
+                    System.nanoTime() - start);
+            _steps = 0;
+            _turnovers = 0;
+        }
+        FlightEvents.endConvert(event, len);
+    }
+
+    /** Convert the characters remaining in IN, or as many as there is
+     *  room for in OUT, putting the results in OUT.  Both buffers'
+     *  positions move past the characters converted. */
+    void convert(CharBuffer in, CharBuffer out) {
+        int len = Math.min(in.remaining(), out.remaining());
+        if (in.hasArray() && out.hasArray()) {
+            convert(in.array(), in.arrayOffset() + in.position(), len,
+                    out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+        } else {
+            for (int i = 0; i < len; i += 1) {
+                out.put(_alphabet.toChar(convert(_alphabet.toInt(in.get()))));
+            }
+        }
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String output = "";
-        int decoded;
-        for (int i = 0; i < msg.length(); i += 1) {
-            decoded = convert(_alphabet.toInt(msg.charAt(i)));
-            output += _alphabet.toChar(decoded);
+        char[] chars = msg.toCharArray();
+        convert(chars, 0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    /** Convert the LEN characters IN[OFF .. OFF+LEN-1] into
+     *  OUT[OUTOFF .. OUTOFF+LEN-1] as convert(IN, OFF, LEN, OUT, OUTOFF)
+     *  does, but in chunks run in parallel on POOL.  The result, and my
+     *  state afterwards, are the same, even if some character is not in
+     *  my alphabet: only the characters before the first such are
+     *  converted in parallel, and the error is then reported as by
+     *  convert(IN, OFF, LEN, OUT, OUTOFF), with nothing more written to
+     *  OUT.  IN and OUT may be the same array. */
+    void convert(char[] in, int off, int len, char[] out, int outOff,
+                 ForkJoinPool pool) {
+        if (len <= ChunkConverter.CHUNK) {
+            convert(in, off, len, out, outOff);
+            return;
+        }
+        int valid = 0;
+        while (valid < len && _alphabet.contains(in[off + valid])) {
+            valid += 1;
+        }
+        pool.invoke(new ChunkConverter(spec(), state(), in, off, out,
+                outOff, 0, valid));
+        seek(valid);
+        if (valid < len) {
+            convert(in, off + valid, len - valid, out, outOff + valid);
         }
-        return output;
+    }
+
+    /** Returns the encoding/decoding of MSG, as convert(MSG) does, using
+     *  the common fork/join pool for long messages. */
+    String convertParallel(String msg) {
+        char[] chars = msg.toCharArray();
+        convert(chars, 0, chars.length, chars, 0, ForkJoinPool.commonPool());
+        return new String(chars);
     }
 
     /** Common alphabet of my rotors. */
@@ -171,9 +528,60 @@ class Machine {
     /** Plugboard permutation. */
     private Permutation _plugboard;
 
-    /** List of rotors available to machine. */
-    private List<Rotor> _allRotors;
+    /** Rotors available to machine. */
+    private final RotorCatalog _catalog;
 
     /** List of rotors in machine. */
     private List<Rotor> _machineRotors;
+
+    /** The rotors in _machineRotors, as an array for converting. */
+    private Rotor[] _slots;
+
+    /** The slots whose rotors are at a notch and so carry into the slot
+     *  to their left on the next keystroke, as a bit set: slot I is in it
+     *  iff bit I % 64 of _notched[I / 64] is set.  Only slots to the
+     *  right of _firstCarry are included. */
+    private long[] _notched;
+
+    /** Number of slots in _notched. */
+    private int _carries;
+
+    /** The leftmost slot a carry can reach. */
+    private int _firstCarry;
+
+    /** Works out where my rotors will be after many keystrokes. */
+    private Stepper _stepper;
+
+    /** Default number of rotor positions whose substitutions are kept. */
+    static final int DEFAULT_CACHE_CAPACITY = 4096;
+
+    /** Largest number of characters held by the default cache. */
+    static final int CACHE_BUDGET = 1 << 20;
+
+    /** Number of rotor positions whose substitutions are kept. */
+    private int _cacheCapacity;
+
+    /** Substitutions at recently seen rotor positions, created when
+     *  first needed. */
+    private SubstitutionCache _cache;
+
+    /** True iff the current rotor positions can be cached. */
+    private boolean _cacheable;
+
+    /** True iff my reflector, and so every substitution I perform, is
+     *  its own inverse. */
+    private boolean _reciprocal;
+
+    /** The table I convert with, or null. */
+    private KeystreamTable _keystream;
+
+    /** The slots of the rotors that index _keystream. */
+    private int[] _keystreamSlots;
+
+    /** Rotor movements not yet added to the Metrics. */
+    private long _steps;
+
+    /** Rotor movements carried by notches not yet added to the
+     *  Metrics. */
+    private long _turnovers;
 }
@@ -0,0 +1,226 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The unchanging part of a set-up machine: its alphabet, the wiring and
+ *  notches of the rotors in each of its slots, its pawls and its
+ *  plugboard.  A spec holds no rotor positions; those are kept in a
+ *  MachineState, which every conversion takes and moves on.  A spec is
+ *  never modified after it is made, so one spec may serve any number of
+ *  threads, each converting with its own states.
+ *  @author Akshay Patel
+ */
+final class MachineSpec {
+
+    /** A spec for a machine over ALPHABET holding the rotors SLOTS, the
+     *  reflector first, of which the rightmost PAWLS are driven by pawls,
+     *  with plugboard PLUGBOARD.  Only the rotors' wiring, kinds and
+     *  notches are used; SLOTS may change afterwards without affecting
+     *  me. */
+    MachineSpec(Alphabet alphabet, Rotor[] slots, int pawls,
+                Permutation plugboard) {
+        if (slots.length == 0 || plugboard == null) {
+            throw error("Machine is not set up.");
+        }
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _pawls = pawls;
+        _stepper = new Stepper(slots, pawls);
+        _forward = new int[slots.length][2 * _size];
+        _backward = new int[slots.length][2 * _size];
+        for (int i = 0; i < slots.length; i += 1) {
+            Permutation perm = slots[i].permutation();
+            for (int p = 0; p < 2 * _size; p += 1) {
+                _forward[i][p] = perm.permute(p % _size);
+                _backward[i][p] = perm.invert(p % _size);
+            }
+        }
+        _plugForward = new int[_size];
+        _plugBackward = new int[_size];
+        boolean plugged = false;
+        for (int p = 0; p < _size; p += 1) {
+            _plugForward[p] = plugboard.permute(p);
+            _plugBackward[p] = plugboard.invert(p);
+            plugged |= _plugForward[p] != p;
+        }
+        _plugged = plugged;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots I have. */
+    int slots() {
+        return _forward.length;
+    }
+
+    /** Return the number of pawls I have. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return a new state with every rotor and ring at its 0 setting. */
+    MachineState newState() {
+        return new MachineState(new int[slots()], new int[slots()]);
+    }
+
+    /** Return a new state with the rotors after the reflector at SETTING
+     *  and their rings at RINGS, each a string of slots()-1 characters in
+     *  my alphabet, the leftmost rotor first.  RINGS may be null, leaving
+     *  every ring at 0. */
+    MachineState newState(String setting, String rings) {
+        MachineState result = newState();
+        fill(result._settings, setting);
+        if (rings != null) {
+            fill(result._rings, rings);
+        }
+        return result;
+    }
+
+    /** Fill VALUES[1 ..] from the characters of SETTING. */
+    private void fill(int[] values, String setting) {
+        if (setting.length() > values.length - 1) {
+            throw error("Wheel settings too long.");
+        }
+        if (setting.length() < values.length - 1) {
+            throw error("Wheel settings too short.");
+        }
+        for (int i = 1; i < values.length; i += 1) {
+            values[i] = _alphabet.toInt(setting.charAt(i - 1));
+        }
+    }
+
+    /** Move the rotors of STATE on by one keystroke. */
+    void advance(MachineState state) {
+        _stepper.advance(state._settings);
+    }
+
+    /** Move the rotors of STATE to where they would be after OFFSET more
+     *  keystrokes, without converting anything. */
+    void seek(MachineState state, long offset) {
+        int[] after = _stepper.positionsAfter(state._settings, offset);
+        System.arraycopy(after, 0, state._settings, 0, after.length);
+    }
+
+    /** Return the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the rotors of STATE. */
+    int convert(MachineState state, int c) {
+        _stepper.advance(state._settings);
+        return substitute(state, c);
+    }
+
+    /** Convert the LEN alphabet indices IN[OFF .. OFF+LEN-1] into
+     *  OUT[OUTOFF .. OUTOFF+LEN-1], advancing STATE before each.  IN and
+     *  OUT may be the same array. */
+    void convert(MachineState state, int[] in, int off, int len,
+                 int[] out, int outOff) {
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] = convert(state, in[off + i]);
+        }
+    }
+
+    /** Convert the LEN characters IN[OFF .. OFF+LEN-1] into
+     *  OUT[OUTOFF .. OUTOFF+LEN-1], advancing STATE before each.  IN and
+     *  OUT may be the same array. */
+    void convert(MachineState state, char[] in, int off, int len,
+                 char[] out, int outOff) {
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] = _alphabet.toChar(
+                    convert(state, _alphabet.toInt(in[off + i])));
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG, moving STATE on
+     *  accordingly. */
+    String convert(MachineState state, String msg) {
+        char[] chars = msg.toCharArray();
+        convert(state, chars, 0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    /** Move LANES independent machines on by one keystroke each.
+     *  SETTINGS[I][L] is the setting of the rotor in slot I of machine
+     *  L. */
+    void advance(int[][] settings, int lanes) {
+        _stepper.advance(settings, lanes);
+    }
+
+    /** Replace each of CHARS[0 .. LANES-1] by its conversion by the
+     *  plugboard, rotors and reflector of a separate machine, without
+     *  moving them, making the lookups with KERNEL.  SETTINGS[I][L] and
+     *  RINGS[I][L] are the setting and ring of the rotor in slot I of
+     *  the machine converting CHARS[L].  Each rotor is applied to every
+     *  lane in turn, so that the lanes' lookups are independent of one
+     *  another. */
+    void substitute(int[][] settings, int[][] rings, int[] chars,
+                    int lanes, LaneKernel kernel) {
+        if (_plugged) {
+            kernel.map(_plugForward, chars, lanes);
+        }
+        for (int i = settings.length - 1; i >= 0; i -= 1) {
+            kernel.rotor(_forward[i], _size, settings[i], rings[i], chars,
+                    lanes);
+        }
+        for (int i = 1; i < settings.length; i += 1) {
+            kernel.rotor(_backward[i], _size, settings[i], rings[i], chars,
+                    lanes);
+        }
+        if (_plugged) {
+            kernel.map(_plugBackward, chars, lanes);
+        }
+    }
+
+    /** Return the conversion of C by the plugboard, rotors and reflector
+     *  at the positions in STATE, without moving them. */
+    int substitute(MachineState state, int c) {
+        int[] settings = state._settings;
+        int[] rings = state._rings;
+        int size = _size;
+        c = _plugForward[c];
+        for (int i = settings.length - 1; i >= 0; i -= 1) {
+            int r = settings[i] - rings[i];
+            r = r < 0 ? r + size : r;
+            c = _forward[i][c + r] - r;
+            c = c < 0 ? c + size : c;
+        }
+        for (int i = 1; i < settings.length; i += 1) {
+            int r = settings[i] - rings[i];
+            r = r < 0 ? r + size : r;
+            c = _backward[i][c + r] - r;
+            c = c < 0 ? c + size : c;
+        }
+        return _plugBackward[c];
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Steps the rotors. */
+    private final Stepper _stepper;
+
+    /** The permutation of the rotor in each slot applied to
+     *  0 .. 2 * size - 1, so that adding an offset below the size never
+     *  needs reducing. */
+    private final int[][] _forward;
+
+    /** The inverses of the permutations, laid out as _forward. */
+    private final int[][] _backward;
+
+    /** The plugboard permutation. */
+    private final int[] _plugForward;
+
+    /** The inverse of the plugboard permutation. */
+    private final int[] _plugBackward;
+
+    /** True iff the plugboard moves some character. */
+    private final boolean _plugged;
+}
@@ -0,0 +1,63 @@
+package enigma;
+
+/** The changing part of a machine: the setting and ring setting of the
+ *  rotor in each slot, the reflector first.  Everything else about a
+ *  machine is in its MachineSpec, which can be shared by any number of
+ *  states.  A state is just two small arrays, so that it is cheap to
+ *  create and to copy, and is meant to be used by one thread at a time.
+ *  @author Akshay Patel
+ */
+class MachineState {
+
+    /** A state with rotor settings SETTINGS and ring settings RINGS, one
+     *  per slot, each in the range 0 .. alphabet size - 1.  Neither array
+     *  is copied. */
+    MachineState(int[] settings, int[] rings) {
+        _settings = settings;
+        _rings = rings;
+    }
+
+    /** Return a state like me that changes independently of me. */
+    MachineState copy() {
+        return new MachineState(_settings.clone(), _rings.clone());
+    }
+
+    /** Return the number of slots. */
+    int slots() {
+        return _settings.length;
+    }
+
+    /** Return the setting of the rotor in SLOT. */
+    int setting(int slot) {
+        return _settings[slot];
+    }
+
+    /** Return the ring setting of the rotor in SLOT. */
+    int ring(int slot) {
+        return _rings[slot];
+    }
+
+    /** Put the rotor in SLOT at SETTING with its ring at RING. */
+    void set(int slot, int setting, int ring) {
+        _settings[slot] = setting;
+        _rings[slot] = ring;
+    }
+
+    /** Return a copy of the settings of my rotors, the reflector
+     *  first. */
+    int[] settings() {
+        return _settings.clone();
+    }
+
+    /** Return a copy of the ring settings of my rotors, the reflector
+     *  first. */
+    int[] rings() {
+        return _rings.clone();
+    }
+
+    /** Settings of the rotors, changed in place as they move. */
+    final int[] _settings;
+
+    /** Ring settings of the rotors. */
+    final int[] _rings;
+}
@@ -2,9 +2,17 @@ package enigma;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
+import static org.junit.Assume.*;
 
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 public class MachineTest {
     Alphabet testAlph
@@ -88,5 +96,328 @@ public class MachineTest {
                         + "OLDINGROSEWOOD"));
 
     }
-}
 
+    /** Return a machine holding the rotors B Beta III IV I at AXLE. */
+    private Machine navalMachine() {
+        List<Rotor> testRotors = new ArrayList<Rotor>();
+        testRotors.add(B);
+        testRotors.add(beta);
+        testRotors.add(rotIII);
+        testRotors.add(rotIV);
+        testRotors.add(rotI);
+        Machine testMachine = new Machine(testAlph, 5, 3, testRotors);
+        testMachine.setPlugboard(plugboardPerm);
+        testMachine.insertRotors(new String[]{"B", "Beta", "III", "IV", "I"});
+        testMachine.setRotors("AXLE");
+        return testMachine;
+    }
+
+    @Test public void checkSubstitutionCache() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine testMachine = navalMachine();
+        testMachine.setCacheCapacity(0);
+        String expected = testMachine.convert(msg);
+
+        testMachine.setCacheCapacity(4);
+        testMachine.setRotors("AXLE");
+        assertEquals(expected, testMachine.convert(msg));
+        assertEquals(0, testMachine.cacheHits());
+        assertTrue(testMachine.cacheEvictions() > 0);
+
+        testMachine.setCacheCapacity(64);
+        testMachine.setRotors("AXLE");
+        assertEquals(expected, testMachine.convert(msg));
+        testMachine.setRotors("AXLE");
+        assertEquals(expected, testMachine.convert(msg));
+        assertEquals(msg.length(), testMachine.cacheHits());
+        assertEquals(msg.length(), testMachine.cacheMisses());
+    }
+
+    @Test public void checkBulkConvert() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine testMachine = navalMachine();
+        String expected = testMachine.convert(msg);
+
+        testMachine.setRotors("AXLE");
+        char[] out = new char[msg.length() + 2];
+        testMachine.convert(("*" + msg).toCharArray(), 1, msg.length(),
+                out, 2);
+        assertEquals(expected, new String(out, 2, msg.length()));
+
+        testMachine.setRotors("AXLE");
+        CharBuffer in = CharBuffer.wrap(msg);
+        CharBuffer result = CharBuffer.allocate(10);
+        testMachine.convert(in, result);
+        assertEquals(10, in.position());
+        assertEquals(expected.substring(0, 10),
+                new String(result.array()));
+
+        testMachine.setRotors("AXLE");
+        int[] indices = new int[msg.length()];
+        for (int i = 0; i < indices.length; i += 1) {
+            indices[i] = testAlph.toInt(msg.charAt(i));
+        }
+        testMachine.convert(indices, 0, indices.length, indices, 0);
+        for (int i = 0; i < indices.length; i += 1) {
+            assertEquals(expected.charAt(i), testAlph.toChar(indices[i]));
+        }
+    }
+
+    @Test public void checkSeek() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine testMachine = navalMachine();
+        String expected = testMachine.convert(msg);
+        for (int skip = 0; skip <= msg.length(); skip += 1) {
+            testMachine.setRotors("AXLE");
+            int[] after = testMachine.settingsAfter(skip);
+            testMachine.seek(skip);
+            assertArrayEquals(after, testMachine.settings());
+            assertEquals(expected.substring(skip),
+                    testMachine.convert(msg.substring(skip)));
+        }
+
+        testMachine.setRotors("AXLE");
+        testMachine.seek(20000);
+        int[] expectedSettings = testMachine.settings();
+        testMachine.setRotors("AXLE");
+        for (int i = 0; i < 20000; i += 1) {
+            testMachine.convert(0);
+        }
+        assertArrayEquals(expectedSettings, testMachine.settings());
+    }
+
+    @Test public void checkStepping() {
+        List<Rotor> testRotors = new ArrayList<Rotor>();
+        testRotors.add(B);
+        testRotors.add(new MovingRotor("V", rotI.permutation(), "ABZ"));
+        testRotors.add(beta);
+        testRotors.add(new MovingRotor("VI", rotIII.permutation(), "AZ"));
+        testRotors.add(new MovingRotor("VII", rotIV.permutation(), "MNO"));
+        testRotors.add(new MovingRotor("VIII", rotI.permutation(), "CQ"));
+        Machine testMachine = new Machine(testAlph, 6, 5, testRotors);
+        testMachine.setPlugboard(plugboardPerm);
+        testMachine.insertRotors(
+                new String[]{"B", "V", "Beta", "VI", "VII", "VIII"});
+        testMachine.setRotors("ZAZMB");
+        MachineSpec spec = testMachine.spec();
+        MachineState state = testMachine.state();
+        for (int i = 0; i < 50000; i += 1) {
+            assertEquals(spec.convert(state, i % 26),
+                    testMachine.convert(i % 26));
+            assertArrayEquals(state.settings(), testMachine.settings());
+        }
+    }
+
+    @Test public void checkParallelConvert() {
+        Random random = new Random(61);
+        char[] msg = new char[5 * ChunkConverter.CHUNK + 17];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = testAlph.toChar(random.nextInt(testAlph.size()));
+        }
+        Machine testMachine = navalMachine();
+        testMachine.setRings("BCDE");
+        testMachine.setRingstellung();
+        String expected = testMachine.convert(new String(msg));
+        int[] expectedSettings = testMachine.settings();
+
+        testMachine.setRotors("AXLE");
+        testMachine.setRingstellung();
+        char[] out = new char[msg.length];
+        testMachine.convert(msg, 0, msg.length, out, 0, new ForkJoinPool(4));
+        assertEquals(expected, new String(out));
+        assertArrayEquals(expectedSettings, testMachine.settings());
+    }
+
+    @Test public void checkParallelConvertError() {
+        Random random = new Random(62);
+        char[] msg = new char[5 * ChunkConverter.CHUNK + 17];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = testAlph.toChar(random.nextInt(testAlph.size()));
+        }
+        msg[2 * ChunkConverter.CHUNK + 5] = '*';
+        char[][] results = new char[2][];
+        int[][] settings = new int[2][];
+        for (int k = 0; k < 2; k += 1) {
+            Machine testMachine = navalMachine();
+            results[k] = new char[msg.length];
+            Arrays.fill(results[k], '.');
+            try {
+                if (k == 0) {
+                    testMachine.convert(msg, 0, msg.length, results[k], 0);
+                } else {
+                    testMachine.convert(msg, 0, msg.length, results[k], 0,
+                            new ForkJoinPool(4));
+                }
+                fail("converted a character not in the alphabet");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            settings[k] = testMachine.settings();
+        }
+        assertEquals('.', results[0][2 * ChunkConverter.CHUNK + 5]);
+        assertEquals('.', results[0][msg.length - 1]);
+        assertArrayEquals(results[0], results[1]);
+        assertArrayEquals(settings[0], settings[1]);
+    }
+
+    @Test public void checkRotorCatalog() {
+        String expected = navalMachine().convert("HELLOWORLD");
+        List<Rotor> testRotors = new ArrayList<Rotor>();
+        for (int i = 0; i < 1000; i += 1) {
+            testRotors.add(new MovingRotor("X" + i,
+                    new Permutation("(AB)", testAlph), "A"));
+        }
+        testRotors.add(rotI);
+        testRotors.add(rotIV);
+        testRotors.add(rotIII);
+        testRotors.add(beta);
+        testRotors.add(B);
+        Machine testMachine = new Machine(testAlph, 5, 3, testRotors);
+        RotorCatalog catalog = testMachine.catalog();
+        assertEquals(1005, catalog.size());
+        assertSame(rotIV, catalog.get(catalog.id("IV")));
+        assertEquals(RotorCatalog.NONE, catalog.id("VI"));
+        assertEquals(RotorCatalog.NONE,
+                catalog.nextWithSameName(catalog.id("IV")));
+        assertEquals(1, catalog.reflectors().size());
+        assertEquals(1004, catalog.wheels().size());
+        assertEquals(1003, catalog.moving().size());
+        assertEquals(1, catalog.fixed().size());
+        assertSame(beta, catalog.fixed().get(0));
+        assertSame(rotI, catalog.moving().get(1000));
+
+        testMachine.setPlugboard(plugboardPerm);
+        testMachine.insertRotors(new String[]{"B", "Beta", "III", "IV", "I"});
+        testMachine.setRotors("AXLE");
+        assertEquals(expected, testMachine.convert("HELLOWORLD"));
+    }
+
+    @Test public void checkSpecAndState() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine testMachine = navalMachine();
+        testMachine.setRings("BCDE");
+        testMachine.setRingstellung();
+        MachineSpec spec = testMachine.spec();
+        MachineState start = testMachine.state();
+        String expected = testMachine.convert(msg);
+
+        MachineState first = start.copy();
+        MachineState second = start.copy();
+        assertEquals(expected.substring(0, 10),
+                spec.convert(first, msg.substring(0, 10)));
+        assertEquals(expected, spec.convert(second, msg));
+        assertEquals(expected.substring(10),
+                spec.convert(first, msg.substring(10)));
+        assertArrayEquals(testMachine.settings(), first.settings());
+        assertArrayEquals(start.settings(), spec.newState("AXLE", null)
+                .settings());
+
+        MachineState ringed = spec.newState("AXLE", "BCDE");
+        assertEquals(expected, spec.convert(ringed, msg));
+    }
+
+    @Test public void checkLaneKernels() {
+        int maxLanes = 67;
+        LaneKernel vector = LaneKernel.vector(maxLanes);
+        assumeTrue("Vector API not available", vector != null);
+        LaneKernel scalar = new ScalarLaneKernel();
+        assertTrue(vector.vectorized());
+        assertFalse(scalar.vectorized());
+        int size = testAlph.size();
+        int[] wiring = new int[2 * size];
+        for (int i = 0; i < wiring.length; i += 1) {
+            wiring[i] = rotIII.permutation().permute(i % size);
+        }
+        Random random = new Random(19);
+        for (int lanes = 0; lanes <= maxLanes; lanes += 1) {
+            int[] chars = new int[lanes];
+            int[] settings = new int[lanes];
+            int[] rings = new int[lanes];
+            int[] tables = new int[lanes * size];
+            int[] table = new int[size];
+            for (int l = 0; l < lanes; l += 1) {
+                chars[l] = random.nextInt(size);
+                settings[l] = random.nextInt(size);
+                rings[l] = random.nextInt(size);
+            }
+            for (int i = 0; i < tables.length; i += 1) {
+                tables[i] = random.nextInt(size);
+            }
+            for (int c = 0; c < size; c += 1) {
+                table[c] = random.nextInt(size);
+            }
+            int[] expected = chars.clone(), got = chars.clone();
+            scalar.map(table, expected, lanes);
+            vector.map(table, got, lanes);
+            assertArrayEquals("map, " + lanes + " lanes", expected, got);
+            scalar.mapLanes(tables, size, expected, lanes);
+            vector.mapLanes(tables, size, got, lanes);
+            assertArrayEquals("mapLanes, " + lanes + " lanes",
+                    expected, got);
+            scalar.rotor(wiring, size, settings, rings, expected, lanes);
+            vector.rotor(wiring, size, settings, rings, got, lanes);
+            assertArrayEquals("rotor, " + lanes + " lanes", expected, got);
+        }
+    }
+
+    @Test public void checkBatchConverter() {
+        Machine testMachine = navalMachine();
+        MachineSpec spec = testMachine.spec();
+        String[] settings = {"AXLE", "QEVZ", "BBBB", "ZZZZ", "MNOP"};
+        int count = 50;
+        MachineState[] states = new MachineState[count];
+        MachineState[] expected = new MachineState[count];
+        int[][] messages = new int[count][];
+        int[][] converted = new int[count][];
+        for (int k = 0; k < count; k += 1) {
+            states[k] = spec.newState(settings[k % settings.length],
+                    settings[k / settings.length % settings.length]);
+            expected[k] = states[k].copy();
+            messages[k] = new int[(k * 37) % 90];
+            for (int i = 0; i < messages[k].length; i += 1) {
+                messages[k][i] = (k + i * 7) % 26;
+            }
+            converted[k] = messages[k].clone();
+            spec.convert(expected[k], converted[k], 0, converted[k].length,
+                    converted[k], 0);
+        }
+        new BatchConverter(spec, 32).convert(states, messages);
+        for (int k = 0; k < count; k += 1) {
+            assertArrayEquals(converted[k], messages[k]);
+            assertArrayEquals(expected[k].settings(), states[k].settings());
+        }
+    }
+
+    @Test public void checkKeystreamTable() throws IOException {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Path directory = Files.createTempDirectory("keystreams");
+        Machine testMachine = navalMachine();
+        testMachine.setRings("BCDE");
+        testMachine.setRingstellung();
+        Path file = KeystreamTable.write(directory, testMachine);
+        assertEquals(file, KeystreamTable.write(directory, testMachine));
+        KeystreamTable table = KeystreamTable.open(file,
+                KeystreamTable.fingerprint(testMachine));
+        assertNotNull(table);
+        for (String setting : new String[] {"AXLE", "AQEV", "AZZZ"}) {
+            testMachine.setRotors(setting);
+            testMachine.setRings("BCDE");
+            testMachine.setRingstellung();
+            String expected = testMachine.convert(msg);
+            testMachine.setRotors(setting);
+            testMachine.setRingstellung();
+            testMachine.setKeystream(table);
+            assertEquals(expected, testMachine.convert(msg));
+        }
+        testMachine.setRotors("BXLE");
+        assertFalse(table.fits(testMachine));
+        try {
+            testMachine.setKeystream(table);
+            fail("table fits a machine with another Beta setting");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        Files.delete(file);
+        Files.delete(directory);
+    }
+}
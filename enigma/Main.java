@@ -1,14 +1,27 @@
 package enigma;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
-import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import jdk.jfr.Event;
 
 import static enigma.EnigmaException.*;
 
@@ -42,341 +55,501 @@ public final class Main {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configName = args[0];
+        _configText = getInput(args[0]);
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
-        } else {
-            _input = new Scanner(System.in);
+            _inputFile = getChannel(args[1], StandardOpenOption.READ);
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
-        } else {
-            _output = System.out;
+            _outputFile = getChannel(args[2], StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Convert the messages in INPUT, in alphabet ALPHABET, to OUTPUT,
+     *  for process(Machine), without any files.  OUTPUT is not closed. */
+    Main(Alphabet alphabet, MessageSource input, MessageSink output) {
+        _alphabet = alphabet;
+        _input = input;
+        _output = output;
+    }
+
+    /** Return the contents of the file named NAME. */
+    private byte[] getInput(String name) {
         try {
-            return new Scanner(new File(name));
-        } catch (IOException excp) {
+            return Files.readAllBytes(Paths.get(name));
+        } catch (IOException | InvalidPathException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return the contents of the configuration file. */
+    byte[] configText() {
+        return _configText;
+    }
+
+    /** Return a channel to the file named NAME, opened with OPTIONS. */
+    private FileChannel getChannel(String name,
+                                   StandardOpenOption... options) {
         try {
-            return new PrintStream(new File(name));
-        } catch (IOException excp) {
+            return FileChannel.open(Paths.get(name), options);
+        } catch (IOException | InvalidPathException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Set up _input and _output for messages in alphabet _alphabet.
+     *  Files whose characters can be handled as single bytes are mapped
+     *  into memory and written through a direct buffer; otherwise
+     *  characters are decoded and encoded in the default charset.
+     *  Output is flushed at the end of each line only when messages come
+     *  from the standard input, which may be interactive. */
+    private void openMessages() {
+        Charset charset = Charset.defaultCharset();
+        boolean bytes = MappedMessageReader.supported(_alphabet, charset);
+        if (_inputFile == null) {
+            _input = new MessageReader(new InputStreamReader(System.in),
+                    _alphabet);
+        } else if (bytes) {
+            _input = new MappedMessageReader(_inputFile, _alphabet, charset);
+        } else {
+            _input = new MessageReader(new InputStreamReader(
+                    Channels.newInputStream(_inputFile)), _alphabet);
+        }
+        GroupFormatter.FlushPolicy policy = _inputFile == null
+                ? GroupFormatter.FlushPolicy.EVERY_LINE
+                : GroupFormatter.FlushPolicy.WHEN_FULL;
+        boolean background = policy == GroupFormatter.FlushPolicy.WHEN_FULL
+                && Runtime.getRuntime().availableProcessors() > 1;
+        if (_outputFile == null) {
+            _output = new GroupFormatter(new OutputStreamWriter(System.out),
+                    _alphabet, GroupFormatter.BUFFER_SIZE, policy,
+                    background, false);
+        } else if (bytes) {
+            _output = new ChannelSink(_outputFile, _alphabet);
+        } else {
+            _output = new GroupFormatter(new OutputStreamWriter(
+                    Channels.newOutputStream(_outputFile)),
+                    _alphabet, GroupFormatter.BUFFER_SIZE, policy,
+                    background, true);
+        }
+        _output = new MeasuredSink(_output);
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  results to _output.  Lines holding only whitespace are copied as
+     *  empty lines, except before the first setting line, and processing
+     *  stops if a setting line follows another with no message between.
+     *  Each message line is read whole before any of it is converted, so
+     *  that a line with a character outside the alphabet produces no
+     *  output at all.  When messages come
+     *  from a file and there is more than one processor, the segments
+     *  of the file that start at setting lines are converted
+     *  concurrently. */
     private void process() {
-        Machine thisMachine = readConfig();
-        int counter = 0;
-        while (_input.hasNextLine()) {
-            if (_input.hasNext("\\*")) {
-                String setting = _input.nextLine();
-                while (setting.equals("")) {
-                    if (counter > 0) {
-                        _output.println();
-                    }
-                    setting = _input.nextLine();
-                }
-                setUp(thisMachine, setting);
-                counter += 1;
-                if (!_input.hasNext("\\*") && counter == 0) {
-                    throw EnigmaException.error
-                            ("No setting found on first line.");
-                }
-                if (_input.hasNext("\\*") && counter > 0) {
-                    break;
-                }
+        Machine thisMachine = loadConfig();
+        openMessages();
+        try {
+            process(thisMachine, _inputFile == null ? 1
+                    : Runtime.getRuntime().availableProcessors());
+        } finally {
+            _output.close();
+        }
+    }
+
+    /** Apply M to the messages in _input, as for process(), converting
+     *  the segments that start at setting lines concurrently on THREADS
+     *  threads if THREADS is more than 1. */
+    void process(Machine thisMachine, int threads) {
+        if (threads > 1) {
+            _segments = new SegmentPipeline(thisMachine, this::setUp,
+                    _output, threads);
+        }
+        try {
+            process(thisMachine);
+            if (_segments != null) {
+                _segments.finish(null);
             }
-            if (_input.hasNextLine() && !_input.hasNext("\\*")
-                    && counter == 0) {
-                throw EnigmaException.error("No setting found. ");
+        } catch (EnigmaException excp) {
+            if (_segments != null) {
+                _segments.finish(excp);
             }
+            throw excp;
+        } finally {
+            _segments = null;
+        }
+    }
 
-            if (_input.hasNextLine()) {
-                String message = _input.nextLine();
-                Scanner messageScanner = new Scanner(message);
-                String newMessage = "";
-                while (messageScanner.hasNext()) {
-                    newMessage += messageScanner.next();
+    /** Apply M to the messages in _input, as for process(). */
+    void process(Machine thisMachine) {
+        boolean configured = false;
+        boolean afterSetting = false;
+        while (true) {
+            int blankLines = _input.skipBlankLines();
+            if (_input.atEnd()) {
+                if (blankLines > 0 && !configured) {
+                    throw EnigmaException.error("No setting found. ");
+                }
+                printBlankLines(blankLines);
+                return;
+            }
+            if (_input.atSetting()) {
+                if (afterSetting) {
+                    return;
+                }
+                if (configured) {
+                    printBlankLines(blankLines);
+                }
+                if (_segments != null) {
+                    _segments.setting(_input.readLine());
+                } else {
+                    setUp(thisMachine, _input.readLine());
+                }
+                configured = true;
+                afterSetting = true;
+            } else {
+                if (!configured) {
+                    throw EnigmaException.error("No setting found. ");
+                }
+                printBlankLines(blankLines);
+                if (Metrics.ENABLED) {
+                    Metrics.message();
                 }
-                message = thisMachine.convert(newMessage);
-                printMessageLine(message);
+                convertMessageLine(thisMachine);
+                afterSetting = false;
             }
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
-        try {
-            int numPawls = 0;
-            int numRotors = 0;
-            String rotorTypes = "";
-            String rotorNotches = "";
-            Collection<Rotor> allMachineRotors = new ArrayList<Rotor>();
-
-            if (_config.hasNext("^[\\S]+")) {
-                String currNext = _config.nextLine();
-                _alphabet = new Alphabet(currNext);
-                if (_alphabet.contains('*') || _alphabet.contains(')')
-                        || _alphabet.contains('(')
-                        || _alphabet.contains(' ')) {
-                    throw EnigmaException
-                            .error("Alphabet has *, ), or (, or space.");
-                }
-            }
+    /** Convert the message line at the front of _input with M, printing
+     *  the result in groups of five.  Nothing is printed if the line
+     *  holds a character outside the alphabet. */
+    private void convertMessageLine(Machine M) {
+        if (_segments != null) {
+            _segments.messageLine(_input);
+            return;
+        }
+        _line.read(_input);
+        int[] chars = _line.chars();
+        M.convert(chars, 0, _line.length(), chars, 0);
+        _output.write(chars, 0, _line.length());
+        _output.endLine();
+    }
 
+    /** Print COUNT empty lines. */
+    private void printBlankLines(int count) {
+        if (_segments != null) {
+            _segments.blankLines(count);
+            return;
+        }
+        for (int i = 0; i < count; i += 1) {
+            _output.endLine();
+        }
+    }
 
-            if (_config.hasNext("\\d+")) {
-                try {
-                    numRotors = _config.nextInt();
-                } catch (NoSuchElementException excp) {
-                    throw EnigmaException
-                            .error("Number of rotors not correctly inputted.");
-                }
+    /** Return an Enigma machine configured from the snapshot compiled
+     *  from the configuration file, if it has a current one, and
+     *  otherwise from the configuration file itself. */
+    private Machine loadConfig() {
+        Event event = FlightEvents.beginConfig();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Machine result = null;
+        try {
+            result = ConfigSnapshot.load(
+                    Paths.get(_configName + ConfigSnapshot.SUFFIX),
+                    _configText);
+            if (result != null) {
+                _alphabet = result.alphabet();
             }
+        } catch (InvalidPathException excp) {
+            /* No snapshot can have this name. */
+        }
+        boolean snapshot = result != null;
+        if (!snapshot) {
+            result = readConfig();
+        }
+        if (Metrics.ENABLED) {
+            Metrics.configRead(System.nanoTime() - start);
+        }
+        FlightEvents.endConfig(event, _configName,
+                result.getAllRotors().size(), snapshot);
+        return result;
+    }
 
-            if (!_config.hasNext("\\d+")) {
-                throw EnigmaException.error("Alphabet or number of "
-                        + "rotors not set properly.");
-            }
-            if (_config.hasNext("\\d+")) {
-                numPawls = _config.nextInt();
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _configText. */
+    Machine readConfig() {
+        _config = new Lexer(decode(_configText), true);
+        int numPawls = 0;
+        int numRotors = 0;
+        Collection<Rotor> allMachineRotors = new ArrayList<Rotor>();
+
+        if (_config.atStart()) {
+            try {
+                _alphabet = new Alphabet(_config.line());
+            } catch (EnigmaException excp) {
+                throw errorAt("line 1, column 1", excp.getMessage());
             }
-            if (numRotors == 0) {
-                throw EnigmaException.error
-                        ("Number of rotors has to be greater than 0.");
+            if (_alphabet.contains('*') || _alphabet.contains(')')
+                    || _alphabet.contains('(')
+                    || _alphabet.contains(' ')) {
+                throw errorAt("line 1, column 1",
+                        "Alphabet has *, ), or (, or space.");
             }
+        }
 
-            if (numPawls > numRotors) {
-                throw EnigmaException.error
-                        ("Can't have more pawls than rotors.");
-            }
-            while (_config.hasNext("[^\\(\\)\\s]+")) {
-                allMachineRotors.add(readRotor());
-            }
-            return new Machine(_alphabet,
-                    numRotors, numPawls, allMachineRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+        Lexer.Token rotorCount = null;
+        if (_config.nextIs(Lexer.Kind.NUMBER)) {
+            rotorCount = _config.next();
+            numRotors = toInt(rotorCount,
+                    "Number of rotors not correctly inputted.");
+        }
+        if (!_config.nextIs(Lexer.Kind.NUMBER)) {
+            throw errorAt(_config.where(),
+                    "Alphabet or number of rotors not set properly.");
+        }
+        Lexer.Token pawlCount = _config.next();
+        numPawls = toInt(pawlCount, "configuration file truncated");
+        if (numRotors == 0) {
+            throw errorAt(rotorCount.where(),
+                    "Number of rotors has to be greater than 0.");
+        }
+        if (numPawls > numRotors) {
+            throw errorAt(pawlCount.where(),
+                    "Can't have more pawls than rotors.");
         }
+        while (_config.hasNext() && _config.peek().plain()) {
+            allMachineRotors.add(readRotor());
+        }
+        return new Machine(_alphabet,
+                numRotors, numPawls, allMachineRotors);
     }
 
     /** Return a rotor, reading its description from _config. */
     private Rotor readRotor() {
-        try {
-            Character rotorType = ' ';
-            String rotorNotches = "";
-            String rotorPerm = "";
+        String name = _config.next().text();
+        String where = _config.where();
+        Lexer.Token type = _config.next();
+        char rotorType = type == null ? ' ' : type.text().charAt(0);
+        String rotorNotches = type == null ? "" : type.text().substring(1);
+
+        String cyclesWhere = _config.where();
+        StringBuilder rotorPerm = new StringBuilder();
+        while (_config.nextIs(Lexer.Kind.CYCLES)) {
+            rotorPerm.append(_config.next().text());
+        }
 
-            String name = _config.next();
+        if (rotorType != 'M' && rotorType != 'N' && rotorType != 'R') {
+            throw errorAt(where, "Rotor type is incorrect.");
+        }
+        Permutation perm;
+        try {
+            perm = new Permutation(rotorPerm.toString(), _alphabet);
+        } catch (EnigmaException excp) {
+            throw errorAt(cyclesWhere, excp.getMessage());
+        }
+        if (rotorType == 'M') {
+            return new MovingRotor(name, perm, rotorNotches);
+        } else if (rotorType == 'N') {
+            return new FixedRotor(name, perm);
+        } else {
+            return new Reflector(name, perm);
+        }
+    }
 
-            if (_config.hasNext("[\\S]*")) {
-                String currChars = _config.next();
-                rotorType = currChars.charAt(0);
-                for (int i = 1; i < currChars.length(); i += 1) {
-                    rotorNotches += currChars.charAt(i);
-                }
-            }
+    /** Return the value of TOKEN, a number, or report MESSAGE if it is too
+     *  large. */
+    private static int toInt(Lexer.Token token, String message) {
+        try {
+            return Integer.parseInt(token.text());
+        } catch (NumberFormatException excp) {
+            throw errorAt(token.where(), message);
+        }
+    }
 
-            while (_config.hasNext("(\\(([\\S]+)\\))(\\s(\\(([\\S]+)\\)))*")) {
-                rotorPerm += _config.next();
-            }
+    /** Return the characters encoded in BYTES in the default charset, up
+     *  to the first that cannot be decoded (where java.util.Scanner
+     *  would stop reading). */
+    private static String decode(byte[] bytes) {
+        CharsetDecoder decoder = Charset.defaultCharset().newDecoder();
+        CharBuffer chars = CharBuffer.allocate(
+                (int) Math.ceil(bytes.length * decoder.maxCharsPerByte()));
+        CoderResult result = decoder.decode(ByteBuffer.wrap(bytes), chars,
+                true);
+        if (!result.isError()) {
+            decoder.flush(chars);
+        }
+        chars.flip();
+        return chars.toString();
+    }
 
-            if (rotorType.equals('M')) {
-                return new MovingRotor(name,
-                        new Permutation(rotorPerm, _alphabet), rotorNotches);
-            }
-            if (rotorType.equals('N')) {
-                return new FixedRotor(name,
-                        new Permutation(rotorPerm, _alphabet));
-            }
-            if (rotorType.equals('R')) {
-                return new Reflector(name,
-                        new Permutation(rotorPerm, _alphabet));
-            } else {
-                throw EnigmaException.error("Rotor type is incorrect.");
-            }
+    /** Return an error reporting MESSAGE, which arose at the position
+     *  described by WHERE. */
+    private static EnigmaException errorAt(String where, String message) {
+        return error("%s (%s)", message, where);
+    }
 
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+    /** Set M according to the specification given on SETTINGS,
+     *  which must have the format specified in the assignment, timing it
+     *  for the Metrics and as a FlightEvents.Setup event.  M converts
+     *  with its keystream table, if one has been built in the directory
+     *  named by the enigma.keystreams property. */
+    void setUp(Machine M, String settings) {
+        Event event = FlightEvents.beginSetup();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        configure(M, settings);
+        M.setKeystream(KeystreamTable.find(M));
+        if (Metrics.ENABLED) {
+            Metrics.setUp(System.nanoTime() - start);
         }
+        FlightEvents.endSetup(event);
     }
 
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        String[] rotorNames = new String[M.numRotors()];
-        Scanner settScanner = new Scanner(settings);
-        String rings = "";
-
-        int counter = 0;
-        if (settScanner.hasNext("[^\\*]")) {
-            throw EnigmaException
-                    .error("Setting needs to have an * in beginning.");
-        }
-        String currString = settScanner.next();
-        getDuplicates(settings, M);
-        while (settScanner.hasNext("([\\S]+)")) {
-            currString = settScanner.next();
-            reflectorPosition(M, rotorNames, currString);
-
-            if (counter < M.numRotors() - 1) {
-                rotorExists(M, currString);
-            }
-            if (counter < M.numRotors()) {
-                rotorNames[counter] = currString;
+    /** Set M according to SETTINGS, as for setUp. */
+    private void configure(Machine M, String settings) {
+        Lexer setting = new Lexer(settings, false);
+        if (!setting.nextIs(Lexer.Kind.STAR)) {
+            throw errorAt(setting.where(),
+                    "Setting needs to have an * in beginning.");
+        }
+        setting.next();
+        List<Lexer.Token> tokens = new ArrayList<Lexer.Token>();
+        while (setting.hasNext()) {
+            tokens.add(setting.next());
+        }
+        getDuplicates(tokens, setting.where(), M);
+
+        int numRotors = M.numRotors();
+        String[] rotorNames = new String[numRotors];
+        for (int i = 0; i < numRotors; i += 1) {
+            Lexer.Token name = tokens.get(i);
+            if (i == 0) {
+                reflectorPosition(M, name);
             }
-
-            if (counter == M.numRotors()) {
-                M.insertRotors(rotorNames);
-                break;
+            if (i < numRotors - 1) {
+                rotorExists(M, name);
             }
-            counter += 1;
+            rotorNames[i] = name.text();
         }
-        tooManyRotors(M, currString, settScanner);
-        M.setRotors(currString);
-        String plugPerm = "";
-        if (settScanner.hasNext("[^\\(\\)]+")) {
-            rings = settScanner.next();
-            M.setRings(rings);
-            M.setRingstellung();
+        try {
+            M.insertRotors(rotorNames);
+        } catch (EnigmaException excp) {
+            throw errorAt(tokens.get(0).where(), excp.getMessage());
         }
-        getPerm(plugPerm, M, settScanner);
-    }
 
-    /** RETURNS VOID, errors if duplicates
-     * are found in string SETTINGS and machine M. */
-    void getDuplicates(String settings, Machine M) {
-        Scanner loopScanner = new Scanner(settings);
-        loopScanner.next();
-        int loopCount = 0;
-        while (loopScanner.hasNext()) {
-            loopScanner.next();
-            loopCount += 1;
-        }
-        if (loopCount < M.numRotors() + 1) {
-            throw EnigmaException
-                    .error("Settings has too few rotors for machine.");
-        }
-        String[] duplicates = new String[loopCount];
-        Scanner newLoopScanner = new Scanner(settings);
-        newLoopScanner.next();
-        int duplicateCounter = 0;
-        while (newLoopScanner.hasNext()) {
-            duplicates[duplicateCounter] = newLoopScanner.next();
-            duplicateCounter += 1;
-        }
-        Arrays.sort(duplicates);
-        for (int i = 0; i < duplicates.length - 1; i += 1) {
-            if (duplicates[i].equals(duplicates[i + 1])) {
-                throw EnigmaException
-                        .error("Duplicate rotor name.");
+        Lexer.Token positions = tokens.get(numRotors);
+        int next = numRotors + 1;
+        tooManyRotors(M, positions,
+                next < tokens.size() ? tokens.get(next) : null);
+        try {
+            M.setRotors(positions.text());
+        } catch (EnigmaException excp) {
+            throw errorAt(positions.where(), excp.getMessage());
+        }
+        if (next < tokens.size() && tokens.get(next).plain()) {
+            Lexer.Token rings = tokens.get(next);
+            try {
+                M.setRings(rings.text());
+                M.setRingstellung();
+            } catch (EnigmaException excp) {
+                throw errorAt(rings.where(), excp.getMessage());
             }
+            next += 1;
         }
+        getPerm(tokens.subList(next, tokens.size()), setting.where(), M);
     }
 
-    /** RETURNS VOID, takes in string PLUGPERM,
-     * machine M, and scanner SETTSCANNER. */
-    void getPerm(String plugPerm, Machine M, Scanner settScanner) {
-        while (settScanner.hasNext()) {
-            plugPerm += settScanner.next();
+    /** RETURNS VOID, errors if the SETTINGS following the "*" of a
+     * setting line, which ends at END, are too few for machine M or
+     * repeat themselves. */
+    void getDuplicates(List<Lexer.Token> settings, String end, Machine M) {
+        if (settings.size() < M.numRotors() + 1) {
+            throw errorAt(end, "Settings has too few rotors for machine.");
+        }
+        HashSet<String> seen = new HashSet<String>();
+        for (Lexer.Token token : settings) {
+            if (!seen.add(token.text())) {
+                throw errorAt(token.where(), "Duplicate rotor name.");
+            }
         }
-        M.setPlugboard(new Permutation(plugPerm, _alphabet));
     }
 
-
-
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String currOutput = "";
-        int counter = 0;
-        for (int i = 0; i < msg.length(); i += 1) {
-            if (counter == 5) {
-                currOutput = currOutput + " " + msg.charAt(i);
-                counter = 1;
-            } else {
-                currOutput += msg.charAt(i);
-                counter += 1;
-            }
+    /** RETURNS VOID, sets the plugboard of machine M to the cycles in
+     * PLUGPERM, the last words of a setting line, which ends at END. */
+    void getPerm(List<Lexer.Token> plugPerm, String end, Machine M) {
+        StringBuilder cycles = new StringBuilder();
+        for (Lexer.Token token : plugPerm) {
+            cycles.append(token.text());
+        }
+        try {
+            M.setPlugboard(new Permutation(cycles.toString(), _alphabet));
+        } catch (EnigmaException excp) {
+            throw errorAt(plugPerm.isEmpty() ? end : plugPerm.get(0).where(),
+                    excp.getMessage());
         }
-        _output.println(currOutput);
     }
 
     /** Error if rotor doesn't exist. Returns VOID,
-     * machine M, string CURRSTRING. */
-    private void rotorExists(Machine M, String currString) {
-        boolean doesNotExist = true;
-        for (int i = 0; i < M.getAllRotors().size(); i += 1) {
-            if (M.getAllRotors().get(i).name().equals(currString)) {
-                doesNotExist = false;
-                break;
-            }
-        }
-        if (doesNotExist) {
-            throw EnigmaException
-                    .error("Rotor doesn't exist.");
+     * machine M, token NAME. */
+    private void rotorExists(Machine M, Lexer.Token name) {
+        if (!M.catalog().contains(name.text())) {
+            throw errorAt(name.where(), "Rotor doesn't exist.");
         }
     }
 
-    /** Error if too many rotors are inputted. Returns VOID,
-     * machine M, string CURRSTRING, Scanner SETTSCANNER */
-    private void tooManyRotors(Machine M, String currString,
-                               Scanner settScanner) {
-        for (int i = 0; i < M.getAllRotors().size(); i += 1) {
-            if (M.getAllRotors().get(i).name().equals(currString)) {
-                if (settScanner.hasNext("[^\\(\\)]")) {
-                    break;
-                } else {
-                    throw EnigmaException
-                            .error("Too many rotors inputted.");
-                }
-            }
+    /** Error if too many rotors are inputted, so that POSITIONS, the
+     * token after the rotors, names a rotor and is not followed by
+     * a one-character token NEXT (if any). Returns VOID, machine M. */
+    private void tooManyRotors(Machine M, Lexer.Token positions,
+                               Lexer.Token next) {
+        if (M.catalog().contains(positions.text())
+                && (next == null || !next.singleCharacter())) {
+            throw errorAt(positions.where(), "Too many rotors inputted.");
         }
     }
 
     /** Error if reflector is not in first position. Returns VOID,
-     * machine M, string array ROTORNAMES, string CURRSTRING. */
-    private void reflectorPosition(Machine M, String[] rotorNames,
-                                   String currString) {
-        if (rotorNames[0] == null) {
-            for (int i = 0; i < M.getAllRotors().size(); i += 1) {
-                if (M.getAllRotors().get(i).name().equals(currString)) {
-                    if (M.getAllRotors().get(i).reflecting()) {
-                        break;
-                    } else {
-                        throw EnigmaException
-                                .error("Reflector is "
-                                        + "not in the first position.");
-                    }
-                }
-            }
+     * machine M, token NAME of the first rotor. */
+    private void reflectorPosition(Machine M, Lexer.Token name) {
+        Rotor rotor = M.catalog().find(name.text());
+        if (rotor != null && !rotor.reflecting()) {
+            throw errorAt(name.where(), "Reflector is "
+                    + "not in the first position.");
         }
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Input file of messages, or null for the standard input. */
+    private FileChannel _inputFile;
+
+    /** Output file, or null for the standard output. */
+    private FileChannel _outputFile;
+
     /** Source of input messages. */
-    private Scanner _input;
+    private MessageSource _input;
+
+    /** Name of the configuration file. */
+    private String _configName;
+
+    /** Contents of the configuration file. */
+    private byte[] _configText;
 
     /** Source of machine configuration. */
-    private Scanner _config;
+    private Lexer _config;
+
+    /** Destination of encoded/decoded messages. */
+    private MessageSink _output;
+
+    /** Converts segments of _input concurrently, or null to convert
+     *  them in turn. */
+    private SegmentPipeline _segments;
 
-    /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    /** The message line being converted. */
+    private final MessageLine _line = new MessageLine();
 }
@@ -0,0 +1,308 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** Reads the lines of an input file of settings and messages directly
+ *  from a memory-mapped view of the file, for alphabets whose characters
+ *  are all ASCII.  Message bytes are translated straight to alphabet
+ *  indices without being decoded into characters.  Other bytes are
+ *  decoded (as UTF-8, ISO-8859-1 or US-ASCII) only to tell whether they
+ *  are whitespace or line separators, so that the file is read exactly
+ *  as MessageReader would read it.  The file is mapped WINDOW bytes at a
+ *  time, so files of any size may be read.
+ *  @author Akshay Patel
+ */
+class MappedMessageReader implements MessageSource {
+
+    /** A reader of FILE, which is encoded in CHARSET and whose messages
+     *  are in ALPHABET.  ALPHABET and CHARSET must be supported(). */
+    MappedMessageReader(FileChannel file, Alphabet alphabet,
+                        Charset charset) {
+        _file = file;
+        _charset = charset;
+        _utf8 = charset.equals(StandardCharsets.UTF_8);
+        _latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+        _index = new int[ASCII];
+        for (int b = 0; b < ASCII; b += 1) {
+            _index[b] = alphabet.contains((char) b)
+                    ? alphabet.toInt((char) b) : -1;
+        }
+        try {
+            _size = file.size();
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+        map(0);
+    }
+
+    /** Return true iff files encoded in CHARSET with messages in ALPHABET
+     *  can be read by a MappedMessageReader. */
+    static boolean supported(Alphabet alphabet, Charset charset) {
+        if (!charset.equals(StandardCharsets.UTF_8)
+                && !charset.equals(StandardCharsets.ISO_8859_1)
+                && !charset.equals(StandardCharsets.US_ASCII)) {
+            return false;
+        }
+        for (int i = 0; i < alphabet.size(); i += 1) {
+            if (alphabet.toChar(i) >= ASCII) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int skipBlankLines() {
+        int lines = 0;
+        boolean partial = false;
+        while (fill(1)) {
+            int c = peek();
+            if (isSeparator(c)) {
+                skipSeparator(c);
+                lines += 1;
+                partial = false;
+            } else if (Character.isWhitespace(c)) {
+                _pos += _width;
+                partial = true;
+            } else {
+                return lines;
+            }
+        }
+        return partial ? lines + 1 : lines;
+    }
+
+    @Override
+    public boolean atEnd() {
+        return !fill(1);
+    }
+
+    @Override
+    public boolean atSetting() {
+        if (!fill(1) || _window.get(_pos) != '*') {
+            return false;
+        }
+        fill(1 + MAX_WIDTH);
+        if (_limit - _pos == 1) {
+            return true;
+        }
+        _pos += 1;
+        boolean result = Character.isWhitespace(peek());
+        _pos -= 1;
+        return result;
+    }
+
+    @Override
+    public String readLine() {
+        int length = 0;
+        while (fill(1)) {
+            int c = peek();
+            if (isSeparator(c)) {
+                skipSeparator(c);
+                break;
+            }
+            if (length + _width > _line.length) {
+                byte[] longer = new byte[2 * _line.length];
+                System.arraycopy(_line, 0, longer, 0, length);
+                _line = longer;
+            }
+            for (int k = 0; k < _width; k += 1) {
+                _line[length] = _window.get(_pos);
+                length += 1;
+                _pos += 1;
+            }
+        }
+        return new String(_line, 0, length, _charset);
+    }
+
+    @Override
+    public int readMessage(int[] buf, int off, int len) {
+        int n = 0;
+        _endOfLine = false;
+        while (n < len) {
+            if (!fill(1)) {
+                _endOfLine = true;
+                break;
+            }
+            byte b = _window.get(_pos);
+            if (b == '\n' || b == '\r') {
+                skipSeparator(b);
+                _endOfLine = true;
+                break;
+            } else if (b >= 0 && WHITESPACE[b]) {
+                _pos += 1;
+            } else if (b >= 0 && _index[b] >= 0) {
+                buf[off + n] = _index[b];
+                n += 1;
+                _pos += 1;
+            } else {
+                int c = peek();
+                if (isSeparator(c)) {
+                    skipSeparator(c);
+                    _endOfLine = true;
+                    break;
+                } else if (!Character.isWhitespace(c)) {
+                    throw error("Character not in alphabet.");
+                }
+                _pos += _width;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public boolean endOfLine() {
+        return _endOfLine;
+    }
+
+    /** Return the character (code point) at _pos, which must be in the
+     *  window, setting _width to the number of bytes it occupies.
+     *  Malformed or unmappable bytes are returned as U+FFFD. */
+    private int peek() {
+        int b = _window.get(_pos) & 0xff;
+        _width = 1;
+        if (b < ASCII || _latin1) {
+            return b;
+        } else if (!_utf8) {
+            return REPLACEMENT;
+        }
+        int length, c;
+        if ((b & 0xe0) == 0xc0) {
+            length = 2;
+            c = b & 0x1f;
+        } else if ((b & 0xf0) == 0xe0) {
+            length = 3;
+            c = b & 0x0f;
+        } else if ((b & 0xf8) == 0xf0) {
+            length = 4;
+            c = b & 0x07;
+        } else {
+            return REPLACEMENT;
+        }
+        if (!fill(length)) {
+            return REPLACEMENT;
+        }
+        for (int k = 1; k < length; k += 1) {
+            int next = _window.get(_pos + k) & 0xff;
+            if ((next & 0xc0) != 0x80) {
+                return REPLACEMENT;
+            }
+            c = (c << 6) | (next & 0x3f);
+        }
+        _width = length;
+        return c;
+    }
+
+    /** Return true iff C ends a line. */
+    private static boolean isSeparator(int c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+                || c == '\u0085';
+    }
+
+    /** Move past the line separator C that I am at, taking "\r\n" as
+     *  one. */
+    private void skipSeparator(int c) {
+        _pos += c == '\n' || c == '\r' ? 1 : _width;
+        if (c == '\r' && fill(1) && _window.get(_pos) == '\n') {
+            _pos += 1;
+        }
+    }
+
+    /** Make sure that at least N (at most 1 + MAX_WIDTH) unread bytes
+     *  are in the window, if the file has that many, returning true iff
+     *  it does.  If it does not, the window reaches the end of the
+     *  file. */
+    private boolean fill(int n) {
+        if (_limit - _pos >= n) {
+            return true;
+        }
+        if (_start + _limit == _size) {
+            return false;
+        }
+        map(_start + _pos);
+        return _limit - _pos >= n;
+    }
+
+    /** Map the window of the file beginning at byte START. */
+    private void map(long start) {
+        long length = Math.min(WINDOW, _size - start);
+        try {
+            _window = _file.map(FileChannel.MapMode.READ_ONLY, start, length);
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+        _start = start;
+        _limit = (int) length;
+        _pos = 0;
+    }
+
+    /** Number of ASCII characters. */
+    private static final int ASCII = 128;
+
+    /** Largest number of bytes in one character. */
+    private static final int MAX_WIDTH = 4;
+
+    /** Character standing for undecodable bytes. */
+    private static final int REPLACEMENT = 0xfffd;
+
+    /** Number of bytes of the file mapped at a time. */
+    private static final long WINDOW = 1 << 26;
+
+    /** Initial size of the buffer for setting lines. */
+    private static final int LINE_SIZE = 128;
+
+    /** True for the ASCII whitespace characters that do not end
+     *  lines. */
+    private static final boolean[] WHITESPACE = new boolean[ASCII];
+
+    static {
+        for (int b = 0; b < ASCII; b += 1) {
+            WHITESPACE[b] = Character.isWhitespace(b) && !isSeparator(b);
+        }
+    }
+
+    /** The file being read. */
+    private final FileChannel _file;
+
+    /** Size of _file in bytes. */
+    private final long _size;
+
+    /** Encoding of _file. */
+    private final Charset _charset;
+
+    /** True iff _charset is UTF-8. */
+    private final boolean _utf8;
+
+    /** True iff _charset is ISO-8859-1. */
+    private final boolean _latin1;
+
+    /** Alphabet index of each ASCII byte, or -1 if it is not in the
+     *  alphabet. */
+    private final int[] _index;
+
+    /** The currently mapped part of the file. */
+    private MappedByteBuffer _window;
+
+    /** Position in the file of the start of _window. */
+    private long _start;
+
+    /** Number of bytes in _window. */
+    private int _limit;
+
+    /** Next unread byte in _window. */
+    private int _pos;
+
+    /** Number of bytes in the character last returned by peek(). */
+    private int _width;
+
+    /** Bytes of the line being read by readLine. */
+    private byte[] _line = new byte[LINE_SIZE];
+
+    /** True iff the last readMessage reached the end of its line. */
+    private boolean _endOfLine;
+}
@@ -0,0 +1,53 @@
+package enigma;
+
+import jdk.jfr.Event;
+
+/** A MessageSink passing everything on to another, timing its writes
+ *  for the Metrics, when they are enabled, and recording them as
+ *  FlightEvents.Output events.
+ *  @author Akshay Patel
+ */
+final class MeasuredSink implements MessageSink {
+
+    /** A sink passing everything on to SINK. */
+    MeasuredSink(MessageSink sink) {
+        _sink = sink;
+    }
+
+    @Override
+    public void write(int[] buf, int off, int len) {
+        Event event = FlightEvents.beginOutput();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        _sink.write(buf, off, len);
+        written(start, len, event);
+    }
+
+    @Override
+    public void endLine() {
+        Event event = FlightEvents.beginOutput();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        _sink.endLine();
+        written(start, 0, event);
+    }
+
+    @Override
+    public void close() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        _sink.close();
+        if (Metrics.ENABLED) {
+            Metrics.written(System.nanoTime() - start);
+        }
+    }
+
+    /** Record a write of LEN characters, begun at START, as EVENT and in
+     *  the Metrics. */
+    private static void written(long start, int len, Event event) {
+        if (Metrics.ENABLED) {
+            Metrics.written(System.nanoTime() - start);
+        }
+        FlightEvents.endOutput(event, len);
+    }
+
+    /** Where everything goes. */
+    private final MessageSink _sink;
+}
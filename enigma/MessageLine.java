@@ -0,0 +1,46 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A reusable buffer holding one whole message line, as alphabet
+ *  indices.  A line is read completely before any of it is converted,
+ *  so that one holding a character outside the alphabet fails before
+ *  any of its output is written.  The buffer grows to fit the longest
+ *  line read.
+ *  @author Akshay Patel
+ */
+class MessageLine {
+
+    /** Read the message line at the front of INPUT, as for readMessage,
+     *  replacing my contents, and move to the next line. */
+    void read(MessageSource input) {
+        int length = 0;
+        do {
+            if (length == _chars.length) {
+                _chars = Arrays.copyOf(_chars, 2 * length);
+            }
+            length += input.readMessage(_chars, length,
+                    _chars.length - length);
+        } while (!input.endOfLine());
+        _length = length;
+    }
+
+    /** Return my characters, in chars()[0 .. length()-1]. */
+    int[] chars() {
+        return _chars;
+    }
+
+    /** Return the number of characters in the line. */
+    int length() {
+        return _length;
+    }
+
+    /** Initial size of the buffer. */
+    private static final int INITIAL_SIZE = 1 << 13;
+
+    /** The characters of the line, followed by unused space. */
+    private int[] _chars = new int[INITIAL_SIZE];
+
+    /** Number of characters in the line. */
+    private int _length;
+}
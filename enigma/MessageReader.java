@@ -0,0 +1,169 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** Reads the lines of an input file of settings and messages in a single
+ *  pass through a fixed-size buffer, so that lines of any length can be
+ *  handled in constant memory.  Message lines are delivered in pieces,
+ *  with their whitespace removed.  Lines end at any of the separators
+ *  java.util.Scanner recognizes.
+ *  @author Akshay Patel
+ */
+class MessageReader implements MessageSource {
+
+    /** A reader of the characters from SOURCE, whose messages are in
+     *  ALPHABET. */
+    MessageReader(Reader source, Alphabet alphabet) {
+        _source = source;
+        _alphabet = alphabet;
+        _buf = new char[BUFFER_SIZE];
+    }
+
+    @Override
+    public int skipBlankLines() {
+        int lines = 0;
+        boolean partial = false;
+        while (fill(1)) {
+            char c = _buf[_pos];
+            if (isSeparator(c)) {
+                skipSeparator();
+                lines += 1;
+                partial = false;
+            } else if (Character.isWhitespace(c)) {
+                _pos += 1;
+                partial = true;
+            } else {
+                return lines;
+            }
+        }
+        return partial ? lines + 1 : lines;
+    }
+
+    @Override
+    public boolean atEnd() {
+        return !fill(1);
+    }
+
+    @Override
+    public boolean atSetting() {
+        if (!fill(1) || _buf[_pos] != '*') {
+            return false;
+        }
+        return !fill(2) || Character.isWhitespace(_buf[_pos + 1]);
+    }
+
+    @Override
+    public String readLine() {
+        StringBuilder line = new StringBuilder();
+        while (fill(1)) {
+            char c = _buf[_pos];
+            if (isSeparator(c)) {
+                skipSeparator();
+                break;
+            }
+            line.append(c);
+            _pos += 1;
+        }
+        return line.toString();
+    }
+
+    @Override
+    public int readMessage(int[] buf, int off, int len) {
+        int n = 0;
+        _endOfLine = false;
+        while (n < len) {
+            if (!fill(1)) {
+                _endOfLine = true;
+                break;
+            }
+            char c = _buf[_pos];
+            if (isSeparator(c)) {
+                skipSeparator();
+                _endOfLine = true;
+                break;
+            }
+            _pos += 1;
+            if (!Character.isWhitespace(c)) {
+                buf[off + n] = _alphabet.toInt(c);
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public boolean endOfLine() {
+        return _endOfLine;
+    }
+
+    /** Return true iff C ends a line. */
+    private static boolean isSeparator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+                || c == '\u0085';
+    }
+
+    /** Move past the line separator I am at, taking "\r\n" as one. */
+    private void skipSeparator() {
+        char c = _buf[_pos];
+        _pos += 1;
+        if (c == '\r' && fill(1) && _buf[_pos] == '\n') {
+            _pos += 1;
+        }
+    }
+
+    /** Make sure that at least N (at most BUFFER_SIZE) unread characters
+     *  are buffered, if the input has that many, returning true iff it
+     *  does. */
+    private boolean fill(int n) {
+        if (_limit - _pos >= n) {
+            return true;
+        }
+        if (_eof) {
+            return false;
+        }
+        System.arraycopy(_buf, _pos, _buf, 0, _limit - _pos);
+        _limit -= _pos;
+        _pos = 0;
+        try {
+            while (_limit < n) {
+                int count = _source.read(_buf, _limit, _buf.length - _limit);
+                if (count < 0) {
+                    _eof = true;
+                    return false;
+                }
+                _limit += count;
+            }
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+        return true;
+    }
+
+    /** Number of characters buffered from the source. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Source of characters. */
+    private final Reader _source;
+
+    /** Alphabet of the messages. */
+    private final Alphabet _alphabet;
+
+    /** Characters read from _source; those at _pos .. _limit - 1 are
+     *  unread. */
+    private final char[] _buf;
+
+    /** Next unread character in _buf. */
+    private int _pos;
+
+    /** End of the characters read into _buf. */
+    private int _limit;
+
+    /** True once _source is exhausted. */
+    private boolean _eof;
+
+    /** True iff the last readMessage reached the end of its line. */
+    private boolean _endOfLine;
+}
@@ -0,0 +1,18 @@
+package enigma;
+
+/** A destination for converted messages, which are printed in groups of
+ *  five characters separated by spaces, one message line per line.
+ *  @author Akshay Patel
+ */
+interface MessageSink {
+
+    /** Add the characters whose alphabet indices are
+     *  BUF[OFF .. OFF+LEN-1] to the current line. */
+    void write(int[] buf, int off, int len);
+
+    /** End the current line. */
+    void endLine();
+
+    /** Write out anything still buffered and release the destination. */
+    void close();
+}
@@ -0,0 +1,34 @@
+package enigma;
+
+/** A source of the setting lines and message lines of an input file.
+ *  Message characters are delivered as indices in the machine's
+ *  alphabet, with their whitespace removed.
+ *  @author Akshay Patel
+ */
+interface MessageSource {
+
+    /** Skip over any lines holding only whitespace, returning how many
+     *  there were.  Afterwards, I am at the first non-whitespace character
+     *  of a line, or at the end of the input. */
+    int skipBlankLines();
+
+    /** Return true iff there is no more input. */
+    boolean atEnd();
+
+    /** Return true iff, just after skipBlankLines(), the first word of
+     *  the current line is "*". */
+    boolean atSetting();
+
+    /** Return the rest of the current line, moving to the next. */
+    String readLine();
+
+    /** Read up to LEN non-whitespace characters of the current line into
+     *  BUF[OFF ..] as alphabet indices, returning how many were read.  If
+     *  the end of the line is reached, moves to the next line and sets
+     *  endOfLine(). */
+    int readMessage(int[] buf, int off, int len);
+
+    /** Return true iff the last readMessage reached the end of its
+     *  line. */
+    boolean endOfLine();
+}
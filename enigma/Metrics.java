@@ -0,0 +1,245 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Counters of the work done in each stage of a run: reading the
+ *  configuration, applying setting lines, converting and writing out
+ *  messages.  They are LongAdders, striped across threads, so that the
+ *  threads of a SegmentPipeline do not contend for them.
+ *
+ *  Counting is off unless the system property enigma.metrics is set.
+ *  Its value is a comma-separated list of what to do with the counters
+ *  besides keeping them: "jmx" registers them as the MXBean NAME, and
+ *  "exit" prints them to the standard error when the JVM exits.  Since
+ *  ENABLED is a constant, the compiler drops all the counting from the
+ *  paths that check it when counting is off.  The flight recorder
+ *  events of FlightEvents are independent of these counters.
+ *  @author Akshay Patel
+ */
+final class Metrics implements MetricsMXBean {
+
+    /** The name of the property turning counting on. */
+    static final String PROPERTY = "enigma.metrics";
+
+    /** True iff counting is on. */
+    static final boolean ENABLED = System.getProperty(PROPERTY) != null;
+
+    /** The JMX name of the counters. */
+    static final String NAME = "enigma:type=Metrics";
+
+    /** The counters. */
+    static final Metrics METRICS = new Metrics();
+
+    static {
+        if (ENABLED) {
+            for (String option : System.getProperty(PROPERTY).split(",")) {
+                switch (option.trim()) {
+                case "jmx":
+                    METRICS.register();
+                    break;
+                case "exit":
+                    Runtime.getRuntime().addShutdownHook(new Thread(
+                            () -> METRICS.print(System.err)));
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Counters starting now. */
+    private Metrics() {
+        _start = System.nanoTime();
+    }
+
+    /** Record that reading a configuration took NANOS. */
+    static void configRead(long nanos) {
+        METRICS._configNanos.add(nanos);
+    }
+
+    /** Record that applying a setting line took NANOS. */
+    static void setUp(long nanos) {
+        METRICS._setups.increment();
+        METRICS._setupNanos.add(nanos);
+        METRICS._setupLatency.record(nanos);
+    }
+
+    /** Record that converting CHARACTERS characters took NANOS and moved
+     *  rotors STEPS times, TURNOVERS of them carried by notches. */
+    static void converted(int characters, long steps, long turnovers,
+                          long nanos) {
+        METRICS._characters.add(characters);
+        METRICS._rotorSteps.add(steps);
+        METRICS._notchTurnovers.add(turnovers);
+        METRICS._convertNanos.add(nanos);
+    }
+
+    /** Record that a message line has been read. */
+    static void message() {
+        METRICS._messages.increment();
+    }
+
+    /** Record that writing out converted characters took NANOS. */
+    static void written(long nanos) {
+        METRICS._outputNanos.add(nanos);
+    }
+
+    /** Register me with the platform MBean server as NAME. */
+    private void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(this, new ObjectName(NAME));
+        } catch (JMException excp) {
+            throw EnigmaException.error("could not register %s: %s", NAME,
+                    excp.getMessage());
+        }
+    }
+
+    /** Print my counters on OUT. */
+    void print(PrintStream out) {
+        out.printf("characters: %d (%.0f/s, %.0f/s converting)%n",
+                getCharacters(), getCharactersPerSecond(),
+                getConversionRate());
+        out.printf("messages: %d (%.1f/s)%n", getMessages(),
+                getMessagesPerSecond());
+        out.printf("setups: %d (p50 <= %d ns, p99 <= %d ns)%n",
+                getSetups(), getSetupLatencyP50(), getSetupLatencyP99());
+        out.printf("rotor steps: %d, notch turnovers: %d%n",
+                getRotorSteps(), getNotchTurnovers());
+        out.printf("ns in config: %d, setup: %d, convert: %d, "
+                + "output: %d%n", getConfigNanos(), getSetupNanos(),
+                getConvertNanos(), getOutputNanos());
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getSetups() {
+        return _setups.sum();
+    }
+
+    @Override
+    public long getRotorSteps() {
+        return _rotorSteps.sum();
+    }
+
+    @Override
+    public long getNotchTurnovers() {
+        return _notchTurnovers.sum();
+    }
+
+    @Override
+    public long getConfigNanos() {
+        return _configNanos.sum();
+    }
+
+    @Override
+    public long getSetupNanos() {
+        return _setupNanos.sum();
+    }
+
+    @Override
+    public long getConvertNanos() {
+        return _convertNanos.sum();
+    }
+
+    @Override
+    public long getOutputNanos() {
+        return _outputNanos.sum();
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        return perSecond(getCharacters(), System.nanoTime() - _start);
+    }
+
+    @Override
+    public double getMessagesPerSecond() {
+        return perSecond(getMessages(), System.nanoTime() - _start);
+    }
+
+    @Override
+    public double getConversionRate() {
+        return perSecond(getCharacters(), getConvertNanos());
+    }
+
+    @Override
+    public long[] getSetupLatencyHistogram() {
+        return _setupLatency.counts();
+    }
+
+    @Override
+    public long getSetupLatencyP50() {
+        return _setupLatency.quantile(0.50);
+    }
+
+    @Override
+    public long getSetupLatencyP99() {
+        return _setupLatency.quantile(0.99);
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : new LongAdder[] {
+                _characters, _messages, _setups, _rotorSteps,
+                _notchTurnovers, _configNanos, _setupNanos, _convertNanos,
+                _outputNanos }) {
+            counter.reset();
+        }
+        _setupLatency.reset();
+        _start = System.nanoTime();
+    }
+
+    /** Return COUNT per second of NANOS, or 0 if NANOS is not
+     *  positive. */
+    private static double perSecond(long count, long nanos) {
+        return nanos <= 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    /** Characters converted. */
+    private final LongAdder _characters = new LongAdder();
+
+    /** Message lines read. */
+    private final LongAdder _messages = new LongAdder();
+
+    /** Setting lines applied. */
+    private final LongAdder _setups = new LongAdder();
+
+    /** Rotor movements. */
+    private final LongAdder _rotorSteps = new LongAdder();
+
+    /** Rotor movements carried by notches. */
+    private final LongAdder _notchTurnovers = new LongAdder();
+
+    /** Time reading configurations. */
+    private final LongAdder _configNanos = new LongAdder();
+
+    /** Time applying setting lines. */
+    private final LongAdder _setupNanos = new LongAdder();
+
+    /** Time converting. */
+    private final LongAdder _convertNanos = new LongAdder();
+
+    /** Time writing out. */
+    private final LongAdder _outputNanos = new LongAdder();
+
+    /** Times taken by setups. */
+    private final LatencyHistogram _setupLatency = new LatencyHistogram();
+
+    /** When the rates' clock started. */
+    private volatile long _start;
+}
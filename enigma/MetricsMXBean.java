@@ -0,0 +1,64 @@
+package enigma;
+
+/** The counters kept by Metrics, as seen through JMX, under the name
+ *  Metrics.NAME.  Times are in nanoseconds, summed over all threads.
+ *  @author Akshay Patel
+ */
+public interface MetricsMXBean {
+
+    /** Return the number of characters converted. */
+    long getCharacters();
+
+    /** Return the number of message lines converted. */
+    long getMessages();
+
+    /** Return the number of setting lines applied. */
+    long getSetups();
+
+    /** Return the number of times a rotor has moved. */
+    long getRotorSteps();
+
+    /** Return the number of times a rotor at its notch has carried the
+     *  rotor to its left along. */
+    long getNotchTurnovers();
+
+    /** Return the time spent reading configurations. */
+    long getConfigNanos();
+
+    /** Return the time spent applying setting lines. */
+    long getSetupNanos();
+
+    /** Return the time spent converting characters. */
+    long getConvertNanos();
+
+    /** Return the time spent writing converted messages. */
+    long getOutputNanos();
+
+    /** Return the characters converted per second since the counters
+     *  started. */
+    double getCharactersPerSecond();
+
+    /** Return the message lines converted per second since the counters
+     *  started. */
+    double getMessagesPerSecond();
+
+    /** Return the characters converted per second spent converting. */
+    double getConversionRate();
+
+    /** Return the number of setting lines whose application took time
+     *  in bucket K of a LatencyHistogram at index K: at most
+     *  LatencyHistogram.largest(K) nanoseconds, and more than the
+     *  bucket before allows. */
+    long[] getSetupLatencyHistogram();
+
+    /** Return the median time to apply a setting line, in nanoseconds,
+     *  at most an eighth too high. */
+    long getSetupLatencyP50();
+
+    /** Return the 99th percentile time to apply a setting line, in
+     *  nanoseconds, at most an eighth too high. */
+    long getSetupLatencyP99();
+
+    /** Set all counters to 0 and restart the clock of the rates. */
+    void reset();
+}
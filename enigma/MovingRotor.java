@@ -15,6 +15,26 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _notchBits = new long[(perm.size() + Long.SIZE - 1) / Long.SIZE];
+        Alphabet alphabet = perm.alphabet();
+        for (int i = 0; i < notches.length(); i += 1) {
+            if (alphabet.contains(notches.charAt(i))) {
+                int p = alphabet.toInt(notches.charAt(i));
+                _notchBits[p >>> 6] |= 1L << p;
+            }
+        }
+    }
+
+    /** A rotor like ORIGINAL, in its 0 setting, sharing its wiring. */
+    protected MovingRotor(MovingRotor original) {
+        super(original);
+        _notches = original._notches;
+        _notchBits = original._notchBits;
+    }
+
+    @Override
+    Rotor copy() {
+        return new MovingRotor(this);
     }
 
     @Override
@@ -25,24 +45,24 @@ class MovingRotor extends Rotor {
 
     @Override
     void advance() {
-        _setting += 1;
-        _ringstellung += 1;
+        rotate();
+    }
+
+    @Override
+    String notches() {
+        return _notches;
     }
 
     @Override
     boolean atNotch() {
-        if (_notches.equals("")) {
-            return false;
-        }
-        for (int i = 0; i < _notches.length(); i += 1) {
-            if (alphabet().toChar(permutation().wrap(_setting))
-                    == _notches.charAt(i)) {
-                return true;
-            }
-        }
-        return false;
+        int p = setting();
+        return (_notchBits[p >>> 6] & 1L << p) != 0;
     }
 
     /** Number of notches on rotor. */
     private final String _notches;
+
+    /** The positions of my notches, as a bit set: position P is a notch
+     *  iff bit P % 64 of _notchBits[P / 64] is set. */
+    private final long[] _notchBits;
 }
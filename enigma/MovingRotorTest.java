@@ -71,4 +71,22 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkRotorCopy() {
+        setRotor("I", NAVALA, "Q");
+        rotor.set(25);
+        Rotor original = rotor;
+        rotor = original.copy();
+        assertEquals("copy starts at 0", 0, rotor.setting());
+        assertEquals("copy keeps notches", "Q", rotor.notches());
+        checkRotor("Rotor I copy", UPPER_STRING, NAVALA_MAP.get("I"));
+        rotor.set(25);
+        checkRotor("Rotor I copy set", UPPER_STRING, NAVALZ_MAP.get("I"));
+        rotor.advance();
+        rotor = original;
+        checkRotor("Rotor I after copy", UPPER_STRING, NAVALZ_MAP.get("I"));
+        rotor.set(16);
+        assertTrue("original keeps notches", rotor.atNotch());
+    }
+
 }
@@ -0,0 +1,353 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** Decrypts, or scores the decryptions of, one text under many keys.  A
+ *  key is a rotor order, rotor settings, rings and a plugboard.  The
+ *  wiring tables of each rotor order are built once, into a spec without
+ *  a plugboard that is shared by all keys with that order, and the keys
+ *  with the same order are then evaluated together, one lane each, as by
+ *  a BatchConverter: the settings and rings of the lanes are held as a
+ *  structure of arrays, and each plugboard as a row of one table, so
+ *  that each character of the text is converted for every lane in a few
+ *  tight loops.  An evaluator may be used by several threads at once.
+ *  @author Akshay Patel
+ */
+class MultiKeyEvaluator {
+
+    /** A key for the machine of some evaluator. */
+    static final class Key {
+
+        /** A key whose order's spec is SPEC, starting in STATE, with
+         *  plugboard PLUGBOARD, the image of each character, and its
+         *  inverse INVERSE. */
+        private Key(MachineSpec spec, MachineState state, int[] plugboard,
+                    int[] inverse) {
+            _spec = spec;
+            _state = state;
+            _plugboard = plugboard;
+            _inverse = inverse;
+        }
+
+        /** The spec of my rotor order, without plugboard. */
+        private final MachineSpec _spec;
+
+        /** My rotor settings and rings. */
+        private final MachineState _state;
+
+        /** The image of each character under my plugboard. */
+        private final int[] _plugboard;
+
+        /** The image of each character under the inverse of my
+         *  plugboard. */
+        private final int[] _inverse;
+    }
+
+    /** An evaluator of keys of a machine configured as MACHINE (whose
+     *  alphabet, numbers of slots and pawls, and available rotors are
+     *  used) for TEXT, as alphabet indices. */
+    MultiKeyEvaluator(Machine machine, int[] text) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _catalog = machine.catalog();
+        _slots = machine.numRotors();
+        _pawls = machine.numPawls();
+        _text = text.clone();
+        _empty = new Permutation("", _alphabet);
+    }
+
+    /** Return the key with the rotors named ROTORS, the reflector first,
+     *  at SETTING, with their rings at RINGS (or at 0 if RINGS is null),
+     *  and with the plugboard whose cycles are PLUGBOARD. */
+    Key key(String[] rotors, String setting, String rings,
+            String plugboard) {
+        MachineSpec order = order(rotors);
+        Permutation plug = new Permutation(plugboard, _alphabet);
+        int[] image = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            image[c] = plug.permute(c);
+        }
+        return key(order, order.newState(setting, rings), image);
+    }
+
+    /** Return the key with the rotor order ORDER, as returned by order,
+     *  starting in STATE, a state of ORDER, and with the plugboard that
+     *  takes each character C to PLUGBOARD[C].  Neither STATE nor
+     *  PLUGBOARD, which must be a permutation, may be changed
+     *  afterwards.  This is the quick way to make keys that are
+     *  generated rather than read. */
+    Key key(MachineSpec order, MachineState state, int[] plugboard) {
+        if (state.slots() != _slots || plugboard.length != _size) {
+            throw error("Key does not fit machine.");
+        }
+        int[] inverse = new int[_size];
+        Arrays.fill(inverse, -1);
+        for (int c = 0; c < _size; c += 1) {
+            if (plugboard[c] < 0 || plugboard[c] >= _size
+                    || inverse[plugboard[c]] >= 0) {
+                throw error("Plugboard is not a permutation.");
+            }
+            inverse[plugboard[c]] = c;
+        }
+        return new Key(order, state, plugboard, inverse);
+    }
+
+    /** Return the spec, without plugboard, of the rotor order whose
+     *  rotors are named ROTORS, the reflector first.  It is built the
+     *  first time it is asked for, and shared by every key with that
+     *  order. */
+    MachineSpec order(String... rotors) {
+        if (rotors.length != _slots) {
+            throw error("Wrong number of rotors for machine.");
+        }
+        String name = String.join(" ", rotors);
+        MachineSpec spec = _specs.get(name);
+        if (spec != null) {
+            return spec;
+        }
+        Rotor[] order = new Rotor[_slots];
+        for (int i = 0; i < _slots; i += 1) {
+            order[i] = _catalog.find(rotors[i]);
+            if (order[i] == null) {
+                throw error("Rotor %s does not exist.", rotors[i]);
+            }
+            if ((i == 0) != order[i].reflecting()) {
+                throw error(i == 0 ? "First rotor has to be reflector"
+                        : "Only the first rotor may be a reflector.");
+            }
+        }
+        spec = new MachineSpec(_alphabet, order, _pawls, _empty);
+        MachineSpec other = _specs.putIfAbsent(name, spec);
+        return other == null ? spec : other;
+    }
+
+    /** Return the decryption of my text under each of KEYS. */
+    int[][] decrypt(List<Key> keys) {
+        int[][] result = new int[keys.size()][];
+        evaluate(keys, result, null, null, null);
+        return result;
+    }
+
+    /** Return the score by SCORER of the decryption of my text under each
+     *  of KEYS.  Only LANES decryptions are held at a time. */
+    double[] score(List<Key> keys, Scorer scorer) {
+        return score(keys, scorer, null);
+    }
+
+    /** Return the score by SCORER of the decryption of my text under each
+     *  of KEYS, sharing the batches of keys among the threads of POOL
+     *  (or evaluating them in this thread if POOL is null). */
+    double[] score(List<Key> keys, Scorer scorer, ForkJoinPool pool) {
+        double[] result = new double[keys.size()];
+        evaluate(keys, null, scorer, result, pool);
+        return result;
+    }
+
+    /** Decrypt my text under each of KEYS, saving the decryptions in
+     *  PLAIN if it is not null, and their scores by SCORER in SCORES if
+     *  it is not null, using the threads of POOL if it is not null. */
+    private void evaluate(List<Key> keys, int[][] plain, Scorer scorer,
+                          double[] scores, ForkJoinPool pool) {
+        Map<MachineSpec, List<Integer>> groups =
+            new IdentityHashMap<MachineSpec, List<Integer>>();
+        for (int k = 0; k < keys.size(); k += 1) {
+            groups.computeIfAbsent(keys.get(k)._spec,
+                    spec -> new ArrayList<Integer>()).add(k);
+        }
+        List<int[]> batches = new ArrayList<int[]>();
+        for (List<Integer> members : groups.values()) {
+            for (int first = 0; first < members.size(); first += LANES) {
+                int[] batch = new int[Math.min(LANES,
+                        members.size() - first)];
+                for (int l = 0; l < batch.length; l += 1) {
+                    batch[l] = members.get(first + l);
+                }
+                batches.add(batch);
+            }
+        }
+        if (pool == null) {
+            Lanes lanes = new Lanes();
+            for (int[] batch : batches) {
+                lanes.run(keys, batch, plain, scorer, scores);
+            }
+        } else {
+            pool.invoke(new Batches(keys, batches, 0, batches.size(), plain,
+                    scorer, scores));
+        }
+    }
+
+    /** A task evaluating some batches of keys. */
+    private class Batches extends RecursiveAction {
+
+        /** A task evaluating the batches BATCHES[FROM .. TO-1] of KEYS,
+         *  saving the decryptions in PLAIN and their scores by SCORER in
+         *  SCORES, where these are not null. */
+        Batches(List<Key> keys, List<int[]> batches, int from, int to,
+                int[][] plain, Scorer scorer, double[] scores) {
+            _keys = keys;
+            _batches = batches;
+            _from = from;
+            _to = to;
+            _plain = plain;
+            _scorer = scorer;
+            _scores = scores;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > BATCHES_PER_TASK) {
+                int mid = _from + (_to - _from) / 2;
+                invokeAll(new Batches(_keys, _batches, _from, mid, _plain,
+                                      _scorer, _scores),
+                          new Batches(_keys, _batches, mid, _to, _plain,
+                                      _scorer, _scores));
+                return;
+            }
+            Lanes lanes = new Lanes();
+            for (int b = _from; b < _to; b += 1) {
+                lanes.run(_keys, _batches.get(b), _plain, _scorer, _scores);
+            }
+        }
+
+        /** The keys. */
+        private final List<Key> _keys;
+
+        /** The batches, each the indices in _keys of keys with the same
+         *  rotor order. */
+        private final List<int[]> _batches;
+
+        /** First batch evaluated. */
+        private final int _from;
+
+        /** Batch just after the last evaluated. */
+        private final int _to;
+
+        /** Where the decryptions go, or null. */
+        private final int[][] _plain;
+
+        /** Scores the decryptions, or null. */
+        private final Scorer _scorer;
+
+        /** Where the scores go, or null. */
+        private final double[] _scores;
+    }
+
+    /** The scratch space of one batch of keys. */
+    private class Lanes {
+
+        /** Scratch space for LANES lanes. */
+        Lanes() {
+            _settings = new int[_slots][LANES];
+            _rings = new int[_slots][LANES];
+            _plugboards = new int[LANES * _size];
+            _inverses = new int[LANES * _size];
+            _chars = new int[LANES];
+            _plain = new int[LANES][_text.length];
+            _kernel = LaneKernel.create(LANES);
+        }
+
+        /** Decrypt my text under the keys KEYS[BATCH[0 ..]], all with
+         *  the same rotor order, saving the decryptions in PLAIN and
+         *  their scores by SCORER in SCORES, where these are not null. */
+        void run(List<Key> keys, int[] batch, int[][] plain, Scorer scorer,
+                 double[] scores) {
+            int count = batch.length;
+            MachineSpec spec = keys.get(batch[0])._spec;
+            for (int l = 0; l < count; l += 1) {
+                Key key = keys.get(batch[l]);
+                for (int i = 0; i < _slots; i += 1) {
+                    _settings[i][l] = key._state.setting(i);
+                    _rings[i][l] = key._state.ring(i);
+                }
+                System.arraycopy(key._plugboard, 0, _plugboards, l * _size,
+                        _size);
+                System.arraycopy(key._inverse, 0, _inverses, l * _size,
+                        _size);
+            }
+            for (int t = 0; t < _text.length; t += 1) {
+                int c = _text[t];
+                for (int l = 0; l < count; l += 1) {
+                    _chars[l] = c;
+                }
+                _kernel.mapLanes(_plugboards, _size, _chars, count);
+                spec.advance(_settings, count);
+                spec.substitute(_settings, _rings, _chars, count, _kernel);
+                _kernel.mapLanes(_inverses, _size, _chars, count);
+                for (int l = 0; l < count; l += 1) {
+                    _plain[l][t] = _chars[l];
+                }
+            }
+            for (int l = 0; l < count; l += 1) {
+                if (plain != null) {
+                    plain[batch[l]] = _plain[l].clone();
+                }
+                if (scores != null) {
+                    scores[batch[l]] = scorer.score(_plain[l], _text.length);
+                }
+            }
+        }
+
+        /** Setting of each slot in each lane. */
+        private final int[][] _settings;
+
+        /** Ring of each slot in each lane. */
+        private final int[][] _rings;
+
+        /** The plugboard of each lane, lane L's image of C being at
+         *  L * size + C. */
+        private final int[] _plugboards;
+
+        /** The inverses of the plugboards, laid out as _plugboards. */
+        private final int[] _inverses;
+
+        /** Character being converted in each lane. */
+        private final int[] _chars;
+
+        /** Decryption in each lane. */
+        private final int[][] _plain;
+
+        /** Makes the lookups for all the lanes. */
+        private final LaneKernel _kernel;
+    }
+
+    /** Number of keys evaluated together. */
+    static final int LANES = BatchConverter.DEFAULT_LANES;
+
+    /** Greatest number of batches of keys evaluated by one task. */
+    static final int BATCHES_PER_TASK = 4;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** The machine's available rotors. */
+    private final RotorCatalog _catalog;
+
+    /** Number of slots. */
+    private final int _slots;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** The text. */
+    private final int[] _text;
+
+    /** The empty plugboard of the specs. */
+    private final Permutation _empty;
+
+    /** Spec of each rotor order used so far, by its rotors' names
+     *  separated by spaces. */
+    private final ConcurrentHashMap<String, MachineSpec> _specs =
+        new ConcurrentHashMap<String, MachineSpec>();
+}
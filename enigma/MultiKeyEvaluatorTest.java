@@ -0,0 +1,145 @@
+package enigma;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MultiKeyEvaluator class.
+ *  @author Akshay Patel
+ */
+public class MultiKeyEvaluatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** An evaluator of keys of the test machine for EIGHT_TEXT. */
+    private MultiKeyEvaluator _evaluator;
+
+    @Before
+    public void setUp() {
+        _evaluator = new MultiKeyEvaluator(eightLetterMachine(),
+                indices(EIGHT, EIGHT_TEXT));
+    }
+
+    /** Check that ACTION fails with an EnigmaException.  TESTID is used
+     *  in error messages. */
+    private void checkError(String testId, Runnable action) {
+        try {
+            action.run();
+            fail(testId + " (no error)");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkDecryptAndScore() {
+        String[][] orders = {{"R", "F", "Z", "X"}, {"R", "F", "X", "Y"}};
+        String[] settings = {"AAA", "DBG", "HHC", "CFA"};
+        String[] plugboards = {"", "(AD) (CH)", "(ABC) (EG)"};
+        List<MultiKeyEvaluator.Key> keys =
+                new ArrayList<MultiKeyEvaluator.Key>();
+        List<String> expected = new ArrayList<String>();
+        for (int k = 0; k < 300; k += 1) {
+            String[] order = orders[k % 2];
+            String setting = settings[k % 4];
+            String rings = settings[k / 4 % 4];
+            String plugboard = plugboards[k % 3];
+            keys.add(_evaluator.key(order, setting, rings, plugboard));
+            Machine m = eightLetterMachine();
+            m.insertRotors(order);
+            m.setRotors(setting);
+            m.setRings(rings);
+            m.setRingstellung();
+            m.setPlugboard(new Permutation(plugboard, EIGHT));
+            expected.add(m.convert(EIGHT_TEXT));
+        }
+        int[][] decrypted = _evaluator.decrypt(keys);
+        Scorer scorer = ngrams(EIGHT, EIGHT_TEXT, 2);
+        double[] pooled = _evaluator.score(keys, scorer,
+                new ForkJoinPool(3));
+        double[] unpooled = _evaluator.score(keys, scorer);
+        for (int k = 0; k < keys.size(); k += 1) {
+            StringBuilder got = new StringBuilder();
+            for (int c : decrypted[k]) {
+                got.append(EIGHT.toChar(c));
+            }
+            assertEquals(expected.get(k), got.toString());
+            double score = scorer.score(decrypted[k], decrypted[k].length);
+            assertEquals(score, pooled[k], 0);
+            assertEquals(score, unpooled[k], 0);
+        }
+    }
+
+    @Test
+    public void checkGeneratedKeys() {
+        MachineSpec order = _evaluator.order("R", "F", "Z", "X");
+        int[] plugboard = {3, 1, 7, 0, 4, 5, 6, 2};
+        MultiKeyEvaluator.Key key = _evaluator.key(order,
+                order.newState("DBG", "ACE"), plugboard);
+        List<MultiKeyEvaluator.Key> keys =
+                new ArrayList<MultiKeyEvaluator.Key>();
+        keys.add(key);
+        keys.add(_evaluator.key(new String[] {"R", "F", "Z", "X"}, "DBG",
+                "ACE", "(AD) (CH)"));
+        int[][] decrypted = _evaluator.decrypt(keys);
+        assertArrayEquals(decrypted[1], decrypted[0]);
+    }
+
+    @Test
+    public void checkKeyErrors() {
+        MachineSpec order = _evaluator.order("R", "F", "Z", "X");
+        MachineState state = order.newState("DBG", null);
+        int[] identity = {0, 1, 2, 3, 4, 5, 6, 7};
+        Machine small = new Machine(EIGHT, 3, 2,
+                eightLetterMachine().getAllRotors());
+        small.insertRotors(new String[] {"R", "Z", "X"});
+        MachineState smallState = small.spec(new Permutation("", EIGHT))
+                .newState("DB", null);
+        checkError("state of another machine",
+            () -> _evaluator.key(order, smallState, identity));
+        checkError("short plugboard",
+            () -> _evaluator.key(order, state, new int[] {1, 0, 2}));
+        checkError("repeated plugboard image",
+            () -> _evaluator.key(order, state,
+                                 new int[] {1, 1, 2, 3, 4, 5, 6, 7}));
+        checkError("plugboard image out of range",
+            () -> _evaluator.key(order, state,
+                                 new int[] {8, 1, 2, 3, 4, 5, 6, 0}));
+        checkError("negative plugboard image",
+            () -> _evaluator.key(order, state,
+                                 new int[] {-1, 1, 2, 3, 4, 5, 6, 0}));
+        _evaluator.key(order, state, identity);
+    }
+
+    @Test
+    public void checkOrderErrors() {
+        assertSame(_evaluator.order("R", "F", "Z", "X"),
+                   _evaluator.order("R", "F", "Z", "X"));
+        assertNotSame(_evaluator.order("R", "F", "Z", "X"),
+                      _evaluator.order("R", "F", "X", "Z"));
+        checkError("too few rotors",
+            () -> _evaluator.order("R", "F", "Z"));
+        checkError("too many rotors",
+            () -> _evaluator.order("R", "F", "Z", "X", "Y"));
+        checkError("missing rotor",
+            () -> _evaluator.order("R", "F", "Z", "W"));
+        checkError("no reflector first",
+            () -> _evaluator.order("F", "Y", "Z", "X"));
+        checkError("reflector later",
+            () -> _evaluator.order("R", "F", "R", "X"));
+    }
+}
@@ -0,0 +1,186 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Scores a text by the log probability of its n-grams (runs of N
+ *  characters), as estimated from counts of the n-grams of a sample of
+ *  the plaintext language.  N-grams that never occurred in the sample are
+ *  given a small floor probability.  The log probabilities are kept in a
+ *  table indexed by the n-gram's characters read as a number in base
+ *  (alphabet size).
+ *  @author Akshay Patel
+ */
+class NGramScorer implements Scorer {
+
+    /** A scorer for texts over ALPHABET using the n-gram counts in FILE,
+     *  one n-gram and its count per line, such as "TION 13168375".  All
+     *  the n-grams must have the same length. */
+    static NGramScorer load(Path file, Alphabet alphabet) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+        List<String> grams = new ArrayList<String>();
+        List<Long> counts = new ArrayList<Long>();
+        for (String line : lines) {
+            String[] words = line.trim().split("\\s+");
+            if (words.length == 1 && words[0].isEmpty()) {
+                continue;
+            }
+            if (words.length != 2) {
+                throw error("bad n-gram line: %s", line);
+            }
+            try {
+                counts.add(Long.parseLong(words[1]));
+            } catch (NumberFormatException excp) {
+                throw error("bad n-gram count: %s", line);
+            }
+            grams.add(words[0]);
+        }
+        return new NGramScorer(alphabet, grams, counts);
+    }
+
+    /** A scorer for texts over ALPHABET in which each of GRAMS, all of the
+     *  same length, occurs the corresponding number of times in COUNTS. */
+    NGramScorer(Alphabet alphabet, List<String> grams, List<Long> counts) {
+        if (grams.isEmpty()) {
+            throw error("No n-grams given.");
+        }
+        _size = alphabet.size();
+        _n = grams.get(0).length();
+        long entries = 1;
+        for (int i = 0; i < _n; i += 1) {
+            entries *= _size;
+            if (entries > TABLE_LIMIT) {
+                throw error("N-gram table too large.");
+            }
+        }
+        _modulus = (int) (entries / _size);
+        double total = 0;
+        for (long count : counts) {
+            if (count < 0) {
+                throw error("N-gram count is negative.");
+            }
+            total += count;
+        }
+        if (total == 0) {
+            throw error("No n-grams given.");
+        }
+        _table = new double[(int) entries];
+        _floor = Math.log10(FLOOR_COUNT / total);
+        Arrays.fill(_table, _floor);
+        double best = _floor;
+        for (int k = 0; k < grams.size(); k += 1) {
+            String gram = grams.get(k);
+            if (gram.length() != _n) {
+                throw error("N-grams differ in length.");
+            }
+            int index = 0;
+            for (int i = 0; i < _n; i += 1) {
+                index = index * _size + alphabet.toInt(gram.charAt(i));
+            }
+            if (counts.get(k) > 0) {
+                _table[index] = Math.log10(counts.get(k) / total);
+                best = Math.max(best, _table[index]);
+            }
+        }
+        _best = best;
+        double sum = 0;
+        double squares = 0;
+        for (double entry : _table) {
+            sum += entry;
+            squares += entry * entry;
+        }
+        double mean = sum / entries;
+        _deviation = Math.sqrt(Math.max(0, squares / entries - mean * mean));
+    }
+
+    /** Return the length of my n-grams. */
+    int n() {
+        return _n;
+    }
+
+    /** Return the log probability of the n-gram numbered INDEX, its
+     *  characters read as a number in base (alphabet size). */
+    double logProbability(int index) {
+        return _table[index];
+    }
+
+    @Override
+    public double score(int[] text, int length) {
+        double result = 0;
+        int index = 0;
+        for (int i = 0; i < length; i += 1) {
+            index = index % _modulus * _size + text[i];
+            if (i >= _n - 1) {
+                result += _table[index];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public double bound(int[] text, int length, int total) {
+        int counted = Math.max(0, length - _n + 1);
+        int all = Math.max(0, total - _n + 1);
+        return score(text, length) + (all - counted) * _best;
+    }
+
+    @Override
+    public double estimate(int[] text, int length, int total) {
+        int counted = Math.max(0, length - _n + 1);
+        int all = Math.max(0, total - _n + 1);
+        return counted == 0 ? all * _floor
+                : score(text, length) * all / counted;
+    }
+
+    @Override
+    public double spread(int length, int total) {
+        int counted = Math.max(0, length - _n + 1);
+        int all = Math.max(0, total - _n + 1);
+        if (counted == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return _deviation * all
+                * Math.sqrt(Math.max(0, 1.0 / counted - 1.0 / all));
+    }
+
+    /** Largest number of entries in the table. */
+    static final int TABLE_LIMIT = 1 << 24;
+
+    /** Count given to n-grams that never occurred. */
+    private static final double FLOOR_COUNT = 0.01;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Length of the n-grams. */
+    private final int _n;
+
+    /** Number of (N-1)-grams, which reduces an index to its last N-1
+     *  characters. */
+    private final int _modulus;
+
+    /** Log probability of each n-gram. */
+    private final double[] _table;
+
+    /** Log probability of an n-gram that never occurred. */
+    private final double _floor;
+
+    /** Largest entry in _table. */
+    private final double _best;
+
+    /** Standard deviation of the entries of _table, and so of the score of
+     *  an n-gram of random characters. */
+    private final double _deviation;
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -24,12 +26,84 @@ class Permutation {
             throw EnigmaException
                     .error("Cycle contains duplicate parenthesis.");
         }
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        compileCycles();
+    }
+
+    /** Set this Permutation to the one taking each index I of ALPHABET to
+     *  FORWARD[I], as compiled earlier from cycle notation.  FORWARD, which
+     *  is not copied, must hold each index exactly once. */
+    Permutation(Alphabet alphabet, int[] forward) {
+        _alphabet = alphabet;
+        _cycles = "";
+        if (forward.length != alphabet.size()) {
+            throw error("Wiring has the wrong size.");
+        }
+        _forward = forward;
+        _inverse = new int[forward.length];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < forward.length; i += 1) {
+            if (forward[i] < 0 || forward[i] >= forward.length
+                    || _inverse[forward[i]] != -1) {
+                throw error("Wiring is not a permutation.");
+            }
+            _inverse[forward[i]] = i;
+        }
     }
 
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        _cycles = cycle + _cycles;
+    /** Record that FROM maps to TO in both lookup tables. */
+    private void link(int from, int to) {
+        _forward[from] = to;
+        _inverse[to] = from;
+    }
+
+    /** Fill the lookup tables from the cycle notation in _cycles, which
+     *  is only scanned here, once. */
+    private void compileCycles() {
+        boolean[] seen = new boolean[_forward.length];
+        int first = -1, prev = -1;
+        for (int i = 0; i < _cycles.length(); i += 1) {
+            char c = _cycles.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            } else if (c == '(') {
+                if (first != -1) {
+                    throw error("Cycle is not closed.");
+                }
+                first = -2;
+            } else if (c == ')') {
+                if (first == -1) {
+                    throw error("Cycle is not opened.");
+                }
+                if (first >= 0) {
+                    link(prev, first);
+                }
+                first = -1;
+            } else {
+                if (first == -1) {
+                    throw error("Character outside of a cycle.");
+                }
+                int curr = _alphabet.toInt(c);
+                if (seen[curr]) {
+                    throw error("Character repeated in cycles.");
+                }
+                seen[curr] = true;
+                if (first == -2) {
+                    first = curr;
+                } else {
+                    link(prev, curr);
+                }
+                prev = curr;
+            }
+        }
+        if (first != -1) {
+            throw error("Cycle is not closed.");
+        }
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -43,92 +117,31 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
-    /** Return the result of applying this permutation to P modulo the
-     *  alphabet size. */
+    /** Return the result of applying this permutation to P, where
+     *  0 <= P < size(). */
     int permute(int p) {
-        char theChar = _alphabet.toChar(wrap(p));
-        char newChar = permute(theChar);
-        int newInt = _alphabet.toInt(newChar);
-        return newInt;
+        return _forward[p];
     }
 
 
     /** Return the result of applying the inverse of this permutation
-     *  to  C modulo the alphabet size. */
+     *  to C, where 0 <= C < size(). */
     int invert(int c) {
-        char theChar = _alphabet.toChar(wrap(c));
-        char newChar = invert(theChar);
-        int newInt = _alphabet.toInt(newChar);
-        return newInt;
+        return _inverse[c];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        int thisIndex;
-        int firstOfCycle;
-
-        if (_cycles.equals("")) {
-            return p;
-        }
-
-        thisIndex = _cycles.indexOf(p);
-
-        if (thisIndex == -1) {
-            return p;
-        }
-
-        if ((_cycles.charAt(thisIndex - 1) == '(')
-                && (_cycles.charAt(thisIndex + 1) == ')')) {
-            return _cycles.charAt(thisIndex);
-
-        }
-
-        if ((_cycles.charAt(thisIndex + 1) == ')')) {
-            for (firstOfCycle = thisIndex; firstOfCycle > 0; --firstOfCycle) {
-                if (_cycles.charAt(firstOfCycle - 1) == '(') {
-                    return _cycles.charAt(firstOfCycle);
-                }
-            }
-        }
-
-        return _cycles.charAt(thisIndex + 1);
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        int thisIndex;
-        int endOfCycle;
-
-        if (_cycles.equals("")) {
-            return c;
-        }
-
-        thisIndex = _cycles.indexOf(c);
-
-        if (thisIndex == -1) {
-            return c;
-        }
-
-        if ((_cycles.charAt(thisIndex - 1) == '(')
-                && (_cycles.charAt(thisIndex + 1) == ')')) {
-            return c;
-
-        }
-
-        if ((_cycles.charAt(thisIndex - 1) == '(')) {
-            for (endOfCycle = thisIndex; endOfCycle
-                    < (_cycles.length() - 1); endOfCycle += 1) {
-                if (_cycles.charAt(endOfCycle + 1) == ')') {
-                    return _cycles.charAt(endOfCycle);
-                }
-            }
-        }
-
-        return _cycles.charAt(thisIndex - 1);
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -139,24 +152,41 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int alph = 0; alph < _alphabet.size(); alph += 1) {
-            int indexAt = _cycles.indexOf(_alphabet.toChar(alph));
-            if (indexAt != -1) {
-                if ((_cycles.charAt(indexAt - 1) != '(')
-                        || (_cycles.charAt(indexAt + 1) != ')')) {
-                    return false;
-                }
+        for (int i = 0; i < size(); i += 1) {
+            if (_forward[i] == i) {
+                return false;
             }
         }
         return true;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Permutation)) {
+            return false;
+        }
+        Permutation other = (Permutation) obj;
+        return _alphabet == other._alphabet
+                && Arrays.equals(_forward, other._forward);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_forward);
+    }
+
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
     /** String of cycles. */
     private String _cycles;
 
+    /** Image of each index under this permutation. */
+    private int[] _forward;
+
+    /** Image of each index under the inverse of this permutation. */
+    private int[] _inverse;
+
     /** Checks if a cycle is empty parenthesis only and @return boolean. */
     private boolean cycleIsEmpty() {
         if (_cycles.equals("()")) {
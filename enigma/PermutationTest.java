@@ -65,6 +65,53 @@ public class PermutationTest {
         checkPerm("translate A and S, and B and X", UPPER_STRING, newString);
     }
 
+    @Test
+    public void checkLongCycles() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        checkPerm("rotor I", UPPER_STRING, NAVALA_MAP.get("I"));
+        assertFalse(perm.derangement());
+        perm = new Permutation(NAVALA.get("B"), UPPER);
+        assertTrue(perm.derangement());
+    }
+
+    @Test
+    public void checkDerangement() {
+        perm = new Permutation("", UPPER);
+        assertFalse("identity", perm.derangement());
+        perm = new Permutation("(A)", UPPER);
+        assertFalse("single fixed cycle", perm.derangement());
+        perm = new Permutation("(AB) (CD)", UPPER);
+        assertFalse("most letters fixed", perm.derangement());
+        perm = new Permutation("(" + UPPER_STRING + ")", UPPER);
+        assertTrue("one long cycle", perm.derangement());
+        perm = new Permutation("(ABC) (D)", new Alphabet("ABCD"));
+        assertFalse("one letter fixed", perm.derangement());
+        perm = new Permutation("(ABC) (DE)", new Alphabet("ABCDE"));
+        assertTrue("no letter fixed", perm.derangement());
+    }
+
+    @Test
+    public void checkMalformedCycles() {
+        String[][] cases = {
+            {"(AB) (AC)", "Character repeated in cycles."},
+            {"(ABA)", "Character repeated in cycles."},
+            {"(AB) C", "Character outside of a cycle."},
+            {"A (BC)", "Character outside of a cycle."},
+            {"(AB) (C", "Cycle is not closed."},
+            {"(AB (CD)", "Cycle is not closed."},
+            {"(AB) CD)", "Character outside of a cycle."},
+            {"(AB) )", "Cycle is not opened."},
+        };
+        for (String[] c : cases) {
+            try {
+                new Permutation(c[0], UPPER);
+                fail("accepted \"" + c[0] + "\"");
+            } catch (EnigmaException excp) {
+                assertEquals(c[0], c[1], excp.getMessage());
+            }
+        }
+    }
+
 
 
 }
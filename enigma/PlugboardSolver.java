@@ -0,0 +1,622 @@
+package enigma;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A search for the plugboard of a message whose rotor order, settings
+ *  and rings are known, by hill-climbing on the n-gram score of the
+ *  decryption from many random starting plugboards.
+ *
+ *  Without the plugboard, the machine at each position of the message is
+ *  a fixed permutation, the scrambler, which is worked out once.  With
+ *  plugboard P, ciphertext character C at position I decrypts to
+ *  P(S_I(P(C))).  A climb tries, for each pair of letters, pairing them
+ *  (breaking any pairs they were in) or parting them, and keeps each
+ *  change that raises the score, until no change does.  A change to the
+ *  partners of a few letters affects only the positions whose
+ *  ciphertext is one of those letters, or whose scrambler output is, so
+ *  only those positions are decrypted again, and only the n-grams that
+ *  cover them rescored.  Positions are kept in lists by scrambler output
+ *  so that they can be found without scanning the message.
+ *
+ *  The climbs, one per restart, are run on a fork/join pool, each task
+ *  with its own climber; the scramblers and n-gram table are shared.
+ *  Restarts are seeded from their numbers, so a search is repeatable.
+ *  @author Akshay Patel
+ */
+class PlugboardSolver {
+
+    /** Find the plugboard of the ciphertext file given as the next to
+     *  last argument, for the machine configured in the file given
+     *  before it and set up by the setting line given as the last
+     *  argument (whose plugboard, if any, is ignored), scoring with the
+     *  n-gram counts in the file given first.  ARGS may start with these
+     *  options:
+     *  --top K       report the best K plugboards (default 5);
+     *  --restarts N  climb from N starting plugboards (default 200);
+     *  --pairs N     use at most N plugboard pairs (default half the
+     *                alphabet);
+     *  --seed S      seed the starting plugboards with S (default 0);
+     *  --threads N   search with N threads.
+     *  The best plugboards are printed on the standard output with their
+     *  scores, and the decryption under the best. */
+    public static void main(String... args) {
+        try {
+            int top = 5;
+            int restarts = DEFAULT_RESTARTS;
+            int pairs = -1;
+            long seed = 0;
+            int threads = Runtime.getRuntime().availableProcessors();
+            int k = 0;
+            while (k < args.length - 4 && args[k].startsWith("--")) {
+                String value = args[k + 1];
+                switch (args[k]) {
+                case "--top":
+                    top = number(value);
+                    break;
+                case "--restarts":
+                    restarts = number(value);
+                    break;
+                case "--pairs":
+                    pairs = number(value);
+                    break;
+                case "--seed":
+                    seed = number(value);
+                    break;
+                case "--threads":
+                    threads = number(value);
+                    break;
+                default:
+                    throw error("unknown option %s", args[k]);
+                }
+                k += 2;
+            }
+            if (args.length - k != 4) {
+                throw error("Usage: java enigma.PlugboardSolver [options] "
+                        + "NGRAMS CONFIG CIPHERTEXT SETTING");
+            }
+            Main main = new Main(new String[] { args[k + 1] });
+            Machine machine = main.readConfig();
+            Alphabet alphabet = machine.alphabet();
+            main.setUp(machine, args[k + 3]);
+            PlugboardSolver solver = new PlugboardSolver(machine,
+                    KeySearch.readCiphertext(Paths.get(args[k + 2]),
+                            alphabet),
+                    NGramScorer.load(Paths.get(args[k]), alphabet),
+                    pairs < 0 ? alphabet.size() / 2 : pairs, top);
+            long started = System.nanoTime();
+            List<TopResults.Result> results = solver.run(
+                    new ForkJoinPool(Math.max(1, threads)), restarts, seed);
+            double seconds = (System.nanoTime() - started) / 1e9;
+            for (TopResults.Result result : results) {
+                System.out.printf("%.6f %s%n", result.score(),
+                        solver.plugboard(result.key()));
+            }
+            System.out.println(solver.decrypt(results.get(0).key()));
+            System.err.printf("%d plugboards scored in %.1f s, "
+                    + "%.0f per second%n", solver.evaluations(), seconds,
+                    solver.evaluations() / seconds);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the value of the option VALUE, a non-negative number. */
+    private static int number(String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("bad number: %s", value);
+    }
+
+    /** A solver for the plugboard of MACHINE, set up with its rotors,
+     *  settings and rings (its plugboard is ignored), that decrypts
+     *  CIPHERTEXT, as alphabet indices, to text scored by SCORER.  It
+     *  uses at most MAXPAIRS plugboard pairs and keeps the best TOP
+     *  plugboards. */
+    PlugboardSolver(Machine machine, int[] ciphertext, NGramScorer scorer,
+                    int maxPairs, int top) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _ciphertext = ciphertext.clone();
+        _length = ciphertext.length;
+        _scorer = scorer;
+        _n = scorer.n();
+        if (_length < _n) {
+            throw error("Ciphertext shorter than an n-gram.");
+        }
+        int entries = 1;
+        for (int i = 0; i < _n; i += 1) {
+            entries *= _size;
+        }
+        _grams = new float[entries];
+        for (int i = 0; i < entries; i += 1) {
+            _grams[i] = (float) scorer.logProbability(i);
+        }
+        _maxPairs = Math.min(maxPairs, _size / 2);
+        _topCount = top;
+        MachineSpec spec = machine.spec(new Permutation("", _alphabet));
+        MachineState state = machine.state();
+        _scramblers = new int[_length * _size];
+        for (int i = 0; i < _length; i += 1) {
+            spec.advance(state);
+            for (int c = 0; c < _size; c += 1) {
+                _scramblers[i * _size + c] = spec.substitute(state, c);
+            }
+        }
+        int[] count = new int[_size];
+        for (int c : _ciphertext) {
+            count[c] += 1;
+        }
+        _withCipher = new int[_size][];
+        for (int c = 0; c < _size; c += 1) {
+            _withCipher[c] = new int[count[c]];
+            count[c] = 0;
+        }
+        for (int i = 0; i < _length; i += 1) {
+            int c = _ciphertext[i];
+            _withCipher[c][count[c]] = i;
+            count[c] += 1;
+        }
+    }
+
+    /** Climb from RESTARTS starting plugboards, the first empty and the
+     *  others random, drawn using SEED, using POOL, and return the best
+     *  results of this run.  The key of each result is its restart's
+     *  number. */
+    List<TopResults.Result> run(ForkJoinPool pool, int restarts, long seed) {
+        _plugboards = new int[Math.max(1, restarts)][];
+        _top = new TopResults(_topCount);
+        _seed = seed;
+        pool.invoke(new Restarts(0, _plugboards.length));
+        return _top.results();
+    }
+
+    /** Return the number of plugboards scored so far. */
+    long evaluations() {
+        return _evaluations.sum();
+    }
+
+    /** Return the plugboard found by restart RESTART, as the cycles of a
+     *  setting line. */
+    String plugboard(long restart) {
+        int[] plug = _plugboards[(int) restart];
+        StringBuilder result = new StringBuilder();
+        for (int c = 0; c < _size; c += 1) {
+            if (c < plug[c]) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(_alphabet.toChar(c))
+                    .append(_alphabet.toChar(plug[c])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the decryption of the ciphertext with the plugboard found
+     *  by restart RESTART. */
+    String decrypt(long restart) {
+        int[] plug = _plugboards[(int) restart];
+        char[] result = new char[_length];
+        for (int i = 0; i < _length; i += 1) {
+            result[i] = _alphabet.toChar(
+                    plug[_scramblers[i * _size + plug[_ciphertext[i]]]]);
+        }
+        return new String(result);
+    }
+
+    /** The state of one climb: a plugboard and the decryption under it,
+     *  kept up to date as the plugboard changes. */
+    class Climber {
+
+        /** A climber with its own arrays. */
+        Climber() {
+            _plug = new int[_size];
+            _middle = new int[_length];
+            _plain = new int[_length];
+            _gram = new double[_length - _n + 1];
+            _next = new int[_length];
+            _previous = new int[_length];
+            _head = new int[_size];
+            _seen = new int[_length];
+            _seenWindow = new int[_length];
+            _changed = new int[_length];
+            _oldMiddle = new int[_length];
+            _oldPlain = new int[_length];
+            _windows = new int[_length];
+            _oldGram = new double[_length];
+        }
+
+        /** Climb from a starting plugboard drawn from RANDOM with at most
+         *  _maxPairs pairs (none if EMPTY), and return the plugboard
+         *  reached. */
+        int[] climb(SplittableRandom random, boolean empty) {
+            start(random, empty);
+            long tried = 0;
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < _size; a += 1) {
+                    for (int b = a + 1; b < _size; b += 1) {
+                        tried += 1;
+                        if (tryPairing(a, b)) {
+                            improved = true;
+                        }
+                    }
+                }
+            }
+            _evaluations.add(tried);
+            return _plug.clone();
+        }
+
+        /** Set my plugboard to one drawn from RANDOM with at most
+         *  _maxPairs pairs (none if EMPTY), and decrypt under it. */
+        void start(SplittableRandom random, boolean empty) {
+            for (int c = 0; c < _size; c += 1) {
+                _plug[c] = c;
+            }
+            int pairs = empty ? 0 : random.nextInt(_maxPairs + 1);
+            for (int k = 0; k < pairs; k += 1) {
+                int a = random.nextInt(_size), b = random.nextInt(_size);
+                if (a != b && _plug[a] == a && _plug[b] == b) {
+                    _plug[a] = b;
+                    _plug[b] = a;
+                }
+            }
+            decryptAll();
+        }
+
+        /** Return the score of my current decryption, worked out afresh
+         *  by the scorer. */
+        double score() {
+            return _scorer.score(_plain, _length);
+        }
+
+        /** Return my score as kept up to date by redecrypt: the sum of
+         *  the log probabilities of my n-grams. */
+        double incrementalScore() {
+            double result = 0;
+            for (double gram : _gram) {
+                result += gram;
+            }
+            return result;
+        }
+
+        /** Return my plugboard, as the partner of each letter. */
+        int[] plug() {
+            return _plug.clone();
+        }
+
+        /** Change my plugboard by pairing A and B, or parting them if
+         *  they are paired, and keep the change if it raises my score and
+         *  leaves at most _maxPairs pairs.  Return true iff it is kept. */
+        boolean tryPairing(int a, int b) {
+            int pa = _plug[a], pb = _plug[b];
+            _count = 0;
+            if (pa == b) {
+                set(a, a);
+                set(b, b);
+            } else {
+                int pairs = _pairs + 1 - (pa != a ? 1 : 0)
+                        - (pb != b ? 1 : 0);
+                if (pairs > _maxPairs) {
+                    return false;
+                }
+                if (pa != a) {
+                    set(pa, pa);
+                }
+                if (pb != b) {
+                    set(pb, pb);
+                }
+                set(a, b);
+                set(b, a);
+            }
+            double delta = redecrypt();
+            if (delta > EPSILON) {
+                commit();
+                _pairs += pa == b ? -1 : 1 - (pa != a ? 1 : 0)
+                        - (pb != b ? 1 : 0);
+                return true;
+            }
+            undo();
+            return false;
+        }
+
+        /** Pair C with D, remembering C's old partner. */
+        private void set(int c, int d) {
+            _letters[_count] = c;
+            _oldPartner[_count] = _plug[c];
+            _count += 1;
+            _plug[c] = d;
+        }
+
+        /** Decrypt the positions affected by the letters just changed,
+         *  recording what they held, rescore the n-grams covering those
+         *  whose plaintext changed, and return the change in score. */
+        private double redecrypt() {
+            _stamp += 1;
+            _changedCount = 0;
+            for (int k = 0; k < _count; k += 1) {
+                int c = _letters[k];
+                for (int i : _withCipher[c]) {
+                    mark(i);
+                }
+                for (int i = _head[c]; i >= 0; i = _next[i]) {
+                    mark(i);
+                }
+            }
+            _windowCount = 0;
+            for (int k = 0; k < _changedCount; k += 1) {
+                int i = _changed[k];
+                _oldMiddle[k] = _middle[i];
+                _oldPlain[k] = _plain[i];
+                _middle[i] = _scramblers[i * _size + _plug[_ciphertext[i]]];
+                _plain[i] = _plug[_middle[i]];
+                if (_plain[i] != _oldPlain[k]) {
+                    int last = Math.min(i, _length - _n);
+                    for (int w = Math.max(0, i - _n + 1); w <= last;
+                         w += 1) {
+                        if (_seenWindow[w] != _stamp) {
+                            _seenWindow[w] = _stamp;
+                            _windows[_windowCount] = w;
+                            _windowCount += 1;
+                        }
+                    }
+                }
+            }
+            double delta = 0;
+            for (int k = 0; k < _windowCount; k += 1) {
+                int w = _windows[k];
+                _oldGram[k] = _gram[w];
+                _gram[w] = gram(w);
+                delta += _gram[w] - _oldGram[k];
+            }
+            return delta;
+        }
+
+        /** Add position I to those to decrypt again, unless it is there
+         *  already. */
+        private void mark(int i) {
+            if (_seen[i] != _stamp) {
+                _seen[i] = _stamp;
+                _changed[_changedCount] = i;
+                _changedCount += 1;
+            }
+        }
+
+        /** Keep the changes made by the last redecrypt, moving the
+         *  positions whose scrambler output changed to their new
+         *  lists. */
+        private void commit() {
+            for (int k = 0; k < _changedCount; k += 1) {
+                int i = _changed[k];
+                if (_middle[i] != _oldMiddle[k]) {
+                    unlink(i, _oldMiddle[k]);
+                    link(i, _middle[i]);
+                }
+            }
+        }
+
+        /** Undo the changes made by the last set calls and redecrypt. */
+        private void undo() {
+            for (int k = _count - 1; k >= 0; k -= 1) {
+                _plug[_letters[k]] = _oldPartner[k];
+            }
+            for (int k = 0; k < _changedCount; k += 1) {
+                int i = _changed[k];
+                _middle[i] = _oldMiddle[k];
+                _plain[i] = _oldPlain[k];
+            }
+            for (int k = 0; k < _windowCount; k += 1) {
+                _gram[_windows[k]] = _oldGram[k];
+            }
+        }
+
+        /** Decrypt and score the whole message with my plugboard. */
+        private void decryptAll() {
+            for (int c = 0; c < _size; c += 1) {
+                _head[c] = -1;
+            }
+            for (int i = _length - 1; i >= 0; i -= 1) {
+                _middle[i] = _scramblers[i * _size + _plug[_ciphertext[i]]];
+                _plain[i] = _plug[_middle[i]];
+                link(i, _middle[i]);
+            }
+            for (int w = 0; w < _gram.length; w += 1) {
+                _gram[w] = gram(w);
+            }
+            _pairs = 0;
+            for (int c = 0; c < _size; c += 1) {
+                if (c < _plug[c]) {
+                    _pairs += 1;
+                }
+            }
+        }
+
+        /** Return the log probability of the n-gram of my plaintext
+         *  starting at W. */
+        private double gram(int w) {
+            int index = 0;
+            for (int i = w; i < w + _n; i += 1) {
+                index = index * _size + _plain[i];
+            }
+            return _grams[index];
+        }
+
+        /** Add position I to the front of the list for scrambler output
+         *  C. */
+        private void link(int i, int c) {
+            _previous[i] = -1;
+            _next[i] = _head[c];
+            if (_head[c] >= 0) {
+                _previous[_head[c]] = i;
+            }
+            _head[c] = i;
+        }
+
+        /** Remove position I from the list for scrambler output C. */
+        private void unlink(int i, int c) {
+            if (_previous[i] >= 0) {
+                _next[_previous[i]] = _next[i];
+            } else {
+                _head[c] = _next[i];
+            }
+            if (_next[i] >= 0) {
+                _previous[_next[i]] = _previous[i];
+            }
+        }
+
+        /** The plugboard, as the partner of each letter. */
+        private final int[] _plug;
+
+        /** Scrambler output at each position. */
+        private final int[] _middle;
+
+        /** Plaintext at each position. */
+        private final int[] _plain;
+
+        /** Log probability of the n-gram starting at each position. */
+        private final double[] _gram;
+
+        /** Next and previous positions in the list for the same scrambler
+         *  output, or -1. */
+        private final int[] _next, _previous;
+
+        /** First position in the list for each scrambler output, or -1. */
+        private final int[] _head;
+
+        /** _stamp where a position was marked by the current
+         *  redecrypt. */
+        private final int[] _seen;
+
+        /** _stamp where an n-gram was marked by the current redecrypt. */
+        private final int[] _seenWindow;
+
+        /** Positions decrypted again by the last redecrypt. */
+        private final int[] _changed;
+
+        /** Scrambler outputs and plaintext of _changed before. */
+        private final int[] _oldMiddle, _oldPlain;
+
+        /** N-grams rescored by the last redecrypt. */
+        private final int[] _windows;
+
+        /** Log probabilities of _windows before. */
+        private final double[] _oldGram;
+
+        /** Letters whose partners were changed, and their old
+         *  partners. */
+        private final int[] _letters = new int[4], _oldPartner = new int[4];
+
+        /** Number of entries in _letters, _changed and _windows. */
+        private int _count, _changedCount, _windowCount;
+
+        /** Number of the current redecrypt. */
+        private int _stamp;
+
+        /** Number of pairs in _plug. */
+        private int _pairs;
+    }
+
+    /** A task climbing from restarts FROM .. TO - 1. */
+    private class Restarts extends RecursiveAction {
+
+        /** A task for restarts FROM .. TO - 1. */
+        Restarts(int from, int to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > RESTARTS_PER_TASK) {
+                int mid = _from + (_to - _from) / 2;
+                invokeAll(new Restarts(_from, mid), new Restarts(mid, _to));
+                return;
+            }
+            Climber climber = new Climber();
+            for (int r = _from; r < _to; r += 1) {
+                int[] plug = climber.climb(new SplittableRandom(_seed + r),
+                        r == 0);
+                _plugboards[r] = plug;
+                _top.offer(r, climber.score());
+            }
+        }
+
+        /** First restart. */
+        private final int _from;
+
+        /** Restart just after the last. */
+        private final int _to;
+    }
+
+    /** Default number of restarts. */
+    static final int DEFAULT_RESTARTS = 200;
+
+    /** Greatest number of restarts climbed by one task. */
+    static final int RESTARTS_PER_TASK = 4;
+
+    /** Smallest rise in score counted as an improvement. */
+    private static final double EPSILON = 1e-9;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** The message, as alphabet indices. */
+    private final int[] _ciphertext;
+
+    /** Length of the message. */
+    private final int _length;
+
+    /** Scores decryptions. */
+    private final NGramScorer _scorer;
+
+    /** The scorer's log probability of each n-gram, as a float to halve
+     *  the memory the climbs look it up in. */
+    private final float[] _grams;
+
+    /** Length of the scorer's n-grams. */
+    private final int _n;
+
+    /** Greatest number of plugboard pairs. */
+    private final int _maxPairs;
+
+    /** Number of best plugboards kept by each run. */
+    private final int _topCount;
+
+    /** Scrambler output for each character C at each position I, at
+     *  index I * size + C. */
+    private final int[] _scramblers;
+
+    /** Positions at which each letter occurs in the ciphertext. */
+    private final int[][] _withCipher;
+
+    /** Plugboard reached by each restart of the current run. */
+    private int[][] _plugboards;
+
+    /** The best plugboards found by the current run, by restart. */
+    private TopResults _top;
+
+    /** Seed of the current run. */
+    private long _seed;
+
+    /** Number of plugboards scored. */
+    private final LongAdder _evaluations = new LongAdder();
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardSolver class.
+ *  @author Akshay Patel
+ */
+public class PlugboardSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** The plugboard the ciphertext was made with. */
+    private static final String PLUGBOARD = "(AD) (CH)";
+
+    /** The ciphertext, EIGHT_TEXT encrypted with PLUGBOARD. */
+    private int[] _ciphertext;
+
+    /** The scorer used. */
+    private NGramScorer _scorer;
+
+    /** A solver for _ciphertext, with the plugboard unknown. */
+    private PlugboardSolver _solver;
+
+    /** Return the test machine with rotors R F Z X at DBG, and no
+     *  plugboard. */
+    private Machine machine() {
+        Machine m = eightLetterMachine();
+        m.insertRotors(new String[] {"R", "F", "Z", "X"});
+        m.setRotors("DBG");
+        return m;
+    }
+
+    @Before
+    public void setUp() {
+        Machine m = machine();
+        m.setPlugboard(new Permutation(PLUGBOARD, EIGHT));
+        _ciphertext = indices(EIGHT, m.convert(EIGHT_TEXT));
+        _scorer = ngrams(EIGHT, EIGHT_TEXT, 2);
+        _solver = new PlugboardSolver(machine(), _ciphertext, _scorer, 4, 3);
+    }
+
+    @Test
+    public void checkFindsPlugboard() {
+        List<TopResults.Result> results =
+                _solver.run(new ForkJoinPool(3), 20, 1);
+        assertEquals(3, results.size());
+        long best = results.get(0).key();
+        assertEquals(PLUGBOARD, _solver.plugboard(best));
+        assertEquals(EIGHT_TEXT, _solver.decrypt(best));
+        assertTrue(_solver.evaluations() >= 20 * 28);
+    }
+
+    @Test
+    public void checkRuns() {
+        List<TopResults.Result> first =
+                _solver.run(new ForkJoinPool(3), 20, 1);
+        List<TopResults.Result> fewer =
+                _solver.run(new ForkJoinPool(3), 2, 2);
+        assertEquals(2, fewer.size());
+        for (TopResults.Result result : fewer) {
+            assertTrue(result.key() < 2);
+            _solver.plugboard(result.key());
+        }
+        assertEquals(first.toString(),
+                _solver.run(new ForkJoinPool(3), 20, 1).toString());
+    }
+
+    @Test
+    public void checkIncrementalScore() {
+        PlugboardSolver.Climber climber = _solver.new Climber();
+        SplittableRandom random = new SplittableRandom(3);
+        climber.start(random, false);
+        int kept = 0, undone = 0;
+        for (int k = 0; k < 300; k += 1) {
+            int a = random.nextInt(EIGHT.size());
+            int b = random.nextInt(EIGHT.size());
+            if (a == b) {
+                continue;
+            }
+            if (climber.tryPairing(a, b)) {
+                kept += 1;
+            } else {
+                undone += 1;
+            }
+            int[] plug = climber.plug();
+            StringBuilder cycles = new StringBuilder();
+            for (int c = 0; c < plug.length; c += 1) {
+                if (c < plug[c]) {
+                    cycles.append('(').append(EIGHT.toChar(c))
+                        .append(EIGHT.toChar(plug[c])).append(')');
+                }
+            }
+            Machine m = machine();
+            m.setPlugboard(new Permutation(cycles.toString(), EIGHT));
+            StringBuilder cipher = new StringBuilder();
+            for (int c : _ciphertext) {
+                cipher.append(EIGHT.toChar(c));
+            }
+            int[] plain = indices(EIGHT, m.convert(cipher.toString()));
+            assertEquals(_scorer.score(plain, plain.length),
+                    climber.incrementalScore(), 1e-3);
+        }
+        assertTrue(kept > 0 && undone > 0);
+    }
+}
@@ -13,6 +13,16 @@ class Reflector extends FixedRotor {
         super(name, perm);
     }
 
+    /** A rotor like ORIGINAL, in its 0 setting, sharing its wiring. */
+    protected Reflector(Reflector original) {
+        super(original);
+    }
+
+    @Override
+    Rotor copy() {
+        return new Reflector(this);
+    }
+
     @Override
     boolean reflecting() {
         return true;
@@ -7,11 +7,25 @@ class Rotor {
 
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
+        this(name, perm, new Wiring(perm));
+    }
+
+    /** A rotor like ORIGINAL, in its 0 setting, sharing its wiring. */
+    protected Rotor(Rotor original) {
+        this(original._name, original._permutation, original._wiring);
+    }
+
+    /** A rotor named NAME whose permutation PERM is tabulated in
+     *  WIRING. */
+    private Rotor(String name, Permutation perm, Wiring wiring) {
         _name = name;
         _permutation = perm;
         _setting = 0;
         _ringstellung = setting();
         _ring = 0;
+        _wiring = wiring;
+        _forwardWheel = wiring._forwardWheel;
+        _backwardWheel = wiring._backwardWheel;
     }
 
     /** Return my name. */
@@ -49,16 +63,22 @@ class Rotor {
         return _setting;
     }
 
+    /** Return my current ringstellung, the setting less the ring
+     *  setting, which alone determines how I convert. */
+    int ringstellung() {
+        return _ringstellung;
+    }
+
     /** Set setting() to POSN.  */
     void set(int posn) {
-        _setting = posn;
+        _setting = _permutation.wrap(posn);
         _ringstellung = _setting;
+        buildTables();
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        _setting = alphabet().toInt(cposn);
-        _ringstellung = _setting;
+        set(alphabet().toInt(cposn));
     }
 
     /** Set ring to character CPOSN. */
@@ -68,22 +88,49 @@ class Rotor {
 
     /** Set ringstellung to character CPOSN. */
     void setRingstellung() {
-        _ringstellung = _setting - _ring;
+        _ringstellung = _permutation.wrap(_setting - _ring);
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int contactExited = _permutation.permute(p + _ringstellung);
-        return _permutation.wrap(contactExited - _ringstellung);
+        return convertForward(p, _ringstellung);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int contactExited = _permutation.invert(e + _ringstellung);
-        int positionExited = _permutation.wrap(contactExited - _ringstellung);
-        return positionExited;
+        return convertBackward(e, _ringstellung);
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation when my ringstellung is RINGSTELLUNG
+     *  (also in that range), whatever my own state. */
+    int convertForward(int p, int ringstellung) {
+        if (_forwardTable != null) {
+            return _forwardTable[ringstellung * size() + p];
+        }
+        int positionExited = _forwardWheel[p + ringstellung] - ringstellung;
+        return positionExited < 0
+                ? positionExited + size() : positionExited;
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation when my ringstellung is
+     *  RINGSTELLUNG, whatever my own state. */
+    int convertBackward(int e, int ringstellung) {
+        if (_backwardTable != null) {
+            return _backwardTable[ringstellung * size() + e];
+        }
+        int positionExited = _backwardWheel[e + ringstellung] - ringstellung;
+        return positionExited < 0
+                ? positionExited + size() : positionExited;
+    }
+
+    /** Return a new rotor like me, in its 0 setting, sharing my
+     *  wiring. */
+    Rotor copy() {
+        return new Rotor(this);
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -96,6 +143,90 @@ class Rotor {
     void advance() {
     }
 
+    /** Return the characters at which I have notches.  By default,
+     *  none. */
+    String notches() {
+        return "";
+    }
+
+    /** Move my setting and ringstellung forward by DISTANCE positions,
+     *  keeping my ring setting. */
+    void rotate(int distance) {
+        _setting = _permutation.wrap(_setting + distance);
+        _ringstellung = _permutation.wrap(_ringstellung + distance);
+    }
+
+    /** Move my setting and ringstellung forward by one, wrapping around
+     *  the alphabet. */
+    protected void rotate() {
+        _setting = _setting + 1 == size() ? 0 : _setting + 1;
+        _ringstellung = _ringstellung + 1 == size() ? 0 : _ringstellung + 1;
+    }
+
+    /** Fill in the per-offset conversion tables, if they fit in
+     *  TABLE_LIMIT entries and have not been built already.  Done when
+     *  the rotor is first set, so rotors that never go into a machine
+     *  cost nothing, and only once for a rotor and all its copies. */
+    private void buildTables() {
+        int size = size();
+        if (_forwardTable != null || size * size > TABLE_LIMIT) {
+            return;
+        }
+        synchronized (_wiring) {
+            if (_wiring._forwardTable == null) {
+                _wiring.buildTables(_permutation);
+            }
+            _backwardTable = _wiring._backwardTable;
+            _forwardTable = _wiring._forwardTable;
+        }
+    }
+
+    /** The conversion tables of a rotor, which never change and are
+     *  shared by the rotor and its copies. */
+    private static final class Wiring {
+
+        /** The tables of PERM, without the per-offset tables. */
+        Wiring(Permutation perm) {
+            int size = perm.size();
+            _forwardWheel = new int[2 * size];
+            _backwardWheel = new int[2 * size];
+            for (int i = 0; i < 2 * size; i += 1) {
+                _forwardWheel[i] = perm.permute(i % size);
+                _backwardWheel[i] = perm.invert(i % size);
+            }
+        }
+
+        /** Fill in the per-offset tables of PERM.  Called with my lock
+         *  held. */
+        void buildTables(Permutation perm) {
+            int size = perm.size();
+            int[] forward = new int[size * size];
+            int[] backward = new int[size * size];
+            for (int offset = 0; offset < size; offset += 1) {
+                for (int p = 0; p < size; p += 1) {
+                    forward[offset * size + p]
+                        = perm.wrap(_forwardWheel[p + offset] - offset);
+                    backward[offset * size + p]
+                        = perm.wrap(_backwardWheel[p + offset] - offset);
+                }
+            }
+            _backwardTable = backward;
+            _forwardTable = forward;
+        }
+
+        /** As Rotor._forwardWheel. */
+        private final int[] _forwardWheel;
+
+        /** As Rotor._backwardWheel. */
+        private final int[] _backwardWheel;
+
+        /** As Rotor._forwardTable, or null if not built. */
+        private int[] _forwardTable;
+
+        /** As Rotor._backwardTable, or null if not built. */
+        private int[] _backwardTable;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -115,4 +246,24 @@ class Rotor {
 
     /** Ring setting of this rotor. */
     protected int _ring;
+
+    /** Largest number of entries in each of my per-offset tables. */
+    static final int TABLE_LIMIT = 1 << 14;
+
+    /** My tables, shared with my copies. */
+    private final Wiring _wiring;
+
+    /** My permutation applied to 0 .. 2 * size() - 1, so that adding an
+     *  offset below size() never needs reducing. */
+    private final int[] _forwardWheel;
+
+    /** The inverse of my permutation, laid out as _forwardWheel. */
+    private final int[] _backwardWheel;
+
+    /** Forward conversion of contact P at ringstellung R, stored at
+     *  R * size() + P, or null if not built. */
+    private int[] _forwardTable;
+
+    /** Backward conversions, laid out as _forwardTable. */
+    private int[] _backwardTable;
 }
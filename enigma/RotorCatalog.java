@@ -0,0 +1,200 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/** The rotors available to a machine, indexed by name.  Each rotor gets
+ *  an integer id, its position in the catalog, and each distinct name is
+ *  interned in a hash index to the first rotor bearing it, so that
+ *  looking a rotor up costs the same however many rotors there are.
+ *  Rotors that share a name are chained together in catalog order.  The
+ *  reflectors, the moving rotors and the fixed rotors are also kept as
+ *  separate views.
+ *  @author Akshay Patel
+ */
+class RotorCatalog {
+
+    /** Id returned for a name that no rotor has. */
+    static final int NONE = -1;
+
+    /** A catalog of ROTORS, in the order given. */
+    RotorCatalog(Collection<Rotor> rotors) {
+        _rotors = rotors.toArray(new Rotor[0]);
+        _ids = new HashMap<String, Integer>(2 * _rotors.length);
+        _sameName = new int[_rotors.length];
+        int[] last = new int[_rotors.length];
+        List<Rotor> reflectors = new ArrayList<Rotor>();
+        List<Rotor> wheels = new ArrayList<Rotor>();
+        List<Rotor> moving = new ArrayList<Rotor>();
+        List<Rotor> fixed = new ArrayList<Rotor>();
+        for (int id = 0; id < _rotors.length; id += 1) {
+            _sameName[id] = NONE;
+            Integer first = _ids.putIfAbsent(_rotors[id].name(), id);
+            if (first == null) {
+                last[id] = id;
+            } else {
+                _sameName[last[first]] = id;
+                last[first] = id;
+            }
+            if (_rotors[id].reflecting()) {
+                reflectors.add(_rotors[id]);
+            } else {
+                wheels.add(_rotors[id]);
+                if (_rotors[id].rotates()) {
+                    moving.add(_rotors[id]);
+                } else {
+                    fixed.add(_rotors[id]);
+                }
+            }
+        }
+        _all = Collections.unmodifiableList(Arrays.asList(_rotors));
+        _reflectors = Collections.unmodifiableList(reflectors);
+        _wheels = Collections.unmodifiableList(wheels);
+        _moving = Collections.unmodifiableList(moving);
+        _fixed = Collections.unmodifiableList(fixed);
+    }
+
+    /** Return the number of rotors in the catalog. */
+    int size() {
+        return _rotors.length;
+    }
+
+    /** Return the rotor with id ID. */
+    Rotor get(int id) {
+        return _rotors[id];
+    }
+
+    /** Return the id of the first rotor named NAME, or NONE if there is
+     *  none. */
+    int id(String name) {
+        Integer id = _ids.get(name);
+        return id == null ? NONE : id;
+    }
+
+    /** Return the id of the next rotor after the one with id ID that has
+     *  the same name, or NONE if there is none. */
+    int nextWithSameName(int id) {
+        return _sameName[id];
+    }
+
+    /** Return true iff some rotor is named NAME. */
+    boolean contains(String name) {
+        return _ids.containsKey(name);
+    }
+
+    /** Return the first rotor named NAME, or null if there is none. */
+    Rotor find(String name) {
+        Integer id = _ids.get(name);
+        return id == null ? null : _rotors[id];
+    }
+
+    /** Return all my rotors, in catalog order. */
+    List<Rotor> all() {
+        return _all;
+    }
+
+    /** Return my reflectors, in catalog order. */
+    List<Rotor> reflectors() {
+        return _reflectors;
+    }
+
+    /** Return my moving and fixed rotors, in catalog order. */
+    List<Rotor> wheels() {
+        return _wheels;
+    }
+
+    /** Return my moving rotors, in catalog order. */
+    List<Rotor> moving() {
+        return _moving;
+    }
+
+    /** Return my fixed rotors (neither moving nor reflecting), in catalog
+     *  order. */
+    List<Rotor> fixed() {
+        return _fixed;
+    }
+
+    /** Return every order of my rotors that can be named on a setting
+     *  line of a machine with SLOTS slots and PAWLS pawls: a reflector
+     *  first, then rotors that do not move in the slots without pawls
+     *  and moving rotors in those with pawls, no name appearing twice.
+     *  Where rotors share a name, only the first counts.  There must be
+     *  between 1 and LIMIT orders. */
+    Rotor[][] orders(int slots, int pawls, int limit) {
+        List<Rotor[]> orders = new ArrayList<Rotor[]>();
+        Rotor[] order = new Rotor[slots];
+        for (Rotor reflector : _reflectors) {
+            if (find(reflector.name()) == reflector) {
+                order[0] = reflector;
+                fill(order, 1, pawls, orders, limit);
+            }
+        }
+        if (orders.isEmpty()) {
+            throw EnigmaException.error("No rotor orders to search.");
+        }
+        return orders.toArray(new Rotor[0][]);
+    }
+
+    /** Add to ORDERS every way of filling ORDER[SLOT ..] for a machine
+     *  with PAWLS pawls, keeping ORDER[0 .. SLOT-1], as for orders, and
+     *  failing if ORDERS would grow beyond LIMIT. */
+    private void fill(Rotor[] order, int slot, int pawls,
+                      List<Rotor[]> orders, int limit) {
+        if (slot == order.length) {
+            if (orders.size() == limit) {
+                throw EnigmaException.error("Too many rotor orders to "
+                        + "search.");
+            }
+            orders.add(order.clone());
+            return;
+        }
+        List<Rotor> candidates =
+            slot >= order.length - pawls ? _moving : _fixed;
+        for (Rotor rotor : candidates) {
+            if (find(rotor.name()) != rotor
+                    || inUse(order, slot, rotor.name())) {
+                continue;
+            }
+            order[slot] = rotor;
+            fill(order, slot + 1, pawls, orders, limit);
+        }
+    }
+
+    /** Return true iff one of ORDER[0 .. SLOT-1] is named NAME. */
+    private static boolean inUse(Rotor[] order, int slot, String name) {
+        for (int i = 0; i < slot; i += 1) {
+            if (order[i].name().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The rotors, indexed by id. */
+    private final Rotor[] _rotors;
+
+    /** Id of the first rotor with each name. */
+    private final HashMap<String, Integer> _ids;
+
+    /** Id of the next rotor with the same name as each rotor, or NONE. */
+    private final int[] _sameName;
+
+    /** Unmodifiable view of _rotors. */
+    private final List<Rotor> _all;
+
+    /** The reflectors. */
+    private final List<Rotor> _reflectors;
+
+    /** The rotors that are not reflectors. */
+    private final List<Rotor> _wheels;
+
+    /** The rotors that move. */
+    private final List<Rotor> _moving;
+
+    /** The rotors that neither move nor reflect. */
+    private final List<Rotor> _fixed;
+}
@@ -0,0 +1,56 @@
+package enigma;
+
+/** A lane kernel making one lookup at a time.
+ *  @author Akshay Patel
+ */
+final class ScalarLaneKernel implements LaneKernel {
+
+    @Override
+    public void map(int[] table, int[] chars, int lanes) {
+        map(table, chars, lanes, 0);
+    }
+
+    @Override
+    public void mapLanes(int[] tables, int size, int[] chars, int lanes) {
+        mapLanes(tables, size, chars, lanes, 0);
+    }
+
+    @Override
+    public void rotor(int[] wiring, int size, int[] settings, int[] rings,
+                      int[] chars, int lanes) {
+        rotor(wiring, size, settings, rings, chars, lanes, 0);
+    }
+
+    @Override
+    public boolean vectorized() {
+        return false;
+    }
+
+    /** As map(TABLE, CHARS, LANES), for lanes FROM .. LANES-1 only. */
+    void map(int[] table, int[] chars, int lanes, int from) {
+        for (int l = from; l < lanes; l += 1) {
+            chars[l] = table[chars[l]];
+        }
+    }
+
+    /** As mapLanes(TABLES, SIZE, CHARS, LANES), for lanes
+     *  FROM .. LANES-1 only. */
+    void mapLanes(int[] tables, int size, int[] chars, int lanes,
+                  int from) {
+        for (int l = from; l < lanes; l += 1) {
+            chars[l] = tables[l * size + chars[l]];
+        }
+    }
+
+    /** As rotor(WIRING, SIZE, SETTINGS, RINGS, CHARS, LANES), for lanes
+     *  FROM .. LANES-1 only. */
+    void rotor(int[] wiring, int size, int[] settings, int[] rings,
+               int[] chars, int lanes, int from) {
+        for (int l = from; l < lanes; l += 1) {
+            int r = settings[l] - rings[l];
+            r = r < 0 ? r + size : r;
+            int c = wiring[chars[l] + r] - r;
+            chars[l] = c < 0 ? c + size : c;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package enigma;
+
+/** A measure of how much a text, given as alphabet indices, looks like
+ *  plaintext.  Higher scores are better.  Besides the score itself, a
+ *  scorer gives a bound on the score of any text beginning with a given
+ *  prefix, and an estimate of it, so that a search can give up on a trial
+ *  decryption as soon as it cannot, or is unlikely to, do well enough.
+ *  Scorers must be safe to use from several threads at once.
+ *  @author Akshay Patel
+ */
+interface Scorer {
+
+    /** Return the score of TEXT[0 .. LENGTH-1]. */
+    double score(int[] text, int length);
+
+    /** Return a number no less than the score of any text of TOTAL
+     *  characters that begins with TEXT[0 .. LENGTH-1]. */
+    double bound(int[] text, int length, int total);
+
+    /** Return the likely score of a text of TOTAL characters that begins
+     *  with TEXT[0 .. LENGTH-1], supposing the rest of it is like the
+     *  beginning. */
+    double estimate(int[] text, int length, int total);
+
+    /** Return the typical difference between the estimate made from the
+     *  first LENGTH characters of a text of TOTAL random characters and
+     *  that text's score. */
+    double spread(int length, int total);
+}
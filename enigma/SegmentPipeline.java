@@ -0,0 +1,316 @@
+package enigma;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/** Converts the segments of an input file that begin at setting lines
+ *  concurrently.  Every setting line configures its machine afresh, so
+ *  each segment is an independent piece of work.  The reader of the
+ *  input hands me each setting line, message line and run of blank lines
+ *  in turn; I gather them into a segment, convert whole segments on a
+ *  pool of threads, each with its own copy of the machine, and write the
+ *  results out in input order.  At most a fixed number of segments are
+ *  in flight, so that a slow segment holds back only a bounded amount of
+ *  finished output.  The first failure, in input order, is reported
+ *  after the output that precedes it, and later segments are abandoned.
+ *
+ *  A segment that grows beyond SEGMENT_LIMIT characters is instead
+ *  converted by the reader itself, once everything before it is written,
+ *  and the rest of it is converted line by line as it is read, so that
+ *  memory stays bounded by the longest line.
+ *  @author Akshay Patel
+ */
+class SegmentPipeline {
+
+    /** A pipeline writing to OUTPUT with THREADS threads, each converting
+     *  with its own copy of MACHINE, which it configures from a setting
+     *  line with SETUP. */
+    SegmentPipeline(Machine machine, BiConsumer<Machine, String> setUp,
+                    MessageSink output, int threads) {
+        _machines = ThreadLocal.withInitial(machine::copy);
+        _setUp = setUp;
+        _output = output;
+        _capacity = threads * SEGMENTS_PER_THREAD;
+        _pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "enigma-segment");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Begin a new segment with the setting line SETTING. */
+    void setting(String setting) {
+        endSegment();
+        if (_firstFailure.get() != NONE) {
+            finish(null);
+        }
+        _current = new Segment(_segments, setting);
+        _segments += 1;
+    }
+
+    /** Add COUNT empty lines to the current segment. */
+    void blankLines(int count) {
+        for (int i = 0; i < count; i += 1) {
+            if (_inline != null) {
+                _output.endLine();
+            } else {
+                _current.append(_line.chars(), 0, END);
+            }
+        }
+    }
+
+    /** Add the message line at the front of INPUT to the current
+     *  segment. */
+    void messageLine(MessageSource input) {
+        _line.read(input);
+        int[] chars = _line.chars();
+        int length = _line.length();
+        if (_inline != null) {
+            _inline.convert(chars, 0, length, chars, 0);
+            _output.write(chars, 0, length);
+            _output.endLine();
+            return;
+        }
+        if (length > 0) {
+            _current.append(chars, length, length);
+        }
+        _current.append(chars, 0, END);
+        if (_current._size > SEGMENT_LIMIT) {
+            convertInline();
+        }
+    }
+
+    /** Write out everything not yet written and stop.  Throw the first
+     *  failure of any segment, or else PENDING, if not null, which is
+     *  taken to have happened after all the input given to me. */
+    void finish(RuntimeException pending) {
+        if (_finished) {
+            if (pending != null) {
+                throw pending;
+            }
+            return;
+        }
+        try {
+            if (!_cancelled) {
+                endSegment();
+            }
+            while (!_pending.isEmpty() && !_cancelled) {
+                writeFirst();
+            }
+        } finally {
+            _finished = true;
+            _cancelled = true;
+            _pool.shutdownNow();
+        }
+        if (pending != null) {
+            throw pending;
+        }
+    }
+
+    /** Hand the current segment, if any, to the pool, first making room
+     *  for it among the segments in flight. */
+    private void endSegment() {
+        _inline = null;
+        if (_current == null) {
+            return;
+        }
+        Segment segment = _current;
+        _current = null;
+        while (_pending.size() >= _capacity) {
+            writeFirst();
+        }
+        segment._result = _pool.submit(() -> convert(segment));
+        _pending.add(segment);
+        while (!_pending.isEmpty() && _pending.peek()._result.isDone()) {
+            writeFirst();
+        }
+    }
+
+    /** Write out everything in flight, then convert the current segment
+     *  here, write it out and continue it by streaming. */
+    private void convertInline() {
+        while (!_pending.isEmpty()) {
+            writeFirst();
+        }
+        Segment segment = _current;
+        _current = null;
+        convert(segment);
+        write(segment);
+        _inline = _machines.get();
+    }
+
+    /** Wait for the first segment in flight to be converted and write it
+     *  out. */
+    private void writeFirst() {
+        Segment segment = _pending.poll();
+        try {
+            segment._result.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw EnigmaException.error("interrupted");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        }
+        write(segment);
+    }
+
+    /** Write out the converted part of SEGMENT, then throw its failure,
+     *  if any. */
+    private void write(Segment segment) {
+        int[] data = segment._data;
+        for (int k = 0; k < segment._converted; k += 1) {
+            int length = data[k];
+            if (length == END) {
+                _output.endLine();
+            } else {
+                _output.write(data, k + 1, length);
+                k += length;
+            }
+        }
+        if (segment._failure != null) {
+            _cancelled = true;
+            throw segment._failure;
+        }
+    }
+
+    /** Configure this thread's machine for SEGMENT and convert its
+     *  messages in place, recording any failure.  Gives up if an earlier
+     *  segment has failed. */
+    private void convert(Segment segment) {
+        Machine machine = _machines.get();
+        int[] data = segment._data;
+        try {
+            if (abandoned(segment)) {
+                return;
+            }
+            _setUp.accept(machine, segment._setting);
+            int k = 0;
+            while (k < segment._size && !abandoned(segment)) {
+                int length = data[k];
+                if (length != END) {
+                    machine.convert(data, k + 1, length, data, k + 1);
+                    k += length;
+                }
+                k += 1;
+                segment._converted = k;
+            }
+        } catch (RuntimeException excp) {
+            segment._failure = excp;
+            _firstFailure.accumulateAndGet(segment._index, Math::min);
+        }
+    }
+
+    /** Return true iff SEGMENT will never be written. */
+    private boolean abandoned(Segment segment) {
+        return _cancelled || _firstFailure.get() < segment._index;
+    }
+
+    /** A run of input starting at a setting line. */
+    private static class Segment {
+
+        /** The segment numbered INDEX, which starts at setting line
+         *  SETTING. */
+        Segment(int index, String setting) {
+            _index = index;
+            _setting = setting;
+            _data = new int[INITIAL_SIZE];
+        }
+
+        /** Append HEADER, followed by the LENGTH values BLOCK[0 ..], to
+         *  my data. */
+        void append(int[] block, int length, int header) {
+            if (_size + length + 1 > _data.length) {
+                _data = Arrays.copyOf(_data,
+                        Math.max(2 * _data.length, _size + length + 1));
+            }
+            _data[_size] = header;
+            System.arraycopy(block, 0, _data, _size + 1, length);
+            _size += length + 1;
+        }
+
+        /** My position in the input. */
+        private final int _index;
+
+        /** My setting line. */
+        private final String _setting;
+
+        /** My lines: each piece of a message line is its length followed
+         *  by its alphabet indices, which are converted in place, and
+         *  each line ends with END. */
+        private int[] _data;
+
+        /** Number of values in _data. */
+        private int _size;
+
+        /** Number of values of _data that are converted and may be
+         *  written. */
+        private volatile int _converted;
+
+        /** Why I could not be converted completely, or null. */
+        private volatile RuntimeException _failure;
+
+        /** Completion of my conversion. */
+        private Future<?> _result;
+    }
+
+    /** Marks the end of a line in a segment's data. */
+    private static final int END = -1;
+
+    /** Value of _firstFailure when nothing has failed. */
+    private static final int NONE = Integer.MAX_VALUE;
+
+    /** Segments in flight per thread. */
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    /** Largest segment, in values, that is converted on the pool. */
+    static final int SEGMENT_LIMIT = 1 << 18;
+
+    /** Initial size of a segment's data. */
+    private static final int INITIAL_SIZE = 64;
+
+    /** Each thread's own machine. */
+    private final ThreadLocal<Machine> _machines;
+
+    /** Configures a machine from a setting line. */
+    private final BiConsumer<Machine, String> _setUp;
+
+    /** Destination of the converted messages. */
+    private final MessageSink _output;
+
+    /** Maximum number of segments in flight. */
+    private final int _capacity;
+
+    /** Threads converting segments. */
+    private final ExecutorService _pool;
+
+    /** Segments handed to the pool and not yet written, in order. */
+    private final ArrayDeque<Segment> _pending = new ArrayDeque<>();
+
+    /** Lowest index of a segment that has failed, or NONE. */
+    private final AtomicInteger _firstFailure = new AtomicInteger(NONE);
+
+    /** True once no more segments are to be converted. */
+    private volatile boolean _cancelled;
+
+    /** Segment being gathered, or null. */
+    private Segment _current;
+
+    /** Number of segments begun. */
+    private int _segments;
+
+    /** Machine converting the current segment as it is read, or null if
+     *  it is being gathered. */
+    private Machine _inline;
+
+    /** True once finish has been called. */
+    private boolean _finished;
+
+    /** The message line being read. */
+    private final MessageLine _line = new MessageLine();
+}
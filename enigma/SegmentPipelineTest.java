@@ -0,0 +1,168 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SegmentPipeline class, which
+ *  must give just what Main gives when converting sequentially.
+ *  @author Akshay Patel
+ */
+public class SegmentPipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The configuration used. */
+    private static final String CONFIG = UPPER_STRING + "\n5 3\n"
+        + " I MQ " + NAVALA.get("I") + "\n"
+        + " II ME " + NAVALA.get("II") + "\n"
+        + " III MV " + NAVALA.get("III") + "\n"
+        + " IV MJ " + NAVALA.get("IV") + "\n"
+        + " Beta N " + NAVALA.get("Beta") + "\n"
+        + " Gamma N " + NAVALA.get("Gamma") + "\n"
+        + " B R " + NAVALA.get("B") + "\n"
+        + " C R " + NAVALA.get("C") + "\n";
+
+    /** Setting lines, used in turn. */
+    private static final String[] SETTINGS = {
+        "* B Beta I II III AXLE (HQ) (EX)",
+        "* C Gamma IV III II QEVZ BCDE",
+        "* B Gamma III I IV ZZZZ (AZ) (BY)",
+    };
+
+    /** The result of converting INPUT with Main: its output, followed by
+     *  the message of the error it stopped with, if any. */
+    private String run(String input, int threads) throws IOException {
+        Path file = Files.createTempFile("pipeline", ".conf");
+        try {
+            Files.write(file, CONFIG.getBytes(Charset.defaultCharset()));
+            Machine machine = new Main(new String[] { file.toString() })
+                    .readConfig();
+            StringWriter result = new StringWriter();
+            GroupFormatter output = new GroupFormatter(result, UPPER,
+                    GroupFormatter.BUFFER_SIZE,
+                    GroupFormatter.FlushPolicy.WHEN_FULL, false, true);
+            String error = "";
+            try {
+                new Main(UPPER, new MessageReader(new StringReader(input),
+                        UPPER), output).process(machine, threads);
+            } catch (EnigmaException excp) {
+                error = "Error: " + excp.getMessage();
+            } finally {
+                output.close();
+            }
+            return result + error;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Return SEGMENTS segments of input made with RANDOM, each a setting
+     *  line followed by message lines, some with blank lines between. */
+    private String input(Random random, int segments) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < segments; k += 1) {
+            result.append(SETTINGS[k % SETTINGS.length]).append('\n');
+            for (int line = random.nextInt(4); line >= 0; line -= 1) {
+                result.append("\n".repeat(random.nextInt(3)));
+                for (int i = random.nextInt(200); i >= 0; i -= 1) {
+                    result.append(UPPER.toChar(random.nextInt(26)));
+                    if (random.nextInt(7) == 0) {
+                        result.append(' ');
+                    }
+                }
+                result.append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Assert that INPUT gives the same result converted sequentially and
+     *  by a pipeline of several threads, and return it. */
+    private String checkSame(String input) throws IOException {
+        String expected = run(input, 1);
+        assertEquals(expected, run(input, 4));
+        return expected;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkOrderAndBlankLines() throws IOException {
+        Random random = new Random(11);
+        String result = checkSame(input(random, 60));
+        assertFalse(result.contains("Error"));
+        checkSame("\n\n" + input(random, 5) + "\n\n\n");
+        checkSame(SETTINGS[0] + "\n\n\n" + SETTINGS[1] + "\nABC\n");
+        checkSame(SETTINGS[0] + "\nABC\n" + SETTINGS[1] + "\n"
+                + SETTINGS[2] + "\nDEF\n");
+    }
+
+    @Test
+    public void checkFailures() throws IOException {
+        Random random = new Random(12);
+        String before = input(random, 20);
+        String after = input(random, 20);
+        String[] failures = {
+            "* B Beta I II VIII AXLE\nABCDE\n",
+            "* B Beta I II III AXL\nABCDE\n",
+            SETTINGS[0] + "\nABC DEF\nABC5DEF\n",
+        };
+        for (String failure : failures) {
+            String result = checkSame(before + failure + after);
+            assertTrue(result, result.contains("Error"));
+            assertEquals(result, result.indexOf("Error"),
+                    result.lastIndexOf("Error"));
+            assertTrue(result.startsWith(run(before, 1)));
+        }
+    }
+
+    @Test
+    public void checkFailedLinePrintsNothing() throws IOException {
+        Random random = new Random(14);
+        String start = input(random, 3) + SETTINGS[0] + "\nABCDE\n";
+        String expected = run(start, 1);
+        for (int length : new int[] {
+                20000, SegmentPipeline.SEGMENT_LIMIT + 1000}) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < length; i += 1) {
+                line.append(UPPER.toChar(random.nextInt(26)));
+            }
+            String result = checkSame(start + line + "5ABC\n"
+                    + input(random, 3));
+            assertEquals("length of output", expected.length(),
+                    result.indexOf("Error"));
+            assertTrue(result.startsWith(expected));
+        }
+    }
+
+    @Test
+    public void checkLongSegments() throws IOException {
+        Random random = new Random(13);
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < SegmentPipeline.SEGMENT_LIMIT + 1000; i += 1) {
+            longLine.append(UPPER.toChar(random.nextInt(26)));
+        }
+        String input = input(random, 10) + SETTINGS[1] + "\nABC\n\n"
+                + longLine + "\n\nDEF\n" + longLine + "\n\n"
+                + input(random, 10);
+        checkSame(input);
+        checkSame(input(random, 3) + SETTINGS[2] + "\n" + longLine
+                + "\nAB5C\n" + input(random, 3));
+    }
+}
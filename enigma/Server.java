@@ -0,0 +1,475 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running server converting jobs for configurations it has read
+ *  once, so that each job costs neither the start-up of a JVM nor the
+ *  reading of its configuration.  A job is the input of Main: setting
+ *  lines and the messages they apply to.  The output of a job is
+ *  exactly what Main would print for it.  Each job is converted on a
+ *  machine of its own, a copy of the one read from the configuration,
+ *  so jobs cannot see each other's settings.
+ *
+ *  The server listens on a Unix domain socket or a TCP port on the
+ *  loopback address.  Each connection is served by a thread of its
+ *  own: a virtual thread where the JVM has them, and otherwise a thread
+ *  from a cached pool.  A connection carries any number of requests,
+ *  each answered before the next is read.  A request is a frame: a
+ *  4-byte big-endian length N, then N bytes, the first of which is the
+ *  operation.  A connection whose next frame claims a negative length or
+ *  one over MAX_REQUEST is closed.
+ *
+ *    CONVERT ('C'): the rest is UTF-8 text, the name of a configuration
+ *      (its file name, or the path it was given as), a newline, and the
+ *      job.
+ *    STATS ('S'): nothing more.
+ *
+ *  The response is a frame whose first byte is OK (0) or FAILED (1) and
+ *  whose rest is UTF-8 text: for CONVERT, the output or else the error
+ *  Main would report, and for STATS, the number of requests served and
+ *  the median and 99th percentile of their latencies.  Latency is the
+ *  time from reading a request to writing its response.
+ *
+ *  On drain() (as on an interrupt or termination of the JVM), the
+ *  server stops accepting connections, closes connections between
+ *  requests, lets requests in progress finish and be answered, and
+ *  after a timeout closes whatever remains.
+ *  @author Akshay Patel
+ */
+final class Server {
+
+    /** Operation converting a job. */
+    static final byte CONVERT = 'C';
+
+    /** Operation reporting latencies. */
+    static final byte STATS = 'S';
+
+    /** Status of a response to a request that succeeded. */
+    static final byte OK = 0;
+
+    /** Status of a response to a request that failed. */
+    static final byte FAILED = 1;
+
+    /** Longest request accepted, in bytes. */
+    static final int MAX_REQUEST = 1 << 26;
+
+    /** Most bytes of a request read before more of it has arrived. */
+    static final int REQUEST_CHUNK = 1 << 16;
+
+    /** Default time, in seconds, given to requests in progress when
+     *  draining. */
+    static final int DEFAULT_DRAIN = 30;
+
+    /** Serve jobs as described by ARGS: [--drain SECONDS] ADDRESS
+     *  CONFIG..., where ADDRESS is either unix:PATH, for a Unix domain
+     *  socket at PATH, or a TCP port on the loopback address (0 for any
+     *  free one), and the CONFIGs name configuration files.  The address
+     *  listened on is printed on the standard error.  Runs until the JVM
+     *  is interrupted or terminated, then drains. */
+    public static void main(String... args) {
+        try {
+            int drain = DEFAULT_DRAIN;
+            int k = 0;
+            while (k < args.length - 2 && args[k].startsWith("--")) {
+                switch (args[k]) {
+                case "--drain":
+                    drain = number(args[k + 1]);
+                    break;
+                default:
+                    throw error("unknown option %s", args[k]);
+                }
+                k += 2;
+            }
+            if (args.length - k < 2) {
+                throw error("Usage: java enigma.Server [--drain SECONDS] "
+                        + "ADDRESS CONFIG...");
+            }
+            Server server = new Server();
+            for (int c = k + 1; c < args.length; c += 1) {
+                server.addConfig(args[c]);
+            }
+            long timeout = TimeUnit.SECONDS.toMillis(drain);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.drain(timeout);
+                System.err.println(server.stats());
+            }));
+            System.err.printf("listening on %s%n",
+                    server.bind(address(args[k])));
+            server.serve();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A server with no configurations, not yet listening. */
+    Server() {
+        _connectionThreads = connectionThreads();
+    }
+
+    /** Read the configuration file named NAME, to be asked for by NAME
+     *  or by its file name. */
+    void addConfig(String name) {
+        Machine machine = new Main(new String[] { name }).readConfig();
+        _configs.put(name, machine);
+        Path file = Paths.get(name).getFileName();
+        if (file != null) {
+            _configs.putIfAbsent(file.toString(), machine);
+        }
+    }
+
+    /** Listen on ADDRESS, a UnixDomainSocketAddress or an
+     *  InetSocketAddress, and return the address listened on.  A stale
+     *  socket file at a Unix domain address is replaced. */
+    SocketAddress bind(SocketAddress address) {
+        try {
+            if (address instanceof UnixDomainSocketAddress) {
+                _socketFile = ((UnixDomainSocketAddress) address).getPath();
+                Files.deleteIfExists(_socketFile);
+                _server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            } else {
+                _server = ServerSocketChannel.open();
+            }
+            _server.bind(address);
+            return _server.getLocalAddress();
+        } catch (IOException excp) {
+            throw error("could not listen on %s: %s", address,
+                    excp.getMessage());
+        }
+    }
+
+    /** Accept connections and serve each on a thread of its own, until
+     *  drained. */
+    void serve() {
+        while (!_draining) {
+            SocketChannel channel;
+            try {
+                channel = _server.accept();
+            } catch (IOException excp) {
+                if (_draining) {
+                    break;
+                }
+                throw error("could not accept connection: %s",
+                        excp.getMessage());
+            }
+            Connection connection = new Connection(channel);
+            _connections.add(connection);
+            try {
+                _connectionThreads.execute(() -> serve(connection));
+            } catch (RejectedExecutionException excp) {
+                connection.close();
+                _connections.remove(connection);
+            }
+        }
+    }
+
+    /** Stop accepting connections, close idle ones, and wait up to
+     *  TIMEOUT milliseconds for requests in progress to be answered
+     *  before closing every connection. */
+    void drain(long timeout) {
+        synchronized (this) {
+            if (_draining) {
+                return;
+            }
+            _draining = true;
+        }
+        try {
+            if (_server != null) {
+                _server.close();
+            }
+            if (_socketFile != null) {
+                Files.deleteIfExists(_socketFile);
+            }
+        } catch (IOException excp) {
+            /* Nothing more can be done about it. */
+        }
+        for (Connection connection : _connections) {
+            connection.drain();
+        }
+        _connectionThreads.shutdown();
+        try {
+            _connectionThreads.awaitTermination(timeout,
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        for (Connection connection : _connections) {
+            connection.close();
+        }
+    }
+
+    /** Return the latencies of the requests served so far. */
+    LatencyHistogram latencies() {
+        return _latencies;
+    }
+
+    /** Return a report of the number of requests served and their
+     *  latencies. */
+    String stats() {
+        return String.format("served %d requests, latency p50 %.1f us, "
+                + "p99 %.1f us", _latencies.count(),
+                _latencies.quantile(0.50) / 1e3,
+                _latencies.quantile(0.99) / 1e3);
+    }
+
+    /** Return the response to REQUEST, a request frame without its
+     *  length. */
+    byte[] respond(byte[] request) {
+        if (request.length == 0) {
+            return response(FAILED, "empty request");
+        }
+        switch (request[0]) {
+        case CONVERT:
+            String text = new String(request, 1, request.length - 1,
+                    StandardCharsets.UTF_8);
+            int newline = text.indexOf('\n');
+            String name = newline < 0 ? text : text.substring(0, newline);
+            Machine config = _configs.get(name);
+            if (config == null) {
+                return response(FAILED, "no configuration " + name);
+            }
+            try {
+                return response(OK, convert(config,
+                        newline < 0 ? "" : text.substring(newline + 1)));
+            } catch (EnigmaException excp) {
+                return response(FAILED, excp.getMessage());
+            }
+        case STATS:
+            return response(OK, stats());
+        default:
+            return response(FAILED, "unknown operation " + request[0]);
+        }
+    }
+
+    /** Return the output of JOB, converted on a copy of CONFIG, which
+     *  shares its rotors' wiring and tables. */
+    private static String convert(Machine config, String job) {
+        Machine machine = config.copy();
+        Alphabet alphabet = machine.alphabet();
+        StringWriter result = new StringWriter();
+        GroupFormatter output = new GroupFormatter(result, alphabet,
+                GroupFormatter.BUFFER_SIZE,
+                GroupFormatter.FlushPolicy.WHEN_FULL, false, true);
+        try {
+            new Main(alphabet, new MessageReader(new StringReader(job),
+                    alphabet), output).process(machine);
+        } finally {
+            output.close();
+        }
+        return result.toString();
+    }
+
+    /** Return a response with status STATUS and text TEXT. */
+    private static byte[] response(byte status, String text) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        result.write(status);
+        result.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+        return result.toByteArray();
+    }
+
+    /** Answer the requests on CONNECTION until it ends or is drained. */
+    private void serve(Connection connection) {
+        SocketChannel channel = connection._channel;
+        try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(channel)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException excp) {
+                    return;
+                }
+                if (length < 0 || length > MAX_REQUEST
+                        || !connection.begin()) {
+                    return;
+                }
+                byte[] request = readRequest(in, length);
+                long start = System.nanoTime();
+                byte[] response = respond(request);
+                out.writeInt(response.length);
+                out.write(response);
+                out.flush();
+                _latencies.record(System.nanoTime() - start);
+                if (!connection.end()) {
+                    return;
+                }
+            }
+        } catch (IOException excp) {
+            /* The client has gone, or the connection was drained. */
+        } finally {
+            connection.close();
+            _connections.remove(connection);
+        }
+    }
+
+    /** Return the LENGTH bytes of a request read from IN.  They are read
+     *  REQUEST_CHUNK bytes at first, the buffer doubling as they arrive,
+     *  so that a client claiming a long request and never sending it
+     *  costs only what it sends. */
+    private static byte[] readRequest(DataInputStream in, int length)
+        throws IOException {
+        byte[] result = new byte[Math.min(length, REQUEST_CHUNK)];
+        int read = 0;
+        while (read < length) {
+            if (read == result.length) {
+                result = Arrays.copyOf(result,
+                        (int) Math.min(length, 2L * result.length));
+            }
+            int count = in.read(result, read, result.length - read);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            read += count;
+        }
+        return result;
+    }
+
+    /** Return the address described by SPEC: unix:PATH or a port. */
+    private static SocketAddress address(String spec) {
+        if (spec.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(spec.substring(5));
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                number(spec));
+    }
+
+    /** Return the non-negative number TEXT. */
+    private static int number(String text) {
+        try {
+            int result = Integer.parseInt(text);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("bad number: %s", text);
+    }
+
+    /** Return an executor running each task on a new virtual thread,
+     *  where the JVM has them (Java 21 and later), and otherwise on a
+     *  thread from a cached pool, which this JVM's connections are few
+     *  enough for. */
+    private static ExecutorService connectionThreads() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** A connection, which is busy while it has a request in progress,
+     *  and is closed by draining once it is not. */
+    private static final class Connection {
+
+        /** A connection over CHANNEL. */
+        Connection(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        /** Start a request, returning false if I am closed. */
+        synchronized boolean begin() {
+            _busy = !_closed;
+            return _busy;
+        }
+
+        /** Finish a request, returning false if I am being drained, in
+         *  which case I am closed. */
+        synchronized boolean end() {
+            _busy = false;
+            if (_drained) {
+                close();
+            }
+            return !_closed;
+        }
+
+        /** Close me now if idle, or else after my request. */
+        synchronized void drain() {
+            _drained = true;
+            if (!_busy) {
+                close();
+            }
+        }
+
+        /** Close me. */
+        synchronized void close() {
+            _closed = true;
+            try {
+                _channel.close();
+            } catch (IOException excp) {
+                /* Already as closed as it can be. */
+            }
+        }
+
+        /** The channel to the client. */
+        private final SocketChannel _channel;
+
+        /** True while a request is in progress. */
+        private boolean _busy;
+
+        /** True once I am being drained. */
+        private boolean _drained;
+
+        /** True once I am closed. */
+        private boolean _closed;
+    }
+
+    /** Machine read from each configuration, by the names it may be
+     *  asked for by.  These are only copied, never used. */
+    private final Map<String, Machine> _configs =
+        new ConcurrentHashMap<String, Machine>();
+
+    /** The open connections. */
+    private final Set<Connection> _connections =
+        ConcurrentHashMap.newKeySet();
+
+    /** Runs the connections. */
+    private final ExecutorService _connectionThreads;
+
+    /** Latencies of the requests served. */
+    private final LatencyHistogram _latencies = new LatencyHistogram();
+
+    /** Accepts connections, once bound. */
+    private ServerSocketChannel _server;
+
+    /** File of the Unix domain socket listened on, or null. */
+    private Path _socketFile;
+
+    /** True once draining has begun. */
+    private volatile boolean _draining;
+}
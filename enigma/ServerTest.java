@@ -0,0 +1,292 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** The rotors of MachineTest, as a configuration. */
+    static final String CONFIG = "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 5 3\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) "
+        + "(SZ) (TV)\n";
+
+    /** A job for the configuration, without its name. */
+    static final String JOB = "\n* B Beta III IV I AXLE (HQ) (EX) (IP) "
+        + "(TR) (BY)\nFROM HIS SHOULDER HIAWATHA\n\n"
+        + "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROMH\n";
+
+    /** The response to JOB. */
+    static final String EXPECTED = "0:QVPQS OKOIL PUBKJ ZPISF XDW\n\n"
+        + "QVPQS\n";
+
+    /** Milliseconds a client waits for a response. */
+    static final int CLIENT_TIMEOUT = 10000;
+
+    /** Write the configuration and start a server for it on a free
+     *  loopback port. */
+    @Before
+    public void setUp() throws IOException {
+        _config = Files.createTempFile("enigma", ".conf");
+        Files.write(_config, CONFIG.getBytes(StandardCharsets.US_ASCII));
+        _name = _config.getFileName().toString();
+        _server = new Server();
+        _server.addConfig(_config.toString());
+        _address = (InetSocketAddress) _server.bind(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0));
+        _serving = new Thread(_server::serve);
+        _serving.start();
+    }
+
+    /** Drain the server and remove the configuration. */
+    @After
+    public void tearDown() throws Exception {
+        _server.drain(CLIENT_TIMEOUT);
+        _serving.join();
+        Files.delete(_config);
+    }
+
+    /** Return a request frame, without its length, with operation OP and
+     *  text TEXT. */
+    private static byte[] request(byte op, String text) {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        byte[] request = new byte[body.length + 1];
+        request[0] = op;
+        System.arraycopy(body, 0, request, 1, body.length);
+        return request;
+    }
+
+    /** Return the status and text of RESPONSE, a response frame without
+     *  its length. */
+    private static String text(byte[] response) {
+        return response[0] + ":" + new String(response, 1,
+                response.length - 1, StandardCharsets.UTF_8);
+    }
+
+    /** Return the status and text of the response of my server to a
+     *  request with operation OP and text TEXT, not using a socket. */
+    private String ask(byte op, String text) {
+        return text(_server.respond(request(op, text)));
+    }
+
+    /** Return a new connection to my server. */
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(_address.getAddress(), _address.getPort());
+        socket.setSoTimeout(CLIENT_TIMEOUT);
+        return socket;
+    }
+
+    /** Send a request with operation OP and text TEXT on SOCKET. */
+    private static void send(Socket socket, byte op, String text)
+        throws IOException {
+        byte[] request = request(op, text);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(request.length);
+        out.write(request);
+        out.flush();
+    }
+
+    /** Return the status and text of the next response on SOCKET. */
+    private static String receive(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] response = new byte[in.readInt()];
+        in.readFully(response);
+        return text(response);
+    }
+
+    /** Return true iff the server has closed SOCKET, so that nothing more
+     *  can be read from it. */
+    private static boolean closed(Socket socket) {
+        try {
+            return socket.getInputStream().read() < 0;
+        } catch (IOException excp) {
+            return true;
+        }
+    }
+
+    /** Return the number of requests my server has served, once it has
+     *  drained. */
+    private long served() {
+        _server.drain(CLIENT_TIMEOUT);
+        return _server.latencies().count();
+    }
+
+    @Test public void checkServerResponds() {
+        assertEquals(EXPECTED, ask(Server.CONVERT, _name + JOB));
+        assertEquals(EXPECTED, ask(Server.CONVERT, _config + JOB));
+        assertTrue(ask(Server.CONVERT, "nowhere.conf\n").startsWith("1:"));
+        assertTrue(ask(Server.CONVERT, _name + "\nHELLO\n")
+                .startsWith("1:"));
+        assertTrue(ask(Server.STATS, "").startsWith("0:"));
+    }
+
+    @Test public void checkSocketRequests() throws IOException {
+        try (Socket socket = connect()) {
+            send(socket, Server.CONVERT, _name + JOB);
+            assertEquals(EXPECTED, receive(socket));
+            send(socket, Server.CONVERT, "nowhere.conf\n");
+            assertTrue(receive(socket).startsWith("1:"));
+            DataOutputStream out =
+                new DataOutputStream(socket.getOutputStream());
+            out.writeInt(0);
+            out.flush();
+            assertEquals("1:empty request", receive(socket));
+            send(socket, Server.STATS, "");
+            assertTrue(receive(socket).startsWith("0:served 3 requests"));
+        }
+        assertEquals(4, served());
+    }
+
+    @Test public void checkBadLengths() throws IOException {
+        int[] lengths = { -1, Integer.MIN_VALUE, Server.MAX_REQUEST + 1,
+                          Integer.MAX_VALUE };
+        for (int length : lengths) {
+            try (Socket socket = connect()) {
+                DataOutputStream out =
+                    new DataOutputStream(socket.getOutputStream());
+                out.writeInt(length);
+                out.write(Server.STATS);
+                out.flush();
+                assertTrue("length " + length, closed(socket));
+            }
+        }
+        try (Socket socket = connect()) {
+            DataOutputStream out =
+                new DataOutputStream(socket.getOutputStream());
+            out.writeInt(Server.MAX_REQUEST);
+            out.write(request(Server.CONVERT, _name + JOB));
+            out.flush();
+            socket.shutdownOutput();
+            assertTrue("short request", closed(socket));
+        }
+        try (Socket socket = connect()) {
+            send(socket, Server.CONVERT, _name + JOB);
+            assertEquals(EXPECTED, receive(socket));
+        }
+        assertEquals(1, served());
+    }
+
+    @Test public void checkConcurrentConnections() throws Exception {
+        int clients = 8;
+        int requests = 20;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int c = 0; c < clients; c += 1) {
+                results.add(pool.submit(() -> {
+                    int good = 0;
+                    try (Socket socket = connect()) {
+                        for (int r = 0; r < requests; r += 1) {
+                            send(socket, Server.CONVERT, _name + JOB);
+                            if (EXPECTED.equals(receive(socket))) {
+                                good += 1;
+                            }
+                        }
+                    }
+                    return good;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(requests, (int) result.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(clients * requests, served());
+    }
+
+    @Test public void checkDrain() throws Exception {
+        try (Socket busy = connect(); Socket idle = connect()) {
+            send(idle, Server.STATS, "");
+            assertTrue(receive(idle).startsWith("0:"));
+            byte[] request = request(Server.CONVERT, _name + JOB);
+            DataOutputStream out = new DataOutputStream(busy.getOutputStream());
+            out.writeInt(request.length);
+            out.write(request, 0, 1);
+            out.flush();
+            Thread.sleep(500);
+            Thread draining = new Thread(() -> _server.drain(CLIENT_TIMEOUT));
+            draining.start();
+            assertTrue("idle connection", closed(idle));
+            out.write(request, 1, request.length - 1);
+            out.flush();
+            assertEquals(EXPECTED, receive(busy));
+            assertTrue("busy connection", closed(busy));
+            draining.join();
+        }
+        try (Socket late = connect()) {
+            fail("connected after drain");
+        } catch (ConnectException excp) {
+            /* As it should be. */
+        }
+        assertEquals(2, _server.latencies().count());
+    }
+
+    @Test public void checkLatencyHistogram() {
+        LatencyHistogram latencies = new LatencyHistogram();
+        assertEquals(0, latencies.quantile(0.5));
+        for (long nanos = 1; nanos <= 1000; nanos += 1) {
+            latencies.record(nanos * 1000);
+        }
+        assertEquals(1000, latencies.count());
+        long median = latencies.quantile(0.5);
+        assertTrue(median >= 500000 && median <= 500000 * 9 / 8);
+        long high = latencies.quantile(0.99);
+        assertTrue(high >= 990000 && high <= 990000 * 9 / 8);
+        long[] counts = latencies.counts();
+        long total = 0;
+        for (int k = 0; k < counts.length; k += 1) {
+            total += counts[k];
+            if (counts[k] > 0) {
+                assertTrue(LatencyHistogram.largest(k) >= 1000);
+            }
+        }
+        assertEquals(1000, total);
+        latencies.reset();
+        assertEquals(0, latencies.count());
+        assertEquals(0, latencies.quantile(0.99));
+    }
+
+    /** The configuration file. */
+    private Path _config;
+
+    /** Its file name. */
+    private String _name;
+
+    /** The server under test. */
+    private Server _server;
+
+    /** The address it listens on. */
+    private InetSocketAddress _address;
+
+    /** The thread accepting its connections. */
+    private Thread _serving;
+}
@@ -0,0 +1,251 @@
+package enigma;
+
+/** The stepping motion of the rotors in a machine, worked out without
+ *  turning them.  Slot 0 holds the reflector and the rightmost slot the
+ *  fast rotor, which moves on every keystroke.  For each slot I from the
+ *  first pawl to the next to last, a rotor in slot I + 1 at one of its
+ *  notches moves itself and the rotor in slot I; this gives both the
+ *  odometer carries and the double step of a middle rotor.
+ *
+ *  Since a rotor at a notch always leaves it on the next keystroke, the
+ *  number of carries a rotor receives is just the number of notches its
+ *  right-hand neighbour has left, and a rotor that can double step only
+ *  ever rests between notches.  As long as no rotor that can be carried
+ *  into has two adjacent notches, this gives every rotor's position after
+ *  any number of keystrokes in time independent of that number.  Other
+ *  machines are stepped one keystroke at a time.
+ *  @author Akshay Patel
+ */
+class Stepper {
+
+    /** A stepper for the rotors in SLOTS, of which the rightmost PAWLS
+     *  are driven by pawls.  Only the rotors' kinds and notches are
+     *  used. */
+    Stepper(Rotor[] slots, int pawls) {
+        _slots = slots.length;
+        _last = _slots - 1;
+        _first = Math.max(0, pawls - 1);
+        _size = slots.length == 0 ? 0 : slots[0].size();
+        _moving = new boolean[_slots];
+        _notch = new boolean[_slots][];
+        _notchesBefore = new int[_slots][];
+        _rests = new int[_slots][];
+        _restRank = new int[_slots][];
+        boolean arithmetic = true;
+        for (int i = 0; i < _slots; i += 1) {
+            _moving[i] = slots[i].rotates();
+            _notch[i] = new boolean[_size];
+            Alphabet alphabet = slots[i].alphabet();
+            String notches = slots[i].notches();
+            for (int k = 0; k < notches.length(); k += 1) {
+                if (alphabet.contains(notches.charAt(k))) {
+                    _notch[i][alphabet.toInt(notches.charAt(k))] = true;
+                }
+            }
+            tabulate(i);
+            if (i > _first) {
+                for (int p = 0; p < _size; p += 1) {
+                    if (_notch[i][p] && _notch[i][(p + 1) % _size]) {
+                        arithmetic = false;
+                    }
+                }
+            }
+        }
+        _arithmetic = arithmetic;
+    }
+
+    /** Return the settings of my rotors after KEYSTROKES keystrokes,
+     *  starting from SETTINGS (one per slot, each in 0 .. size-1).
+     *  SETTINGS is not modified. */
+    int[] positionsAfter(int[] settings, long keystrokes) {
+        if (keystrokes < 0) {
+            throw EnigmaException.error("Cannot step backwards.");
+        }
+        if (!_arithmetic) {
+            return simulate(settings, keystrokes);
+        }
+        long[][] steps = new long[_slots][];
+        for (int i = _last; i >= 0; i -= 1) {
+            steps[i] = new long[i + 1];
+            for (int d = 0; d <= i; d += 1) {
+                long time = Math.max(0, keystrokes - d);
+                steps[i][d] = steps(i, settings, time,
+                        i < _last ? steps[i + 1] : null, d);
+            }
+        }
+        int[] result = new int[_slots];
+        for (int i = 0; i < _slots; i += 1) {
+            result[i] = (int) ((settings[i] + steps[i][0]) % _size);
+        }
+        return result;
+    }
+
+    /** Move SETTINGS (one per slot) on by one keystroke. */
+    void advance(int[] settings) {
+        boolean carried = false;
+        for (int i = _first; i < _last; i += 1) {
+            boolean atNotch = _notch[i + 1][settings[i + 1]];
+            if ((carried || atNotch) && _moving[i]) {
+                settings[i] = settings[i] + 1 == _size ? 0 : settings[i] + 1;
+            }
+            carried = atNotch;
+        }
+        if (_moving[_last]) {
+            settings[_last] = settings[_last] + 1 == _size
+                    ? 0 : settings[_last] + 1;
+        }
+    }
+
+    /** Move LANES independent sets of settings on by one keystroke
+     *  each, SETTINGS[I][L] being the setting of slot I in set L.  As in
+     *  advance(int[]), the rotor in slot I moves if the rotor to its
+     *  right is at a notch, or if it is itself at one and a pawl can
+     *  reach it; every slot is handled for all the lanes at once. */
+    void advance(int[][] settings, int lanes) {
+        for (int i = _first; i < _last; i += 1) {
+            if (!_moving[i]) {
+                continue;
+            }
+            boolean[] right = _notch[i + 1];
+            boolean[] own = _notch[i];
+            boolean carried = i > _first;
+            int[] here = settings[i];
+            int[] next = settings[i + 1];
+            for (int l = 0; l < lanes; l += 1) {
+                if (right[next[l]] || carried && own[here[l]]) {
+                    here[l] = here[l] + 1 == _size ? 0 : here[l] + 1;
+                }
+            }
+        }
+        if (_moving[_last]) {
+            int[] fast = settings[_last];
+            for (int l = 0; l < lanes; l += 1) {
+                fast[l] = fast[l] + 1 == _size ? 0 : fast[l] + 1;
+            }
+        }
+    }
+
+    /** Return the number of times the rotor in SLOT, starting at
+     *  SETTINGS[SLOT], has moved after TIME keystrokes.  RIGHT[K] is the
+     *  corresponding count for the rotor to its right after
+     *  KEYSTROKES - D - K keystrokes, where TIME = KEYSTROKES - D. */
+    private long steps(int slot, int[] settings, long time,
+                       long[] right, int d) {
+        if (!_moving[slot] || slot < _first || time == 0) {
+            return 0;
+        }
+        if (slot == _last) {
+            return time;
+        }
+        int neighbour = settings[slot + 1];
+        long carries = notchesIn(slot + 1, neighbour, right[d]);
+        if (slot == _first) {
+            return carries;
+        }
+        boolean[] notch = _notch[slot];
+        int start = settings[slot];
+        long moved = 0;
+        if (notch[start]) {
+            moved = 1;
+            start = (start + 1) % _size;
+            if (_notch[slot + 1][neighbour]) {
+                carries -= 1;
+            }
+        }
+        if (carries == 0) {
+            return moved;
+        }
+        int[] rests = _rests[slot];
+        long index = _restRank[slot][start] + carries;
+        long target = index / rests.length * _size
+                + rests[(int) (index % rests.length)];
+        moved += target - start;
+        int beforeTarget = (int) ((target - 1) % _size);
+        long previous = right[d + 1];
+        if (notch[beforeTarget]
+                && _notch[slot + 1][(int) ((neighbour + previous) % _size)]) {
+            moved -= 1;
+        }
+        return moved;
+    }
+
+    /** Return the number of notches of the rotor in SLOT among the COUNT
+     *  positions starting with FROM. */
+    private long notchesIn(int slot, int from, long count) {
+        int[] before = _notchesBefore[slot];
+        long laps = count / _size;
+        int end = from + (int) (count % _size);
+        long result = laps * before[_size];
+        if (end <= _size) {
+            result += before[end] - before[from];
+        } else {
+            result += before[_size] - before[from] + before[end - _size];
+        }
+        return result;
+    }
+
+    /** Fill in the notch counts and resting positions of SLOT. */
+    private void tabulate(int slot) {
+        boolean[] notch = _notch[slot];
+        _notchesBefore[slot] = new int[_size + 1];
+        _restRank[slot] = new int[_size];
+        int rests = 0;
+        for (int p = 0; p < _size; p += 1) {
+            _notchesBefore[slot][p + 1] = _notchesBefore[slot][p]
+                    + (notch[p] ? 1 : 0);
+            _restRank[slot][p] = rests;
+            if (!notch[p]) {
+                rests += 1;
+            }
+        }
+        _rests[slot] = new int[rests];
+        for (int p = 0, k = 0; p < _size; p += 1) {
+            if (!notch[p]) {
+                _rests[slot][k] = p;
+                k += 1;
+            }
+        }
+    }
+
+    /** Return the settings after KEYSTROKES keystrokes from SETTINGS,
+     *  found by stepping one keystroke at a time. */
+    private int[] simulate(int[] settings, long keystrokes) {
+        int[] result = settings.clone();
+        for (long t = 0; t < keystrokes; t += 1) {
+            advance(result);
+        }
+        return result;
+    }
+
+    /** Number of slots. */
+    private final int _slots;
+
+    /** The rightmost slot. */
+    private final int _last;
+
+    /** The leftmost slot that can be moved by a pawl. */
+    private final int _first;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** True iff the rotor in each slot can move. */
+    private final boolean[] _moving;
+
+    /** Notch positions of the rotor in each slot. */
+    private final boolean[][] _notch;
+
+    /** Number of notches before each position of each slot, with the
+     *  total at index _size. */
+    private final int[][] _notchesBefore;
+
+    /** Positions of each slot that are not notches, in order. */
+    private final int[][] _rests;
+
+    /** Number of non-notch positions before each position of each
+     *  slot. */
+    private final int[][] _restRank;
+
+    /** True iff positions can be worked out arithmetically. */
+    private final boolean _arithmetic;
+}
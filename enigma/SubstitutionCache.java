@@ -0,0 +1,240 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A bounded cache of the substitutions a machine performs at particular
+ *  rotor positions.  Positions are identified by a long key; each entry
+ *  holds the image of every character at that position, filled in one
+ *  character at a time as they are converted.  When full, entries are
+ *  replaced in CLOCK (second chance) order.  When too few of a window of
+ *  lookups are hits, as when one long message never comes back to a
+ *  position, the cache suggests skipping lookups for a while.
+ *  @author Akshay Patel
+ */
+class SubstitutionCache {
+
+    /** Returned by lookup when a substitution is not cached. */
+    static final int UNKNOWN = -1;
+
+    /** A cache of at most CAPACITY positions for an alphabet of SIZE
+     *  characters.  CAPACITY must be positive. */
+    SubstitutionCache(int capacity, int size) {
+        _size = size;
+        _keys = new long[capacity];
+        _tables = new int[capacity][];
+        _stamps = new int[capacity];
+        _referenced = new boolean[capacity];
+        _index = new int[Integer.highestOneBit(capacity * 4 - 1)];
+        _current = -1;
+    }
+
+    /** Return the maximum number of positions I hold. */
+    int capacity() {
+        return _keys.length;
+    }
+
+    /** Return the number of conversions answered from the cache. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of conversions that were not in the cache. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of positions dropped to make room for others. */
+    long evictions() {
+        return _evictions;
+    }
+
+    /** Forget every position, keeping the statistics. */
+    void clear() {
+        Arrays.fill(_index, 0);
+        _count = 0;
+        _hand = 0;
+        _current = -1;
+        restart();
+    }
+
+    /** Stop skipping lookups and start a new window, as when the rotors
+     *  are reset and earlier positions may come round again. */
+    void restart() {
+        _bypass = 0;
+        _windowLookups = 0;
+        _windowHits = 0;
+    }
+
+    /** Return true iff a lookup is worth making now.  Each call while I
+     *  am being bypassed counts towards the end of the bypass. */
+    boolean worthLookingUp() {
+        if (_bypass > 0) {
+            _bypass -= 1;
+            return false;
+        }
+        return true;
+    }
+
+    /** Return the cached image of C at the position KEY, or UNKNOWN.
+     *  KEY becomes the position that record() fills in. */
+    int lookup(long key, int c) {
+        int entry = find(key);
+        if (entry < 0) {
+            entry = insert(key);
+        } else {
+            _referenced[entry] = true;
+        }
+        _current = entry;
+        _windowLookups += 1;
+        if (_windowLookups == WINDOW) {
+            if (_windowHits < WINDOW / MIN_HIT_RATIO) {
+                _bypass = BYPASS;
+            }
+            _windowLookups = 0;
+            _windowHits = 0;
+        }
+        int packed = _tables[entry][c];
+        if (packed >>> STAMP_SHIFT == _stamps[entry]) {
+            _hits += 1;
+            _windowHits += 1;
+            return packed & VALUE_MASK;
+        }
+        _misses += 1;
+        return UNKNOWN;
+    }
+
+    /** Record that C converts to E at the position of the last lookup. */
+    void record(int c, int e) {
+        _tables[_current][c] = _stamps[_current] << STAMP_SHIFT | e;
+    }
+
+    /** Return the entry holding KEY, or -1. */
+    private int find(long key) {
+        int mask = _index.length - 1;
+        for (int slot = hash(key) & mask; _index[slot] != 0;
+             slot = (slot + 1) & mask) {
+            if (_keys[_index[slot] - 1] == key) {
+                return _index[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Claim an entry for KEY, evicting another if I am full, and
+     *  return it. */
+    private int insert(long key) {
+        int entry;
+        if (_count < _keys.length) {
+            entry = _count;
+            _count += 1;
+            _tables[entry] = new int[_size];
+        } else {
+            while (_referenced[_hand]) {
+                _referenced[_hand] = false;
+                _hand = (_hand + 1) % _keys.length;
+            }
+            entry = _hand;
+            _hand = (_hand + 1) % _keys.length;
+            unindex(_keys[entry]);
+            _evictions += 1;
+        }
+        _keys[entry] = key;
+        _referenced[entry] = false;
+        _stamps[entry] = (_stamps[entry] + 1) & STAMP_MASK;
+        if (_stamps[entry] == 0) {
+            Arrays.fill(_tables[entry], 0);
+            _stamps[entry] = 1;
+        }
+        int mask = _index.length - 1;
+        int slot = hash(key) & mask;
+        while (_index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        _index[slot] = entry + 1;
+        return entry;
+    }
+
+    /** Remove KEY from the index, shifting back any entries that probed
+     *  past it. */
+    private void unindex(long key) {
+        int mask = _index.length - 1;
+        int slot = hash(key) & mask;
+        while (_keys[_index[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        int next = (slot + 1) & mask;
+        while (_index[next] != 0) {
+            int home = hash(_keys[_index[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                _index[slot] = _index[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        _index[slot] = 0;
+    }
+
+    /** Return a well-mixed hash of KEY. */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Number of bits holding a character index in a table entry. */
+    private static final int STAMP_SHIFT = 16;
+
+    /** Mask selecting the character index of a table entry. */
+    private static final int VALUE_MASK = (1 << STAMP_SHIFT) - 1;
+
+    /** Mask keeping stamps within the bits above STAMP_SHIFT. */
+    private static final int STAMP_MASK = 0x7fff;
+
+    /** Number of lookups over which the hit rate is judged. */
+    private static final int WINDOW = 1 << 12;
+
+    /** Lookups are bypassed if fewer than 1 in MIN_HIT_RATIO of a
+     *  window hit. */
+    private static final int MIN_HIT_RATIO = 4;
+
+    /** Number of lookups skipped after a poor window. */
+    private static final int BYPASS = 1 << 18;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Position key of each entry. */
+    private final long[] _keys;
+
+    /** Substitution of each entry.  A character's image is valid only
+     *  if it is stored together with the entry's current stamp, which
+     *  saves clearing the table when the entry is reused. */
+    private final int[][] _tables;
+
+    /** Current stamp of each entry. */
+    private final int[] _stamps;
+
+    /** CLOCK reference bit of each entry. */
+    private final boolean[] _referenced;
+
+    /** Open-addressed index from key hash to entry number plus one
+     *  (zero for an empty slot). */
+    private final int[] _index;
+
+    /** Number of entries in use. */
+    private int _count;
+
+    /** Next entry the CLOCK hand will examine. */
+    private int _hand;
+
+    /** Entry of the last lookup. */
+    private int _current;
+
+    /** Statistics. */
+    private long _hits, _misses, _evictions;
+
+    /** Lookups and hits so far in the current window. */
+    private int _windowLookups, _windowHits;
+
+    /** Number of lookups still to be skipped. */
+    private int _bypass;
+}
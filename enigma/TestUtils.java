@@ -1,6 +1,9 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -18,6 +21,59 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** Return a machine over ALPHA with 4 slots and 2 pawls, whose
+     *  catalog holds the reflector R, the moving rotors X, Y and Z, with
+     *  notches at C, F and A, and the fixed rotor F.  Their wirings are
+     *  the cycles REFLECTOR, ROTORX, ROTORY, ROTORZ and FIXED. */
+    static Machine testMachine(Alphabet alpha, String reflector,
+                               String rotorX, String rotorY, String rotorZ,
+                               String fixed) {
+        List<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("R", new Permutation(reflector, alpha)));
+        rotors.add(new MovingRotor("X", new Permutation(rotorX, alpha),
+                                   "C"));
+        rotors.add(new MovingRotor("Y", new Permutation(rotorY, alpha),
+                                   "F"));
+        rotors.add(new MovingRotor("Z", new Permutation(rotorZ, alpha),
+                                   "A"));
+        rotors.add(new FixedRotor("F", new Permutation(fixed, alpha)));
+        return new Machine(alpha, 4, 2, rotors);
+    }
+
+    /** An alphabet of eight letters. */
+    static final Alphabet EIGHT = new Alphabet("ABCDEFGH");
+
+    /** Some text in EIGHT. */
+    static final String EIGHT_TEXT =
+        "HEADBEEFACEDBADCABBAGEFADEDHEADBEEFCAGEDBEADEDFACADE"
+        + "BAGGAGEDEAFBEEHEADACHEDEFACEDABBEDHEDGEDBADGECAFEBED";
+
+    /** Return the test machine over EIGHT. */
+    static Machine eightLetterMachine() {
+        return testMachine(EIGHT, "(AB) (CD) (EF) (GH)", "(ABCDEFGH)",
+                           "(AGD) (BHFC)", "(AEBFC) (DH)", "(AH) (BCG)");
+    }
+
+    /** Return a scorer over ALPHA using the N-grams of TEXT, weighted by
+     *  how often each occurs. */
+    static NGramScorer ngrams(Alphabet alpha, String text, int n) {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (int i = 0; i + n <= text.length(); i += 1) {
+            counts.merge(text.substring(i, i + n), 1L, Long::sum);
+        }
+        return new NGramScorer(alpha, new ArrayList<String>(counts.keySet()),
+                               new ArrayList<Long>(counts.values()));
+    }
+
+    /** Return the indices in ALPHA of the characters of TEXT. */
+    static int[] indices(Alphabet alpha, String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = alpha.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
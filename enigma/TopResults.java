@@ -0,0 +1,124 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** The best results of a search, kept without locks so that any number
+ *  of threads may offer results at once.  The results are held in an
+ *  array, best first, which is never modified; a result is added by
+ *  building a new array and swapping it in with a compare-and-set,
+ *  retrying if another thread got there first.  Once the set is full,
+ *  nearly every result offered is worse than the worst kept, which is
+ *  checked without building anything.  Results are ordered by score,
+ *  highest first, and then by key, lowest first, so the set kept does not
+ *  depend on the order in which results are offered.  Keys are unique: a
+ *  result for a key already kept is ignored, so that a result offered
+ *  again (as when a search resumes a block whose results were saved
+ *  before it was finished) is not kept twice.
+ *  @author Akshay Patel
+ */
+class TopResults {
+
+    /** A result: the number of the key tried and its score. */
+    static class Result {
+
+        /** A result for key KEY with score SCORE. */
+        Result(long key, double score) {
+            _key = key;
+            _score = score;
+        }
+
+        /** Return the number of my key. */
+        long key() {
+            return _key;
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        /** Return true iff I rank above OTHER. */
+        boolean beats(Result other) {
+            return _score > other._score
+                    || _score == other._score && _key < other._key;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %.6f", _key, _score);
+        }
+
+        /** Number of my key. */
+        private final long _key;
+
+        /** My score. */
+        private final double _score;
+    }
+
+    /** A set keeping the best CAPACITY results. */
+    TopResults(int capacity) {
+        if (capacity < 1) {
+            throw EnigmaException.error("Must keep at least one result.");
+        }
+        _capacity = capacity;
+    }
+
+    /** Return the greatest number of results I keep. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the score a result must exceed to be kept, or negative
+     *  infinity while I am not yet full. */
+    double threshold() {
+        Result[] results = _results.get();
+        return results.length < _capacity
+                ? Double.NEGATIVE_INFINITY
+                : results[results.length - 1].score();
+    }
+
+    /** Keep a result for KEY with SCORE if it is among the best and KEY is
+     *  not already kept.  Return true iff it was kept. */
+    boolean offer(long key, double score) {
+        Result result = new Result(key, score);
+        while (true) {
+            Result[] old = _results.get();
+            if (old.length == _capacity
+                    && !result.beats(old[old.length - 1])) {
+                return false;
+            }
+            for (Result kept : old) {
+                if (kept._key == key) {
+                    return false;
+                }
+            }
+            int place = 0;
+            while (place < old.length && old[place].beats(result)) {
+                place += 1;
+            }
+            int length = Math.min(_capacity, old.length + 1);
+            Result[] results = new Result[length];
+            System.arraycopy(old, 0, results, 0, place);
+            results[place] = result;
+            System.arraycopy(old, place, results, place + 1,
+                    length - place - 1);
+            if (_results.compareAndSet(old, results)) {
+                return true;
+            }
+        }
+    }
+
+    /** Return the results kept, best first. */
+    List<Result> results() {
+        return Arrays.asList(_results.get().clone());
+    }
+
+    /** Greatest number of results kept. */
+    private final int _capacity;
+
+    /** The results kept, best first. */
+    private final AtomicReference<Result[]> _results =
+        new AtomicReference<Result[]>(new Result[0]);
+}
@@ -11,7 +11,16 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      AlphabetTest.class,
+                                      SegmentPipelineTest.class,
+                                      ConfigSnapshotTest.class,
+                                      LexerTest.class,
+                                      KeySearchTest.class,
+                                      BombeTest.class,
+                                      ServerTest.class,
+                                      PlugboardSolverTest.class,
+                                      MultiKeyEvaluatorTest.class));
     }
 
 }
@@ -0,0 +1,84 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A lane kernel using the Vector API: the lanes are taken as many at a
+ *  time as the widest integer vector the processor has, and each rotor's
+ *  wiring is looked up for all of them with one gather.  Lanes left over
+ *  are converted one at a time.  The API gathers through an array of
+ *  indices, so I keep one as scratch space.
+ *
+ *  I am kept apart from the rest of the package and compiled on my own
+ *  (by "make vector", or a separate execution of the Maven compiler),
+ *  since only I need the incubating module at compile time.
+ *  LaneKernel.vector loads me by name if I am there.
+ *  @author Akshay Patel
+ */
+final class VectorLaneKernel implements LaneKernel {
+
+    /** The vector shape used. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** A kernel for up to LANES lanes. */
+    VectorLaneKernel(int lanes) {
+        _indices = new int[lanes + SPECIES.length()];
+    }
+
+    @Override
+    public void map(int[] table, int[] chars, int lanes) {
+        int bound = SPECIES.loopBound(lanes);
+        int l;
+        for (l = 0; l < bound; l += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, table, 0, chars, l)
+                .intoArray(chars, l);
+        }
+        _scalar.map(table, chars, lanes, l);
+    }
+
+    @Override
+    public void mapLanes(int[] tables, int size, int[] chars, int lanes) {
+        int bound = SPECIES.loopBound(lanes);
+        int l;
+        for (l = 0; l < bound; l += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, chars, l)
+                .add(IntVector.zero(SPECIES).addIndex(size).add(l * size))
+                .intoArray(_indices, l);
+            IntVector.fromArray(SPECIES, tables, 0, _indices, l)
+                .intoArray(chars, l);
+        }
+        _scalar.mapLanes(tables, size, chars, lanes, l);
+    }
+
+    @Override
+    public void rotor(int[] wiring, int size, int[] settings, int[] rings,
+                      int[] chars, int lanes) {
+        int bound = SPECIES.loopBound(lanes);
+        int l;
+        for (l = 0; l < bound; l += SPECIES.length()) {
+            IntVector r = IntVector.fromArray(SPECIES, settings, l)
+                .sub(IntVector.fromArray(SPECIES, rings, l));
+            r = r.add(size, r.compare(VectorOperators.LT, 0));
+            IntVector.fromArray(SPECIES, chars, l).add(r)
+                .intoArray(_indices, l);
+            IntVector c = IntVector.fromArray(SPECIES, wiring, 0, _indices, l)
+                .sub(r);
+            c.add(size, c.compare(VectorOperators.LT, 0))
+                .intoArray(chars, l);
+        }
+        _scalar.rotor(wiring, size, settings, rings, chars, lanes, l);
+    }
+
+    @Override
+    public boolean vectorized() {
+        return true;
+    }
+
+    /** Indices of the current gather. */
+    private final int[] _indices;
+
+    /** Converts the lanes left over. */
+    private final ScalarLaneKernel _scalar = new ScalarLaneKernel();
+}